@@ -67,6 +67,8 @@ dependencies {
     // NOTA: NO se usa Room Database, se usa SQLite nativo (HabitDatabaseHelper)
     
     testImplementation(libs.junit)
+    testImplementation("com.squareup.okhttp3:mockwebserver:4.12.0")
     androidTestImplementation(libs.ext.junit)
+    androidTestImplementation("com.squareup.okhttp3:mockwebserver:4.12.0")
     androidTestImplementation(libs.espresso.core)
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+package com.tuempresa.proyecto_01_11_25.database;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.model.HabitsResponse;
+import com.tuempresa.proyecto_01_11_25.utils.SessionManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * completeHabit sobre la base de datos real, con un usuario de prueba propio: el completado,
+ * el score y la operación pendiente se escriben juntos, y un segundo completado no suma nada.
+ * Las escrituras por id siguen funcionando después de renombrar el hábito.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CompleteHabitTest {
+    private static final long TEST_USER_ID = 987_654_322L;
+
+    private HabitDatabaseHelperSync dbHelper;
+    private SessionManager session;
+    private long previousUserId;
+    private String previousEmail;
+    private boolean wasLoggedIn;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        dbHelper = HabitDatabaseHelperSync.getInstance(context);
+        session = new SessionManager(context);
+        wasLoggedIn = session.isLoggedIn();
+        previousUserId = session.getUserId();
+        previousEmail = session.getUserEmail();
+        session.createLoginSession(TEST_USER_ID, "complete-test@example.com");
+        cleanUp();
+    }
+
+    @After
+    public void tearDown() {
+        cleanUp();
+        session.logoutUser();
+        if (wasLoggedIn) {
+            session.createLoginSession(previousUserId, previousEmail);
+        }
+    }
+
+    @Test
+    public void writesFlagScoreAndOneOperation() {
+        long habitId = dbHelper.insertHabit("Caminar", "Meta", "salud", Habit.HabitType.WALK.name(), 15);
+        int totalBefore = dbHelper.getTotalScore();
+        long versionBefore = dbHelper.getHabitsVersion();
+
+        long scoreId = dbHelper.completeHabit(habitId, 15, "{\"habitId\":" + habitId + "}");
+
+        assertTrue(scoreId > 0);
+        assertTrue(dbHelper.getHabitById(habitId).isCompleted());
+        assertFalse(dbHelper.isHabitSynced(habitId));
+        assertEquals(totalBefore + 15, dbHelper.getTotalScore());
+        assertEquals(1, dbHelper.getAllScores().size());
+        assertEquals(versionBefore + 1, dbHelper.getHabitsVersion());
+
+        List<HabitDatabaseHelperSync.PendingOperation> ops = completionOps();
+        assertEquals(1, ops.size());
+        assertEquals("COMPLETE", ops.get(0).operationType);
+        assertEquals(scoreId, ops.get(0).entityId);
+    }
+
+    @Test
+    public void secondCompletionIsIgnored() {
+        long habitId = dbHelper.insertHabit("Leer", "Meta", "estudio", Habit.HabitType.READ_BOOK.name(), 10);
+        assertTrue(dbHelper.completeHabit(habitId, 10, "{}") > 0);
+        int total = dbHelper.getTotalScore();
+
+        assertEquals(-1, dbHelper.completeHabit(habitId, 10, "{}"));
+        assertEquals(total, dbHelper.getTotalScore());
+        assertEquals(1, dbHelper.getAllScores().size());
+        assertEquals(1, completionOps().size());
+    }
+
+    @Test
+    public void downloadDoesNotRevertPendingCompletion() throws Exception {
+        long habitId = dbHelper.insertHabit("Meditar", "Meta", "salud", Habit.HabitType.MEDITATE.name(), 20);
+        dbHelper.markHabitAsSynced(habitId, 987_001L);
+        assertTrue(dbHelper.completeHabit(habitId, 20, "{}") > 0);
+
+        // El servidor aún no conoce el completado
+        dbHelper.applyHabitsDownload(consumer -> {
+            Habit server = new Habit("Meditar", "Meta", "salud", Habit.HabitType.MEDITATE);
+            server.setId(987_001L);
+            server.setCompleted(false);
+            consumer.accept(server);
+            HabitsResponse response = new HabitsResponse(true, null, null);
+            response.setWatermark(1L);
+            return response;
+        });
+
+        assertTrue(dbHelper.getHabitById(habitId).isCompleted());
+        assertEquals(-1, dbHelper.completeHabit(habitId, 20, "{}"));
+        assertEquals(1, dbHelper.getAllScores().size());
+    }
+
+    @Test
+    public void missingHabitWritesNothing() {
+        assertEquals(-1, dbHelper.completeHabit(-42, 10, "{}"));
+        assertTrue(dbHelper.getAllScores().isEmpty());
+        assertTrue(completionOps().isEmpty());
+    }
+
+    @Test
+    public void idKeyedWritesSurviveRename() {
+        long habitId = dbHelper.insertHabit("Agua", "Meta", "salud", Habit.HabitType.WATER.name(), 5);
+        dbHelper.updateHabitFull(habitId, "Agua (8 vasos)", "Meta", "salud", Habit.HabitType.WATER.name(), 7,
+                null, null, null, null, null, null, null, null, null, null, null, null, null, null);
+
+        assertEquals(7, dbHelper.getHabitPoints(habitId));
+        assertTrue(dbHelper.updateHabitCompleted(habitId, true));
+        assertTrue(dbHelper.getHabitById(habitId).isCompleted());
+
+        assertTrue(dbHelper.addScore(habitId, 7) > 0);
+        assertEquals("Agua (8 vasos)", dbHelper.getAllScores().get(0).getHabitTitle());
+        assertEquals(-1, dbHelper.addScore(-42, 7));
+    }
+
+    @Test
+    public void importedScoresKeepTheirDate() {
+        long habitId = dbHelper.insertHabit("Correr", "Meta", "salud", Habit.HabitType.EXERCISE.name(), 12);
+        long date = 1_700_000_000L;
+        List<HabitDatabaseHelper.ScoreEntry> backup = new ArrayList<>();
+        backup.add(new HabitDatabaseHelper.ScoreEntry(0, "Correr", 12, date));
+
+        assertEquals(1, dbHelper.importScores(backup, dbHelper.getHabitIdsByTitle()));
+        HabitDatabaseHelper.ScoreEntry restored = dbHelper.getAllScores().get(0);
+        assertEquals(date, restored.getDate());
+        assertEquals(12, restored.getPoints());
+        assertTrue(habitId > 0);
+    }
+
+    private List<HabitDatabaseHelperSync.PendingOperation> completionOps() {
+        List<Long> scoreIds = new ArrayList<>();
+        for (HabitDatabaseHelper.ScoreEntry score : dbHelper.getAllScores()) {
+            scoreIds.add(score.getId());
+        }
+        List<HabitDatabaseHelperSync.PendingOperation> ops = new ArrayList<>();
+        for (HabitDatabaseHelperSync.PendingOperation op : dbHelper.getAllPendingOperations()) {
+            if ("COMPLETION".equals(op.entityType) && scoreIds.contains(op.entityId)) {
+                ops.add(op);
+            }
+        }
+        return ops;
+    }
+
+    private void cleanUp() {
+        for (HabitDatabaseHelperSync.PendingOperation op : completionOps()) {
+            dbHelper.deletePendingOperation(op.id);
+        }
+        dbHelper.deleteUser(TEST_USER_ID);
+    }
+}
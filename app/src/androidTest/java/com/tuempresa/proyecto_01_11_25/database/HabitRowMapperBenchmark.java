@@ -0,0 +1,218 @@
+package com.tuempresa.proyecto_01_11_25.database;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelper.*;
+import static org.junit.Assert.*;
+
+/**
+ * Microbenchmark del mapeo cursor -> Habit sobre 10k filas: búsqueda de columnas por
+ * nombre en cada fila (implementación anterior, copiada de la línea base) frente a HabitRowMapper.
+ * Los tiempos se escriben en logcat con el tag "HabitRowMapperBenchmark".
+ */
+@RunWith(AndroidJUnit4.class)
+public class HabitRowMapperBenchmark {
+    private static final String TAG = "HabitRowMapperBenchmark";
+    private static final int ROWS = 10_000;
+    private static final int ROUNDS = 5;
+
+    private static final String[] COLUMNS = {
+            HabitDatabaseHelper.COLUMN_HABIT_ID,
+            HabitDatabaseHelper.COLUMN_HABIT_TITLE,
+            HabitDatabaseHelper.COLUMN_HABIT_GOAL,
+            HabitDatabaseHelper.COLUMN_HABIT_CATEGORY,
+            HabitDatabaseHelper.COLUMN_HABIT_TYPE,
+            HabitDatabaseHelper.COLUMN_HABIT_COMPLETED,
+            HabitDatabaseHelper.COLUMN_HABIT_POINTS,
+            HabitDatabaseHelper.COLUMN_HABIT_TARGET_VALUE,
+            HabitDatabaseHelper.COLUMN_HABIT_TARGET_UNIT,
+            HabitDatabaseHelper.COLUMN_HABIT_PAGES_PER_DAY,
+            HabitDatabaseHelper.COLUMN_HABIT_REMINDER_TIMES,
+            HabitDatabaseHelper.COLUMN_HABIT_DURATION_MINUTES,
+            HabitDatabaseHelper.COLUMN_HABIT_DND_MODE,
+            HabitDatabaseHelper.COLUMN_HABIT_MUSIC_ID,
+            HabitDatabaseHelper.COLUMN_HABIT_JOURNAL_ENABLED,
+            HabitDatabaseHelper.COLUMN_HABIT_GYM_DAYS,
+            HabitDatabaseHelper.COLUMN_HABIT_WATER_GOAL_GLASSES,
+            HabitDatabaseHelper.COLUMN_HABIT_ONE_CLICK_COMPLETE,
+            HabitDatabaseHelper.COLUMN_HABIT_ENGLISH_MODE,
+            HabitDatabaseHelper.COLUMN_HABIT_CODING_MODE,
+            HabitDatabaseHelper.COLUMN_HABIT_ICON,
+            HabitDatabaseHelper.COLUMN_HABIT_STREAK_COUNT,
+            HabitDatabaseHelper.COLUMN_HABIT_LAST_COMPLETED_DATE
+    };
+
+    @Test
+    public void mapTenThousandRows() {
+        MatrixCursor cursor = buildCursor();
+        Habit.HabitType[] types = Habit.HabitType.values();
+
+        long lookupNanos = Long.MAX_VALUE;
+        long mapperNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            int count = 0;
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                count += mapWithLookups(cursor).getPoints() > 0 ? 1 : 0;
+            }
+            lookupNanos = Math.min(lookupNanos, System.nanoTime() - start);
+            assertEquals(ROWS, count);
+
+            start = System.nanoTime();
+            count = 0;
+            cursor.moveToPosition(-1);
+            HabitRowMapper mapper = new HabitRowMapper(cursor);
+            while (cursor.moveToNext()) {
+                Habit habit = mapper.map(cursor);
+                assertEquals(types[cursor.getPosition() % types.length], habit.getType());
+                count++;
+            }
+            mapperNanos = Math.min(mapperNanos, System.nanoTime() - start);
+            assertEquals(ROWS, count);
+        }
+        cursor.close();
+
+        Log.i(TAG, "Búsqueda por fila: " + lookupNanos / 1_000 + " µs, HabitRowMapper: "
+                + mapperNanos / 1_000 + " µs (" + ROWS + " filas, mejor de " + ROUNDS + ")");
+    }
+
+    @Test
+    public void unknownTypeFallsBackToDemo() {
+        assertEquals(Habit.HabitType.DEMO, HabitRowMapper.parseType("NO_EXISTE"));
+        assertEquals(Habit.HabitType.DEMO, HabitRowMapper.parseType(null));
+        assertEquals(Habit.HabitType.WATER, HabitRowMapper.parseType("WATER"));
+    }
+
+    private MatrixCursor buildCursor() {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS, ROWS);
+        Habit.HabitType[] types = Habit.HabitType.values();
+        for (int i = 0; i < ROWS; i++) {
+            cursor.addRow(new Object[] {
+                    (long) i, "Hábito " + i, "Meta " + i, "salud", types[i % types.length].name(),
+                    i % 2, 10, 1.5, "km", 20, "08:00", 15, 0, 3, 1, "L,X,V", 8, 1, 0, 0,
+                    "ic_habit", i % 30, 1_700_000_000_000L + i
+            });
+        }
+        return cursor;
+    }
+
+    // Mapeo anterior, copiado tal cual de la línea base: el cuerpo del bucle de getAllHabits
+    // (getColumnIndex por nombre en cada fila) y loadHabitExtraFields
+    private Habit mapWithLookups(Cursor cursor) {
+        Habit habit = new Habit(
+                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_TITLE)),
+                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_GOAL)),
+                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_CATEGORY)),
+                Habit.HabitType.valueOf(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_TYPE))));
+        habit.setCompleted(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_HABIT_COMPLETED)) == 1);
+        long id = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_HABIT_ID));
+        habit.setId(id);
+        loadHabitExtraFields(cursor, habit);
+        return habit;
+    }
+
+    /**
+     * Carga los campos adicionales de un hábito desde el cursor
+     */
+    private void loadHabitExtraFields(Cursor cursor, Habit habit) {
+        try {
+            // Cargar points
+            int pointsIndex = cursor.getColumnIndex(COLUMN_HABIT_POINTS);
+            if (pointsIndex >= 0 && !cursor.isNull(pointsIndex)) {
+                habit.setPoints(cursor.getInt(pointsIndex));
+            }
+
+            int targetValueIndex = cursor.getColumnIndex(COLUMN_HABIT_TARGET_VALUE);
+            int targetUnitIndex = cursor.getColumnIndex(COLUMN_HABIT_TARGET_UNIT);
+            if (targetValueIndex >= 0 && !cursor.isNull(targetValueIndex)) {
+                habit.setTargetValue(cursor.getDouble(targetValueIndex));
+            }
+            if (targetUnitIndex >= 0 && !cursor.isNull(targetUnitIndex)) {
+                habit.setTargetUnit(cursor.getString(targetUnitIndex));
+            }
+
+            // Nuevos campos
+            int pagesPerDayIndex = cursor.getColumnIndex(COLUMN_HABIT_PAGES_PER_DAY);
+            if (pagesPerDayIndex >= 0 && !cursor.isNull(pagesPerDayIndex)) {
+                habit.setPagesPerDay(cursor.getInt(pagesPerDayIndex));
+            }
+
+            int reminderTimesIndex = cursor.getColumnIndex(COLUMN_HABIT_REMINDER_TIMES);
+            if (reminderTimesIndex >= 0 && !cursor.isNull(reminderTimesIndex)) {
+                habit.setReminderTimes(cursor.getString(reminderTimesIndex));
+            }
+
+            int durationMinutesIndex = cursor.getColumnIndex(COLUMN_HABIT_DURATION_MINUTES);
+            if (durationMinutesIndex >= 0 && !cursor.isNull(durationMinutesIndex)) {
+                habit.setDurationMinutes(cursor.getInt(durationMinutesIndex));
+            }
+
+            int dndModeIndex = cursor.getColumnIndex(COLUMN_HABIT_DND_MODE);
+            if (dndModeIndex >= 0 && !cursor.isNull(dndModeIndex)) {
+                habit.setDndMode(cursor.getInt(dndModeIndex) == 1);
+            }
+
+            int musicIdIndex = cursor.getColumnIndex(COLUMN_HABIT_MUSIC_ID);
+            if (musicIdIndex >= 0 && !cursor.isNull(musicIdIndex)) {
+                habit.setMusicId(cursor.getInt(musicIdIndex));
+            }
+
+            int journalEnabledIndex = cursor.getColumnIndex(COLUMN_HABIT_JOURNAL_ENABLED);
+            if (journalEnabledIndex >= 0 && !cursor.isNull(journalEnabledIndex)) {
+                habit.setJournalEnabled(cursor.getInt(journalEnabledIndex) == 1);
+            }
+
+            int gymDaysIndex = cursor.getColumnIndex(COLUMN_HABIT_GYM_DAYS);
+            if (gymDaysIndex >= 0 && !cursor.isNull(gymDaysIndex)) {
+                habit.setGymDays(cursor.getString(gymDaysIndex));
+            }
+
+            int waterGoalGlassesIndex = cursor.getColumnIndex(COLUMN_HABIT_WATER_GOAL_GLASSES);
+            if (waterGoalGlassesIndex >= 0 && !cursor.isNull(waterGoalGlassesIndex)) {
+                habit.setWaterGoalGlasses(cursor.getInt(waterGoalGlassesIndex));
+            }
+
+            int oneClickCompleteIndex = cursor.getColumnIndex(COLUMN_HABIT_ONE_CLICK_COMPLETE);
+            if (oneClickCompleteIndex >= 0 && !cursor.isNull(oneClickCompleteIndex)) {
+                habit.setOneClickComplete(cursor.getInt(oneClickCompleteIndex) == 1);
+            }
+
+            int englishModeIndex = cursor.getColumnIndex(COLUMN_HABIT_ENGLISH_MODE);
+            if (englishModeIndex >= 0 && !cursor.isNull(englishModeIndex)) {
+                habit.setEnglishMode(cursor.getInt(englishModeIndex) == 1);
+            }
+
+            int codingModeIndex = cursor.getColumnIndex(COLUMN_HABIT_CODING_MODE);
+            if (codingModeIndex >= 0 && !cursor.isNull(codingModeIndex)) {
+                habit.setCodingMode(cursor.getInt(codingModeIndex) == 1);
+            }
+
+            int habitIconIndex = cursor.getColumnIndex(COLUMN_HABIT_ICON);
+            if (habitIconIndex >= 0 && !cursor.isNull(habitIconIndex)) {
+                habit.setHabitIcon(cursor.getString(habitIconIndex));
+            }
+
+            int streakIndex = cursor.getColumnIndex(COLUMN_HABIT_STREAK_COUNT);
+            if (streakIndex >= 0 && !cursor.isNull(streakIndex)) {
+                habit.setStreakCount(cursor.getInt(streakIndex));
+            }
+
+            int lastCompletedIndex = cursor.getColumnIndex(COLUMN_HABIT_LAST_COMPLETED_DATE);
+            if (lastCompletedIndex >= 0 && !cursor.isNull(lastCompletedIndex)) {
+                habit.setLastCompletedDate(cursor.getLong(lastCompletedIndex));
+            }
+        } catch (Exception e) {
+            // Si las columnas no existen, ignorar el error
+        }
+    }
+}
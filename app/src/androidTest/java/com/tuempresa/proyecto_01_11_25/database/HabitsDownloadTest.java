@@ -0,0 +1,177 @@
+package com.tuempresa.proyecto_01_11_25.database;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.model.HabitsResponse;
+import com.tuempresa.proyecto_01_11_25.utils.SessionManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * applyHabitsDownload sobre la base de datos real, con usuarios de prueba propios: merge del
+ * delta, tombstones, lista completa sin watermark y una lectura que falla a mitad.
+ */
+@RunWith(AndroidJUnit4.class)
+public class HabitsDownloadTest {
+    private static final long TEST_USER_ID = 987_654_324L;
+    private static final long OTHER_USER_ID = 987_654_325L;
+    // Más que DOWNLOAD_CHUNK_SIZE, para que un bloque se confirme antes del fallo
+    private static final int HABITS_BEFORE_FAILURE = 150;
+
+    private HabitDatabaseHelperSync dbHelper;
+    private SessionManager session;
+    private long previousUserId;
+    private String previousEmail;
+    private boolean wasLoggedIn;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        dbHelper = HabitDatabaseHelperSync.getInstance(context);
+        session = new SessionManager(context);
+        wasLoggedIn = session.isLoggedIn();
+        previousUserId = session.getUserId();
+        previousEmail = session.getUserEmail();
+        dbHelper.deleteUser(OTHER_USER_ID);
+        dbHelper.deleteUser(TEST_USER_ID);
+        session.createLoginSession(TEST_USER_ID, "download-test@example.com");
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.deleteUser(TEST_USER_ID);
+        dbHelper.deleteUser(OTHER_USER_ID);
+        session.logoutUser();
+        if (wasLoggedIn) {
+            session.createLoginSession(previousUserId, previousEmail);
+        }
+    }
+
+    @Test
+    public void deltaMergesHabitsAndAdvancesWatermark() throws Exception {
+        long habitId = insertSynced("Leer", 987_101L);
+        long watermark = dbHelper.getHabitsWatermark() + 100;
+
+        int applied = dbHelper.applyHabitsDownload(consumer -> {
+            consumer.accept(serverHabit(987_101L, "Leer 20 páginas"));
+            consumer.accept(serverHabit(987_102L, "Caminar"));
+            return delta(watermark);
+        });
+
+        assertEquals(2, applied);
+        assertEquals("Leer 20 páginas", dbHelper.getHabitById(habitId).getTitle());
+        Habit inserted = dbHelper.getHabitByServerId(987_102L);
+        assertNotNull(inserted);
+        assertEquals("Caminar", inserted.getTitle());
+        assertTrue(dbHelper.isHabitSynced(inserted.getId()));
+        assertEquals(watermark, dbHelper.getHabitsWatermark());
+    }
+
+    @Test
+    public void tombstonesDeleteOnlySyncedHabits() throws Exception {
+        long synced = insertSynced("Meditar", 987_201L);
+        long pending = insertSynced("Correr", 987_202L);
+        dbHelper.markHabitAsUnsynced(pending);
+
+        dbHelper.applyHabitsDownload(consumer -> {
+            HabitsResponse response = delta(dbHelper.getHabitsWatermark() + 1);
+            response.setDeletedIds(Arrays.asList(987_201L, 987_202L));
+            return response;
+        });
+
+        assertNull(dbHelper.getHabitById(synced));
+        // Tiene cambios locales sin subir: se conserva para enviarlos en el próximo habits/sync
+        assertNotNull(dbHelper.getHabitById(pending));
+    }
+
+    @Test
+    public void fullListWithoutWatermarkDeletesMissingSyncedHabits() throws Exception {
+        session.createLoginSession(OTHER_USER_ID, "download-other@example.com");
+        long otherUsers = insertSynced("Agua", 987_301L);
+        session.createLoginSession(TEST_USER_ID, "download-test@example.com");
+
+        long kept = insertSynced("Leer", 987_302L);
+        long missing = insertSynced("Yoga", 987_303L);
+        long local = dbHelper.insertHabit("Dibujar", "Meta", "arte", Habit.HabitType.DEMO.name(), 5);
+        long watermark = dbHelper.getHabitsWatermark();
+
+        dbHelper.applyHabitsDownload(consumer -> {
+            consumer.accept(serverHabit(987_302L, "Leer"));
+            return new HabitsResponse(true, null, null);
+        });
+
+        assertNotNull(dbHelper.getHabitById(kept));
+        assertNull(dbHelper.getHabitById(missing));
+        // Sin serverId todavía: el servidor no podía enviarlo
+        assertNotNull(dbHelper.getHabitById(local));
+        // La lista completa es solo la del usuario actual
+        assertNotNull(dbHelper.getHabitById(otherUsers));
+        assertEquals(watermark, dbHelper.getHabitsWatermark());
+    }
+
+    @Test
+    public void failedStreamKeepsWatermark() throws Exception {
+        long watermark = dbHelper.getHabitsWatermark() + 100;
+        dbHelper.applyHabitsDownload(consumer -> delta(watermark));
+        long doomed = insertSynced("Nadar", 987_401L);
+
+        IOException error = assertThrows(IOException.class, () -> dbHelper.applyHabitsDownload(consumer -> {
+            for (int i = 0; i < HABITS_BEFORE_FAILURE; i++) {
+                consumer.accept(serverHabit(987_500L + i, "Hábito " + i));
+            }
+            throw new IOException("Conexión cortada");
+        }));
+
+        assertEquals("Conexión cortada", error.getMessage());
+        assertEquals(watermark, dbHelper.getHabitsWatermark());
+        // El primer bloque ya estaba confirmado; el resto y los tombstones llegan al repetir el delta
+        assertNotNull(dbHelper.getHabitByServerId(987_500L));
+        assertNull(dbHelper.getHabitByServerId(987_500L + HABITS_BEFORE_FAILURE - 1));
+        assertNotNull(dbHelper.getHabitById(doomed));
+
+        int applied = dbHelper.applyHabitsDownload(consumer -> {
+            for (int i = 0; i < HABITS_BEFORE_FAILURE; i++) {
+                consumer.accept(serverHabit(987_500L + i, "Hábito " + i));
+            }
+            HabitsResponse response = delta(watermark + 1);
+            response.setDeletedIds(Collections.singletonList(987_401L));
+            return response;
+        });
+
+        assertEquals(HABITS_BEFORE_FAILURE, applied);
+        assertNotNull(dbHelper.getHabitByServerId(987_500L + HABITS_BEFORE_FAILURE - 1));
+        assertNull(dbHelper.getHabitById(doomed));
+        assertEquals(watermark + 1, dbHelper.getHabitsWatermark());
+    }
+
+    private long insertSynced(String title, long serverId) {
+        long habitId = dbHelper.insertHabit(title, "Meta", "salud", Habit.HabitType.DEMO.name(), 5);
+        dbHelper.markHabitAsSynced(habitId, serverId);
+        return habitId;
+    }
+
+    private static Habit serverHabit(long serverId, String title) {
+        Habit habit = new Habit(title, "Meta", "salud", Habit.HabitType.DEMO);
+        habit.setId(serverId);
+        return habit;
+    }
+
+    private static HabitsResponse delta(long watermark) {
+        HabitsResponse response = new HabitsResponse(true, null, null);
+        response.setWatermark(watermark);
+        return response;
+    }
+}
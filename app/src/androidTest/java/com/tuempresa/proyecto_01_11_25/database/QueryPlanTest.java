@@ -0,0 +1,110 @@
+package com.tuempresa.proyecto_01_11_25.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * EXPLAIN QUERY PLAN de las consultas más frecuentes (las mismas que getAllHabits,
+ * getAllScores, getUnsyncedHabits, getHabitByServerId y deleteProgressBefore, y la búsqueda
+ * de scores por hábito): cada una debe resolverse con SEARCH sobre su índice, sin SCAN de la
+ * tabla ni ordenación en un B-tree temporal.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryPlanTest {
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        db = HabitDatabaseHelperSync.getInstance(context).getReadableDatabase();
+    }
+
+    @Test
+    public void habitsByUserUseUserCreatedIndex() {
+        assertSearchUsingIndex("idx_habits_user_created",
+                "SELECT * FROM " + HabitDatabaseHelper.TABLE_HABITS
+                        + " WHERE " + HabitDatabaseHelper.COLUMN_HABIT_USER_ID + "=?"
+                        + " ORDER BY " + HabitDatabaseHelper.COLUMN_HABIT_CREATED_AT + " DESC",
+                "1");
+    }
+
+    @Test
+    public void scoresByUserUseUserDateIndex() {
+        assertSearchUsingIndex("idx_scores_user_date",
+                "SELECT * FROM " + HabitDatabaseHelper.TABLE_SCORES
+                        + " WHERE " + HabitDatabaseHelper.COLUMN_SCORE_USER_ID + "=?"
+                        + " ORDER BY " + HabitDatabaseHelper.COLUMN_SCORE_DATE + " DESC",
+                "1");
+    }
+
+    @Test
+    public void pendingSyncUsesSyncedCreatedIndex() {
+        assertSearchUsingIndex("idx_habits_synced_created",
+                "SELECT * FROM " + HabitDatabaseHelper.TABLE_HABITS
+                        + " WHERE synced=0"
+                        + " ORDER BY " + HabitDatabaseHelper.COLUMN_HABIT_CREATED_AT + " DESC");
+    }
+
+    @Test
+    public void habitByServerIdUsesServerIdIndex() {
+        assertSearchUsingIndex("idx_habits_server_id",
+                "SELECT * FROM " + HabitDatabaseHelper.TABLE_HABITS + " WHERE server_id=?",
+                "1");
+    }
+
+    @Test
+    public void scoresByHabitUseHabitIndex() {
+        // La misma búsqueda que hace la clave foránea de scores al borrar un hábito
+        assertSearchUsingIndex("idx_scores_habit",
+                "SELECT * FROM " + HabitDatabaseHelper.TABLE_SCORES
+                        + " WHERE " + HabitDatabaseHelper.COLUMN_SCORE_HABIT_ID + "=?",
+                "1");
+    }
+
+    @Test
+    public void progressCleanupUsesDayIndex() {
+        assertSearchUsingIndex("idx_habit_progress_day",
+                "DELETE FROM " + HabitDatabaseHelper.TABLE_HABIT_PROGRESS
+                        + " WHERE " + HabitDatabaseHelper.COLUMN_PROGRESS_DAY + " < ?",
+                "2024-01-01");
+    }
+
+    private void assertSearchUsingIndex(String index, String sql, String... args) {
+        List<String> plan = explain(sql, args);
+        String joined = String.join("\n", plan);
+
+        boolean usesIndex = false;
+        for (String detail : plan) {
+            assertFalse("SCAN en el plan:\n" + joined, detail.startsWith("SCAN"));
+            assertFalse("Ordenación temporal en el plan:\n" + joined, detail.contains("TEMP B-TREE"));
+            if (detail.startsWith("SEARCH") && detail.matches(".* USING (COVERING )?INDEX " + index + "\\b.*")) {
+                usesIndex = true;
+            }
+        }
+        assertTrue("Se esperaba SEARCH ... USING INDEX " + index + ":\n" + joined, usesIndex);
+    }
+
+    private List<String> explain(String sql, String... args) {
+        List<String> plan = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args)) {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detail));
+            }
+        }
+        return plan;
+    }
+}
@@ -0,0 +1,192 @@
+package com.tuempresa.proyecto_01_11_25.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.google.gson.Gson;
+import com.tuempresa.proyecto_01_11_25.api.HabitApiClient;
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.model.HabitsResponse;
+import com.tuempresa.proyecto_01_11_25.model.Score;
+import com.tuempresa.proyecto_01_11_25.sync.SyncManager;
+import com.tuempresa.proyecto_01_11_25.utils.GsonProvider;
+import com.tuempresa.proyecto_01_11_25.utils.SessionManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.GzipSource;
+import okio.Okio;
+
+import static org.junit.Assert.*;
+
+/**
+ * Conexiones abiertas por sincronización: SyncManager.syncBlocking() real contra un servidor
+ * simulado (habits/sync, scores y GET habits?since=). Antes de compartir el helper cada acceso
+ * a la base abría y cerraba su conexión, así que las aperturas de entonces equivalen a los
+ * accesos (get*Database) que hace una sincronización; con el helper compartido se cuentan las
+ * de onOpen. Los resultados se escriben en logcat con el tag "SharedConnectionBenchmark".
+ */
+@RunWith(AndroidJUnit4.class)
+public class SharedConnectionBenchmark {
+    private static final String TAG = "SharedConnectionBenchmark";
+    private static final String DATABASE_NAME = "habitus.db";
+    private static final long TEST_USER_ID = 987_654_323L;
+    private static final int HABITS_PER_SYNC = 20;
+    private static final int ROUNDS = 5;
+    private static final int OPEN_CLOSE_SAMPLES = 50;
+
+    private final Gson gson = GsonProvider.get();
+    private final AtomicLong nextServerId = new AtomicLong(900_000);
+    private final AtomicInteger batchRequests = new AtomicInteger();
+    private Context context;
+    private HabitDatabaseHelperSync dbHelper;
+    private SessionManager session;
+    private long previousUserId;
+    private String previousEmail;
+    private boolean wasLoggedIn;
+    private MockWebServer server;
+    private HabitApiClient apiClient;
+    private String previousBaseUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        dbHelper = HabitDatabaseHelperSync.getInstance(context);
+        session = new SessionManager(context);
+        wasLoggedIn = session.isLoggedIn();
+        previousUserId = session.getUserId();
+        previousEmail = session.getUserEmail();
+        session.createLoginSession(TEST_USER_ID, "connection-bench@example.com");
+        dbHelper.deleteUser(TEST_USER_ID);
+
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return respond(request);
+            }
+        });
+        server.start();
+        apiClient = HabitApiClient.getInstance(context);
+        previousBaseUrl = apiClient.getBaseUrl();
+        apiClient.setBaseUrl(server.url("/api/v1/").toString());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        apiClient.setBaseUrl(previousBaseUrl);
+        server.shutdown();
+        dbHelper.deleteUser(TEST_USER_ID);
+        session.logoutUser();
+        if (wasLoggedIn) {
+            session.createLoginSession(previousUserId, previousEmail);
+        }
+    }
+
+    @Test
+    public void syncReusesTheSharedConnection() throws Exception {
+        SyncManager syncManager = SyncManager.getInstance(context);
+        long[] syncNanos = new long[ROUNDS];
+        long opens = 0;
+        long accesses = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < HABITS_PER_SYNC; i++) {
+                dbHelper.insertHabit("Hábito " + round + "-" + i, "Meta", "salud", Habit.HabitType.WATER.name(), 5);
+            }
+            long opensBefore = dbHelper.getConnectionOpenCount();
+            long accessesBefore = dbHelper.getDatabaseAccessCount();
+            long start = System.nanoTime();
+            int synced = syncManager.syncBlocking();
+            syncNanos[round] = System.nanoTime() - start;
+            opens += dbHelper.getConnectionOpenCount() - opensBefore;
+            accesses += dbHelper.getDatabaseAccessCount() - accessesBefore;
+
+            assertTrue("La sincronización debe subir los hábitos nuevos", synced >= HABITS_PER_SYNC);
+        }
+
+        assertTrue(batchRequests.get() >= ROUNDS);
+        assertTrue(accesses >= ROUNDS);
+        // La conexión ya estaba abierta: ninguna sincronización abre otra
+        assertEquals(0, opens);
+
+        long openCloseMicros = openCloseMicros();
+        long accessesPerSync = accesses / ROUNDS;
+        Log.i(TAG, "Por sincronización (" + HABITS_PER_SYNC + " hábitos, " + ROUNDS + " rondas): "
+                + accessesPerSync + " aperturas con conexión por llamada, " + opens / ROUNDS
+                + " con el helper compartido; sincronización p50 " + percentile(syncNanos, 50) / 1_000
+                + " µs; abrir+cerrar p50 " + openCloseMicros + " µs, ~" + accessesPerSync * openCloseMicros
+                + " µs que ya no se pagan por sincronización");
+    }
+
+    /**
+     * Mediana de abrir y cerrar una conexión a habitus.db, lo que pagaba cada acceso antes del cambio.
+     */
+    private long openCloseMicros() {
+        String path = context.getDatabasePath(DATABASE_NAME).getPath();
+        long[] nanos = new long[OPEN_CLOSE_SAMPLES];
+        for (int i = 0; i < OPEN_CLOSE_SAMPLES; i++) {
+            long start = System.nanoTime();
+            SQLiteDatabase db = SQLiteDatabase.openDatabase(path, null,
+                    SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING);
+            db.close();
+            nanos[i] = System.nanoTime() - start;
+        }
+        return percentile(nanos, 50) / 1_000;
+    }
+
+    private MockResponse respond(RecordedRequest request) {
+        String path = request.getPath();
+        try {
+            if (path.contains("habits/sync")) {
+                batchRequests.incrementAndGet();
+                Habit[] sent = gson.fromJson(Okio.buffer(new GzipSource(request.getBody())).readUtf8(), Habit[].class);
+                for (Habit habit : sent) {
+                    habit.setId(nextServerId.incrementAndGet());
+                }
+                return json(new HabitsResponse(true, null, Arrays.asList(sent)));
+            }
+            if (path.contains("scores")) {
+                Score score = gson.fromJson(request.getBody().readUtf8(), Score.class);
+                score.setId(nextServerId.incrementAndGet());
+                return json(score);
+            }
+        } catch (IOException e) {
+            return new MockResponse().setResponseCode(400);
+        }
+        if ("GET".equals(request.getMethod()) && path.contains("habits")) {
+            // Delta vacío con marca de agua: no hay cambios del servidor que aplicar
+            HabitsResponse delta = new HabitsResponse(true, null, new ArrayList<>());
+            delta.setWatermark(System.currentTimeMillis() / 1000);
+            return json(delta);
+        }
+        return new MockResponse().setResponseCode(404);
+    }
+
+    private MockResponse json(Object body) {
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(gson.toJson(body));
+    }
+
+    private static long percentile(long[] nanos, int p) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        int index = Math.min(sorted.length - 1, sorted.length * p / 100);
+        return sorted[index];
+    }
+}
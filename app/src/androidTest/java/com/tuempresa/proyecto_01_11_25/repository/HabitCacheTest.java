@@ -0,0 +1,157 @@
+package com.tuempresa.proyecto_01_11_25.repository;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelperSync;
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.utils.SessionManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * HabitCache sobre la base de datos real, con un usuario de prueba propio: las escrituras
+ * hechas directamente en HabitDatabaseHelper invalidan la caché, las del repositorio se
+ * aplican en memoria, y la búsqueda por tipo no vuelve a consultar SQLite.
+ */
+@RunWith(AndroidJUnit4.class)
+public class HabitCacheTest {
+    private static final String TAG = "HabitCacheTest";
+    private static final long TEST_USER_ID = 987_654_321L;
+
+    private Context context;
+    private HabitDatabaseHelperSync dbHelper;
+    private SessionManager session;
+    private long previousUserId;
+    private String previousEmail;
+    private boolean wasLoggedIn;
+    private HabitCache cache;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        dbHelper = HabitDatabaseHelperSync.getInstance(context);
+        session = new SessionManager(context);
+        wasLoggedIn = session.isLoggedIn();
+        previousUserId = session.getUserId();
+        previousEmail = session.getUserEmail();
+        session.createLoginSession(TEST_USER_ID, "cache-test@example.com");
+        deleteTestHabits();
+        cache = new HabitCache(context, dbHelper);
+    }
+
+    @After
+    public void tearDown() {
+        deleteTestHabits();
+        session.logoutUser();
+        if (wasLoggedIn) {
+            session.createLoginSession(previousUserId, previousEmail);
+        }
+    }
+
+    @Test
+    public void directWritesInvalidateTheCache() {
+        assertTrue(cache.getAll().isEmpty());
+
+        long id = insert("Caminar", Habit.HabitType.WALK);
+        assertEquals("Caminar", cache.get(id).getTitle());
+        assertEquals(id, cache.getFirstOfType(Habit.HabitType.WALK, true).getId());
+
+        dbHelper.updateHabitCompleted(id, true);
+        assertTrue(cache.get(id).isCompleted());
+        assertNull(cache.getFirstOfType(Habit.HabitType.WALK, true));
+
+        dbHelper.markHabitAsSynced(id, 4242);
+        assertEquals(id, cache.getByServerId(4242).getId());
+
+        dbHelper.deleteHabit(id);
+        assertNull(cache.get(id));
+        assertNull(cache.getByServerId(4242));
+    }
+
+    @Test
+    public void writeThroughKeepsTheSnapshotWithoutReloading() {
+        long first = insert("Leer", Habit.HabitType.READ_BOOK);
+        assertEquals(1, cache.getAll().size());
+
+        long versionBefore = dbHelper.getHabitsVersion();
+        long second = insert("Agua", Habit.HabitType.WATER);
+        cache.put(versionBefore, dbHelper.getHabitById(second));
+
+        // La instantánea sigue vigente: es la misma versión que tiene SQLite
+        assertEquals(dbHelper.getHabitsVersion(), versionBefore + 1);
+        assertEquals(second, cache.getAll().get(0).getId());
+        assertEquals(first, cache.getFirstOfType(Habit.HabitType.READ_BOOK, false).getId());
+
+        versionBefore = dbHelper.getHabitsVersion();
+        dbHelper.deleteHabit(first);
+        cache.remove(versionBefore, first);
+        assertNull(cache.get(first));
+        assertEquals(1, cache.getAll().size());
+    }
+
+    @Test
+    public void writeThroughAfterForeignWriteFallsBackToReload() {
+        long id = insert("Meditar", Habit.HabitType.MEDITATE);
+        cache.getAll();
+
+        long versionBefore = dbHelper.getHabitsVersion();
+        dbHelper.updateHabitCompleted(id, true);
+        // Otra escritura se cuela antes de aplicar la nuestra en memoria
+        long other = insert("Gym", Habit.HabitType.GYM);
+        Habit stale = new Habit(cache.get(id));
+        stale.setCompleted(false);
+        cache.put(versionBefore, stale);
+
+        assertTrue(cache.get(id).isCompleted());
+        assertNotNull(cache.get(other));
+    }
+
+    @Test
+    public void returnedHabitsAreCopies() {
+        long id = insert("Vitaminas", Habit.HabitType.VITAMINS);
+        cache.get(id).setTitle("Modificado");
+        assertEquals("Vitaminas", cache.get(id).getTitle());
+    }
+
+    @Test
+    public void typeLookupFromMemory() {
+        for (int i = 0; i < 200; i++) {
+            insert("Hábito " + i, Habit.HabitType.values()[i % Habit.HabitType.values().length]);
+        }
+        cache.getAll();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 10_000; i++) {
+            assertNotNull(cache.getFirstOfType(Habit.HabitType.WALK, true));
+        }
+        long cacheNanos = (System.nanoTime() - start) / 10_000;
+
+        start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(dbHelper.getFirstHabitByType(Habit.HabitType.WALK, true));
+        }
+        long sqliteNanos = (System.nanoTime() - start) / 100;
+
+        Log.i(TAG, "Hábito pendiente por tipo: caché " + cacheNanos + " ns, SQLite " + sqliteNanos + " ns");
+        assertTrue(cacheNanos < sqliteNanos);
+    }
+
+    private long insert(String title, Habit.HabitType type) {
+        return dbHelper.insertHabit(title, "Meta", "salud", type.name(), 10);
+    }
+
+    private void deleteTestHabits() {
+        for (Habit habit : dbHelper.getAllHabits()) {
+            dbHelper.deleteHabit(habit.getId());
+        }
+    }
+}
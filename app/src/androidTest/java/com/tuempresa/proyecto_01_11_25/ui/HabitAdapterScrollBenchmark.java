@@ -0,0 +1,98 @@
+package com.tuempresa.proyecto_01_11_25.ui;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.tuempresa.proyecto_01_11_25.R;
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark de desplazamiento de la lista de hábitos: 500 tarjetas en un RecyclerView de
+ * 1080x1920 recorrido con scrollBy. Cada paso equivale al trabajo de layout/bind de un frame
+ * (sin dibujo). Los percentiles se escriben en logcat con el tag "HabitAdapterScrollBenchmark".
+ */
+@RunWith(AndroidJUnit4.class)
+public class HabitAdapterScrollBenchmark {
+    private static final String TAG = "HabitAdapterScrollBenchmark";
+    private static final int HABITS = 500;
+    private static final int STEP_PX = 120;
+    private static final long FRAME_BUDGET_NANOS = 16_666_667L;
+
+    @Test
+    public void scrollFiveHundredHabits() {
+        Context context = new ContextThemeWrapper(
+                InstrumentationRegistry.getInstrumentation().getTargetContext(), R.style.Theme_Proyecto_01_11_25);
+
+        List<Habit> habits = new ArrayList<>();
+        Map<Long, Integer> progress = new HashMap<>();
+        Habit.HabitType[] types = { Habit.HabitType.READ_BOOK, Habit.HabitType.WATER, Habit.HabitType.DEMO,
+                Habit.HabitType.GYM };
+        for (int i = 0; i < HABITS; i++) {
+            Habit habit = new Habit("Hábito " + i, "Meta " + i, "salud", types[i % types.length]);
+            habit.setId(i + 1);
+            habit.setPagesPerDay(10);
+            habit.setWaterGoalGlasses(8);
+            habit.setCompleted(i % 3 == 0);
+            habits.add(habit);
+            progress.put((long) (i + 1), i % 12);
+        }
+
+        List<Long> frames = new ArrayList<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            RecyclerView rv = new RecyclerView(context);
+            rv.setLayoutManager(new LinearLayoutManager(context));
+            // La lista inicial se aplica de forma síncrona; submitFirstPage la difería al hilo del diff
+            HabitAdapter adapter = new HabitAdapter(habits, habit -> { });
+            rv.setAdapter(adapter);
+            adapter.setProgressSnapshot(progress);
+            assertEquals(HABITS, adapter.getItemCount());
+
+            rv.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(1920, View.MeasureSpec.EXACTLY));
+            rv.layout(0, 0, 1080, 1920);
+
+            while (rv.canScrollVertically(1)) {
+                long start = System.nanoTime();
+                rv.scrollBy(0, STEP_PX);
+                frames.add(System.nanoTime() - start);
+            }
+        });
+
+        assertFalse(frames.isEmpty());
+        long[] sorted = new long[frames.size()];
+        int overBudget = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = frames.get(i);
+            if (sorted[i] > FRAME_BUDGET_NANOS) {
+                overBudget++;
+            }
+        }
+        Arrays.sort(sorted);
+        Log.i(TAG, frames.size() + " frames, p50=" + percentile(sorted, 50) / 1_000 + " µs, p90="
+                + percentile(sorted, 90) / 1_000 + " µs, p99=" + percentile(sorted, 99) / 1_000 + " µs, max="
+                + sorted[sorted.length - 1] / 1_000 + " µs, sobre 16 ms: " + overBudget);
+    }
+
+    private static long percentile(long[] sorted, int p) {
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(p / 100.0 * sorted.length) - 1);
+        return sorted[Math.max(0, index)];
+    }
+}
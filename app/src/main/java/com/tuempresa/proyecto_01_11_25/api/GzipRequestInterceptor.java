@@ -0,0 +1,46 @@
+package com.tuempresa.proyecto_01_11_25.api;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * Comprime con gzip el cuerpo de las peticiones que declaran "Content-Encoding: gzip"
+ * (en HabitApiService, con @Headers). El resto de peticiones pasa sin cambios.
+ */
+class GzipRequestInterceptor implements Interceptor {
+    static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    static final String GZIP = "gzip";
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        RequestBody body = request.body();
+        if (body == null || !GZIP.equalsIgnoreCase(request.header(HEADER_CONTENT_ENCODING))) {
+            return chain.proceed(request);
+        }
+        return chain.proceed(request.newBuilder()
+                .method(request.method(), gzip(body))
+                .build());
+    }
+
+    /**
+     * Comprime el cuerpo en memoria para poder enviar Content-Length (sin chunked).
+     */
+    private static RequestBody gzip(RequestBody body) throws IOException {
+        Buffer compressed = new Buffer();
+        try (BufferedSink sink = Okio.buffer(new GzipSink(compressed))) {
+            body.writeTo(sink);
+        }
+        MediaType contentType = body.contentType();
+        return RequestBody.create(compressed.readByteString(), contentType);
+    }
+}
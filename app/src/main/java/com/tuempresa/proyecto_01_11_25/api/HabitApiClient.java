@@ -1,22 +1,29 @@
 package com.tuempresa.proyecto_01_11_25.api;
 
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
 import android.util.Log;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.tuempresa.proyecto_01_11_25.model.Habit;
-import com.tuempresa.proyecto_01_11_25.utils.HabitTypeAdapter;
+import com.tuempresa.proyecto_01_11_25.utils.GsonProvider;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
+import okhttp3.Response;
 import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
 /**
  * Cliente singleton para manejar las llamadas a la API usando Retrofit.
- * Configura Retrofit con Gson y un adaptador personalizado para HabitType.
+ * Configura Retrofit con el Gson compartido (GsonProvider), sobre un único
+ * OkHttpClient compartido (pool de conexiones, dispatcher y caché HTTP en disco).
  */
 public class HabitApiClient {
     private static final String TAG = "HabitApiClient";
@@ -30,55 +37,119 @@ public class HabitApiClient {
     // private static final String BASE_URL = "http://192.168.1.100:5098/api/v1/"; // Dispositivo físico (cambiar IP y puerto)
     // private static final String BASE_URL = "https://demopagina.somee.com/api/v1/"; // Producción
     
+    private static final String HTTP_CACHE_DIR = "http";
+    private static final long HTTP_CACHE_SIZE_BYTES = 10L * 1024 * 1024;
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
     private static HabitApiClient instance;
-    private HabitApiService apiService;
-    private ScoreApiService scoreApiService;
-    private Retrofit retrofit;
+    private final OkHttpClient okHttpClient;
+    private final Gson gson;
+    private volatile HabitApiService apiService;
+    private volatile ScoreApiService scoreApiService;
+    private volatile Retrofit retrofit;
+    private volatile RequestOutcomeListener requestOutcomeListener;
 
     /**
-     * Constructor privado para implementar patrón Singleton.
+     * Recibe el resultado de cada petición real a la API (salud pasiva).
+     * Se llama desde los hilos de OkHttp.
      */
-    private HabitApiClient() {
-        // Configurar Gson con adaptador personalizado para HabitType
-        Gson gson = new GsonBuilder()
-                .registerTypeAdapter(Habit.HabitType.class, new HabitTypeAdapter())
-                .setLenient()
-                .create();
-
-        // Configurar interceptor de logging (solo en modo debug)
-        HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor();
-        loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
-
-        // Configurar OkHttpClient con timeout
-        OkHttpClient okHttpClient = new OkHttpClient.Builder()
-                .addInterceptor(loggingInterceptor)
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(30, TimeUnit.SECONDS)
-                .writeTimeout(30, TimeUnit.SECONDS)
-                .build();
+    public interface RequestOutcomeListener {
+        /** El servidor respondió con un código menor que 500. */
+        void onRequestSucceeded();
+        /** Error de red o respuesta 5xx. */
+        void onRequestFailed();
+    }
 
-        // Configurar Retrofit
-        retrofit = new Retrofit.Builder()
-                .baseUrl(BASE_URL)
-                .client(okHttpClient)
-                .addConverterFactory(GsonConverterFactory.create(gson))
-                .build();
+    /**
+     * Informa a requestOutcomeListener del resultado de cada petición. Las peticiones HEAD
+     * (sondas de ConnectionMonitor) no cuentan: la sonda gestiona su propio resultado.
+     */
+    private final Interceptor outcomeInterceptor = chain -> {
+        RequestOutcomeListener listener = requestOutcomeListener;
+        if (listener == null || "HEAD".equals(chain.request().method())) {
+            return chain.proceed(chain.request());
+        }
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException e) {
+            listener.onRequestFailed();
+            throw e;
+        }
+        if (response.code() >= 500) {
+            listener.onRequestFailed();
+        } else {
+            listener.onRequestSucceeded();
+        }
+        return response;
+    };
 
-        apiService = retrofit.create(HabitApiService.class);
-        scoreApiService = retrofit.create(ScoreApiService.class);
+    /**
+     * Constructor privado para implementar patrón Singleton.
+     */
+    private HabitApiClient(Context context) {
+        // Solo si la app es depurable: cabeceras (nunca cuerpos) tal como salen a la red; en release no se registra nada
+        boolean debuggable = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        gson = GsonProvider.get();
+        okHttpClient = newHttpClientBuilder(new File(context.getCacheDir(), HTTP_CACHE_DIR),
+                debuggable ? HttpLoggingInterceptor.Level.HEADERS : HttpLoggingInterceptor.Level.NONE)
+                .addInterceptor(outcomeInterceptor)
+                .build();
+        buildServices(BASE_URL);
     }
 
     /**
      * Obtiene la instancia singleton del cliente API.
+     * @param context Contexto para ubicar la caché HTTP en disco
      * @return Instancia de HabitApiClient
      */
-    public static synchronized HabitApiClient getInstance() {
+    public static synchronized HabitApiClient getInstance(Context context) {
         if (instance == null) {
-            instance = new HabitApiClient();
+            instance = new HabitApiClient(context.getApplicationContext());
         }
         return instance;
     }
 
+    /**
+     * Configuración común de OkHttp: caché en disco (que también resuelve ETag/If-None-Match
+     * con respuestas 304), un único pool de conexiones, gzip de los cuerpos que lo declaran
+     * y log de cabeceras como interceptor de red para ver lo que realmente viaja.
+     * @param cacheDir Directorio de la caché HTTP, o null para no usar caché
+     * @param logLevel Nivel de log; NONE no añade el interceptor
+     */
+    static OkHttpClient.Builder newHttpClientBuilder(File cacheDir, HttpLoggingInterceptor.Level logLevel) {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .addInterceptor(new GzipRequestInterceptor())
+                .connectTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .writeTimeout(30, TimeUnit.SECONDS);
+        if (cacheDir != null) {
+            builder.cache(new Cache(cacheDir, HTTP_CACHE_SIZE_BYTES));
+        }
+        if (logLevel != HttpLoggingInterceptor.Level.NONE) {
+            HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor();
+            loggingInterceptor.setLevel(logLevel);
+            builder.addNetworkInterceptor(loggingInterceptor);
+        }
+        return builder;
+    }
+
+    /**
+     * Crea Retrofit y los servicios sobre el cliente HTTP y el Gson compartidos.
+     */
+    private void buildServices(String baseUrl) {
+        retrofit = new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .client(okHttpClient)
+                .addConverterFactory(GsonConverterFactory.create(gson))
+                .build();
+
+        apiService = retrofit.create(HabitApiService.class);
+        scoreApiService = retrofit.create(ScoreApiService.class);
+    }
+
     /**
      * Obtiene el servicio de API configurado.
      * @return HabitApiService para realizar llamadas a la API
@@ -87,6 +158,13 @@ public class HabitApiClient {
         return apiService;
     }
 
+    /**
+     * Gson compartido, el mismo que usa el conversor de Retrofit.
+     */
+    public Gson getGson() {
+        return gson;
+    }
+
     /**
      * Obtiene el servicio de Score API configurado.
      * @return ScoreApiService para realizar llamadas a la API de scores
@@ -97,41 +175,29 @@ public class HabitApiClient {
 
     /**
      * Permite cambiar la URL base de la API (útil para testing o diferentes entornos).
+     * HabitApiHelper y ScoreApiHelper piden el servicio en cada llamada, así que el cambio
+     * aplica también a los ya creados (p. ej. el de SyncManager).
      * @param baseUrl Nueva URL base
      */
     public void setBaseUrl(String baseUrl) {
-        Gson gson = new GsonBuilder()
-                .registerTypeAdapter(Habit.HabitType.class, new HabitTypeAdapter())
-                .setLenient()
-                .create();
-
-        HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor();
-        loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
-
-        OkHttpClient okHttpClient = new OkHttpClient.Builder()
-                .addInterceptor(loggingInterceptor)
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(30, TimeUnit.SECONDS)
-                .writeTimeout(30, TimeUnit.SECONDS)
-                .build();
-
-        retrofit = new Retrofit.Builder()
-                .baseUrl(baseUrl)
-                .client(okHttpClient)
-                .addConverterFactory(GsonConverterFactory.create(gson))
-                .build();
-
-        apiService = retrofit.create(HabitApiService.class);
-        scoreApiService = retrofit.create(ScoreApiService.class);
+        // Se reutilizan el cliente (pool, caché, dispatcher) y el Gson existentes
+        buildServices(baseUrl);
         Log.d(TAG, "Base URL actualizada a: " + baseUrl);
     }
 
+    /**
+     * Registra quién recibe el resultado de las peticiones (null para dejar de recibirlo).
+     */
+    public void setRequestOutcomeListener(RequestOutcomeListener listener) {
+        this.requestOutcomeListener = listener;
+    }
+
     /**
      * Obtiene la URL base actual.
      * @return URL base configurada
      */
     public String getBaseUrl() {
-        return BASE_URL;
+        return retrofit.baseUrl().toString();
     }
 }
 
@@ -1,12 +1,18 @@
 package com.tuempresa.proyecto_01_11_25.api;
 
+import android.content.Context;
 import android.util.Log;
 
+import com.google.gson.Gson;
 import com.tuempresa.proyecto_01_11_25.model.Habit;
 import com.tuempresa.proyecto_01_11_25.model.HabitsResponse;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.List;
+import java.util.function.Consumer;
 
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
@@ -17,10 +23,13 @@ import retrofit2.Response;
  */
 public class HabitApiHelper {
     private static final String TAG = "HabitApiHelper";
-    private HabitApiService apiService;
+    // El servicio se pide al cliente en cada llamada para seguir los cambios de setBaseUrl
+    private final HabitApiClient client;
+    private final Gson gson;
 
-    public HabitApiHelper() {
-        this.apiService = HabitApiClient.getInstance().getApiService();
+    public HabitApiHelper(Context context) {
+        this.client = HabitApiClient.getInstance(context);
+        this.gson = client.getGson();
     }
 
     /**
@@ -60,7 +69,7 @@ public class HabitApiHelper {
      * @param listener Callback para manejar la respuesta
      */
     public void getAllHabits(OnHabitsLoadedListener listener) {
-        Call<HabitsResponse> call = apiService.getAllHabits();
+        Call<HabitsResponse> call = client.getApiService().getAllHabits();
         call.enqueue(new Callback<HabitsResponse>() {
             @Override
             public void onResponse(Call<HabitsResponse> call, Response<HabitsResponse> response) {
@@ -99,7 +108,7 @@ public class HabitApiHelper {
      * @param listener Callback para manejar la respuesta
      */
     public void getHabitById(long id, OnHabitLoadedListener listener) {
-        Call<Habit> call = apiService.getHabitById(id);
+        Call<Habit> call = client.getApiService().getHabitById(id);
         call.enqueue(new Callback<Habit>() {
             @Override
             public void onResponse(Call<Habit> call, Response<Habit> response) {
@@ -125,7 +134,7 @@ public class HabitApiHelper {
      * @param listener Callback para manejar la respuesta
      */
     public void createHabit(Habit habit, OnHabitSavedListener listener) {
-        Call<Habit> call = apiService.createHabit(habit);
+        Call<Habit> call = client.getApiService().createHabit(habit);
         call.enqueue(new Callback<Habit>() {
             @Override
             public void onResponse(Call<Habit> call, Response<Habit> response) {
@@ -152,7 +161,7 @@ public class HabitApiHelper {
      * @param listener Callback para manejar la respuesta
      */
     public void updateHabit(long id, Habit habit, OnHabitSavedListener listener) {
-        Call<Habit> call = apiService.updateHabit(id, habit);
+        Call<Habit> call = client.getApiService().updateHabit(id, habit);
         call.enqueue(new Callback<Habit>() {
             @Override
             public void onResponse(Call<Habit> call, Response<Habit> response) {
@@ -178,7 +187,7 @@ public class HabitApiHelper {
      * @param listener Callback para manejar la respuesta
      */
     public void deleteHabit(long id, OnHabitDeletedListener listener) {
-        Call<HabitsResponse> call = apiService.deleteHabit(id);
+        Call<HabitsResponse> call = client.getApiService().deleteHabit(id);
         call.enqueue(new Callback<HabitsResponse>() {
             @Override
             public void onResponse(Call<HabitsResponse> call, Response<HabitsResponse> response) {
@@ -204,7 +213,7 @@ public class HabitApiHelper {
      * @param listener Callback para manejar la respuesta
      */
     public void syncHabits(List<Habit> habits, OnHabitsLoadedListener listener) {
-        Call<HabitsResponse> call = apiService.syncHabits(habits);
+        Call<HabitsResponse> call = client.getApiService().syncHabits(habits);
         call.enqueue(new Callback<HabitsResponse>() {
             @Override
             public void onResponse(Call<HabitsResponse> call, Response<HabitsResponse> response) {
@@ -229,5 +238,90 @@ public class HabitApiHelper {
             }
         });
     }
-}
 
+    // ========== LLAMADAS BLOQUEANTES (hilos de SyncManager, nunca el hilo principal) ==========
+
+    /**
+     * Crea un hábito y espera la respuesta del servidor.
+     * @return El hábito creado (su id es el serverId)
+     * @throws IOException Si falla la red o el servidor no confirma la operación
+     */
+    public Habit createHabitBlocking(Habit habit) throws IOException {
+        return bodyOrThrow(client.getApiService().createHabit(habit).execute(), "Error al crear hábito");
+    }
+
+    /**
+     * Actualiza un hábito y espera la respuesta del servidor.
+     * @throws IOException Si falla la red o el servidor no confirma la operación
+     */
+    public Habit updateHabitBlocking(long id, Habit habit) throws IOException {
+        return bodyOrThrow(client.getApiService().updateHabit(id, habit).execute(), "Error al actualizar hábito");
+    }
+
+    /**
+     * Elimina un hábito y espera la respuesta. Un 404 cuenta como confirmado: ya no existe.
+     * @throws IOException Si falla la red o el servidor no confirma la operación
+     */
+    public void deleteHabitBlocking(long id) throws IOException {
+        Response<HabitsResponse> response = client.getApiService().deleteHabit(id).execute();
+        if (!response.isSuccessful() && response.code() != 404) {
+            throw new IOException(errorMessage(response, "Error al eliminar hábito"));
+        }
+    }
+
+    /**
+     * Envía un lote a habits/sync y espera la respuesta.
+     * @return Hábitos devueltos por el servidor, en el orden del lote
+     * @throws IOException Si falla la red o el servidor no confirma el lote
+     */
+    public List<Habit> syncHabitsBlocking(List<Habit> habits) throws IOException {
+        return successOrThrow(client.getApiService().syncHabits(habits).execute(), "Error al sincronizar hábitos").getHabits();
+    }
+
+    /**
+     * Descarga los cambios desde una marca de agua leyendo el cuerpo en streaming. Bloqueante.
+     * @param since Marca de agua de la sincronización anterior (0 = todo)
+     * @param consumer Recibe cada hábito según se parsea (su id es el serverId)
+     * @return Resto de la respuesta: deletedIds y watermark (null si el servidor ignoró "since")
+     * @throws IOException Error de red, respuesta no exitosa o success = false
+     */
+    public HabitsResponse streamHabitsSinceBlocking(long since, Consumer<Habit> consumer) throws IOException {
+        Response<ResponseBody> response = client.getApiService().streamHabitsSince(since).execute();
+        ResponseBody body = bodyOrThrow(response, "Error al obtener cambios de hábitos");
+        HabitsResponse summary;
+        try (Reader reader = body.charStream()) {
+            summary = HabitsStreamParser.parse(reader, gson, consumer);
+        }
+        if (!summary.isSuccess()) {
+            throw new IOException(summary.getMessage() != null ? summary.getMessage() : "Error desconocido");
+        }
+        return summary;
+    }
+
+    private static <T> T bodyOrThrow(Response<T> response, String prefix) throws IOException {
+        if (!response.isSuccessful() || response.body() == null) {
+            throw new IOException(errorMessage(response, prefix));
+        }
+        return response.body();
+    }
+
+    private static HabitsResponse successOrThrow(Response<HabitsResponse> response, String prefix) throws IOException {
+        HabitsResponse body = bodyOrThrow(response, prefix);
+        if (!body.isSuccess()) {
+            throw new IOException(body.getMessage() != null ? body.getMessage() : "Error desconocido");
+        }
+        return body;
+    }
+
+    private static String errorMessage(Response<?> response, String prefix) {
+        String error = prefix + ": " + response.code();
+        if (response.errorBody() != null) {
+            try {
+                error = error + " " + response.errorBody().string();
+            } catch (IOException e) {
+                Log.e(TAG, "Error al leer errorBody", e);
+            }
+        }
+        return error;
+    }
+}
@@ -5,13 +5,18 @@ import com.tuempresa.proyecto_01_11_25.model.HabitsResponse;
 
 import java.util.List;
 
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.DELETE;
 import retrofit2.http.GET;
+import retrofit2.http.HEAD;
+import retrofit2.http.Headers;
 import retrofit2.http.POST;
 import retrofit2.http.PUT;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
+import retrofit2.http.Streaming;
 
 /**
  * Interfaz de servicio Retrofit para las operaciones CRUD de hábitos.
@@ -26,6 +31,33 @@ public interface HabitApiService {
     @GET("habits")
     Call<HabitsResponse> getAllHabits();
 
+    /**
+     * Sonda de disponibilidad: HEAD sobre la colección, sin cuerpo en la respuesta.
+     * Cualquier respuesta HTTP indica que la API es alcanzable.
+     * @return Call sin cuerpo
+     */
+    @HEAD("habits")
+    Call<Void> probe();
+
+    /**
+     * Obtiene solo los cambios desde una marca de agua: hábitos creados o modificados
+     * (habits) y serverIds eliminados (deletedIds), junto con la nueva marca (watermark).
+     * @param since Marca de agua devuelta por la sincronización anterior (0 = todo)
+     * @return Call con la respuesta delta
+     */
+    @GET("habits")
+    Call<HabitsResponse> getHabitsSince(@Query("since") long since);
+
+    /**
+     * Igual que getHabitsSince pero sin convertir el cuerpo: se lee en streaming con
+     * HabitsStreamParser para no cargar la lista completa en memoria.
+     * @param since Marca de agua devuelta por la sincronización anterior (0 = todo)
+     * @return Call con el cuerpo JSON sin parsear
+     */
+    @Streaming
+    @GET("habits")
+    Call<ResponseBody> streamHabitsSince(@Query("since") long since);
+
     /**
      * Obtiene un hábito específico por su ID.
      * @param id ID del hábito
@@ -61,9 +93,11 @@ public interface HabitApiService {
 
     /**
      * Sincroniza múltiples hábitos con el servidor (útil para sincronización batch).
+     * El cuerpo viaja comprimido con gzip (GzipRequestInterceptor).
      * @param habits Lista de hábitos a sincronizar
      * @return Call con la respuesta que contiene los hábitos sincronizados
      */
+    @Headers("Content-Encoding: gzip")
     @POST("habits/sync")
     Call<HabitsResponse> syncHabits(@Body List<Habit> habits);
 }
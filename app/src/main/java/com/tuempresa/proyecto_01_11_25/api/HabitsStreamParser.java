@@ -0,0 +1,94 @@
+package com.tuempresa.proyecto_01_11_25.api;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.model.HabitsResponse;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Lee un HabitsResponse en streaming con JsonReader: cada elemento de "habits" se entrega al
+ * consumidor en cuanto se parsea y no se acumula, así la memoria queda limitada a un hábito.
+ * Los campos pueden venir en cualquier orden (p. ej. watermark después de habits).
+ */
+public final class HabitsStreamParser {
+
+    private HabitsStreamParser() {
+    }
+
+    /**
+     * @param reader Cuerpo de la respuesta; no se cierra
+     * @param gson Gson configurado como el de Retrofit, para leer cada hábito igual que antes
+     * @param consumer Recibe cada hábito según se parsea
+     * @return El resto de la respuesta, con habits a null y count con los hábitos leídos
+     */
+    public static HabitsResponse parse(Reader reader, Gson gson, Consumer<Habit> consumer) throws IOException {
+        TypeAdapter<Habit> habitAdapter = gson.getAdapter(Habit.class);
+        HabitsResponse summary = new HabitsResponse();
+        int habitCount = 0;
+
+        JsonReader json = new JsonReader(reader);
+        json.setLenient(true);
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "success":
+                    summary.setSuccess(json.nextBoolean());
+                    break;
+                case "message":
+                    summary.setMessage(json.nextString());
+                    break;
+                case "habits":
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        Habit habit = habitAdapter.read(json);
+                        if (habit != null) {
+                            consumer.accept(habit);
+                            habitCount++;
+                        }
+                    }
+                    json.endArray();
+                    break;
+                case "deletedIds":
+                    summary.setDeletedIds(readLongs(json));
+                    break;
+                case "watermark":
+                    summary.setWatermark(json.nextLong());
+                    break;
+                default:
+                    json.skipValue();
+                    break;
+            }
+        }
+        json.endObject();
+
+        summary.setCount(habitCount);
+        return summary;
+    }
+
+    private static List<Long> readLongs(JsonReader json) throws IOException {
+        List<Long> values = new ArrayList<>();
+        json.beginArray();
+        while (json.hasNext()) {
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+            } else {
+                values.add(json.nextLong());
+            }
+        }
+        json.endArray();
+        return values;
+    }
+}
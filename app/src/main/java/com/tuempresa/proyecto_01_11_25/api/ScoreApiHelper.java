@@ -1,9 +1,12 @@
 package com.tuempresa.proyecto_01_11_25.api;
 
+import android.content.Context;
 import android.util.Log;
 
 import com.tuempresa.proyecto_01_11_25.model.Score;
 
+import java.io.IOException;
+
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
@@ -14,10 +17,11 @@ import retrofit2.Response;
  */
 public class ScoreApiHelper {
     private static final String TAG = "ScoreApiHelper";
-    private ScoreApiService apiService;
+    // El servicio se pide al cliente en cada llamada para seguir los cambios de setBaseUrl
+    private final HabitApiClient client;
 
-    public ScoreApiHelper() {
-        this.apiService = HabitApiClient.getInstance().getScoreApiService();
+    public ScoreApiHelper(Context context) {
+        this.client = HabitApiClient.getInstance(context);
     }
 
     /**
@@ -28,13 +32,30 @@ public class ScoreApiHelper {
         void onError(String error);
     }
 
+    /**
+     * Crea un score y espera la respuesta del servidor.
+     * @return El score creado
+     * @throws IOException Si falla la red o el servidor no confirma el score
+     */
+    public Score createScoreBlocking(Score score) throws IOException {
+        Response<Score> response = client.getScoreApiService().createScore(score).execute();
+        if (!response.isSuccessful() || response.body() == null) {
+            String error = "Error al crear score: " + response.code();
+            if (response.errorBody() != null) {
+                error = error + " " + response.errorBody().string();
+            }
+            throw new IOException(error);
+        }
+        return response.body();
+    }
+
     /**
      * Crea un nuevo score en el servidor.
      * @param score El score a crear
      * @param listener Callback para manejar la respuesta
      */
     public void createScore(Score score, OnScoreSavedListener listener) {
-        Call<Score> call = apiService.createScore(score);
+        Call<Score> call = client.getScoreApiService().createScore(score);
         call.enqueue(new Callback<Score>() {
             @Override
             public void onResponse(Call<Score> call, Response<Score> response) {
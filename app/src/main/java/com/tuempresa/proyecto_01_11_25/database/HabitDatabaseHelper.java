@@ -5,17 +5,31 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
 
 import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.model.HabitPage;
 
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class HabitDatabaseHelper extends SQLiteOpenHelper {
 
+    private static final String TAG = "HabitDatabaseHelper";
     private static final String DATABASE_NAME = "habitus.db";
-    private static final int DATABASE_VERSION = 7;
+    private static final int DATABASE_VERSION = 11;
     private final Context context;
+    // Cambia con cada escritura sobre la tabla habits (ver getHabitsVersion)
+    private final AtomicLong habitsVersion = new AtomicLong();
 
     // Tabla de hábitos (protected para que HabitDatabaseHelperSync pueda acceder)
     protected static final String TABLE_HABITS = "habits";
@@ -74,9 +88,88 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
     protected static final String COLUMN_SCORE_USER_ID = "user_id";
     protected static final String COLUMN_SCORE_NOTE = "note";
 
-    public HabitDatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
-        this.context = context;
+    // Tabla agregada del ranking (mantenida por triggers sobre scores/habits/users)
+    protected static final String TABLE_USER_STATS = "user_stats";
+    protected static final String COLUMN_STATS_USER_ID = "user_id";
+    protected static final String COLUMN_STATS_TOTAL_SCORE = "total_score";
+    protected static final String COLUMN_STATS_HABITS_COMPLETED = "habits_completed";
+
+    // Progreso diario por hábito (páginas leídas, vasos de agua...)
+    protected static final String TABLE_HABIT_PROGRESS = "habit_progress";
+    protected static final String COLUMN_PROGRESS_HABIT_ID = "habit_id";
+    protected static final String COLUMN_PROGRESS_DAY = "day"; // yyyy-MM-dd
+    protected static final String COLUMN_PROGRESS_VALUE = "value";
+
+    // Archivo de SharedPreferences donde se guardaba el progreso antes de la versión 10
+    private static final String LEGACY_PROGRESS_PREFS = "habit_progress";
+    private static final Pattern LEGACY_PROGRESS_KEY = Pattern.compile("^(?:read|water)_(\\d+)_(\\d{4}-\\d{2}-\\d{2})$");
+
+    // Lo activa migrateProgressFromPrefs: el archivo se vacía en onOpen, cuando la migración ya se confirmó
+    private boolean clearLegacyProgressOnOpen;
+
+    // Conexiones abiertas (onOpen) y accesos a la base (get*Database) en este proceso. Antes de
+    // compartir el helper cada acceso abría y cerraba su conexión; SharedConnectionBenchmark
+    // compara ambos contadores durante una sincronización.
+    private final AtomicLong connectionOpens = new AtomicLong();
+    private final AtomicLong databaseAccesses = new AtomicLong();
+
+    /**
+     * Usar {@link #getInstance(Context)}: toda la app comparte una sola conexión
+     * (WAL + pool de lectores gestionado por SQLiteOpenHelper) durante la vida del proceso.
+     * Los métodos de acceso NO deben llamar a db.close().
+     */
+    protected HabitDatabaseHelper(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context.getApplicationContext();
+        // WAL: las lecturas no bloquean la escritura y SQLite abre un pool de conexiones de lectura
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Obtiene el helper compartido del proceso (siempre la versión con sincronización,
+     * para que el esquema completo se cree desde el primer acceso).
+     */
+    public static HabitDatabaseHelper getInstance(Context context) {
+        return HabitDatabaseHelperSync.getInstance(context);
+    }
+
+    @Override
+    public SQLiteDatabase getWritableDatabase() {
+        databaseAccesses.incrementAndGet();
+        return super.getWritableDatabase();
+    }
+
+    @Override
+    public SQLiteDatabase getReadableDatabase() {
+        databaseAccesses.incrementAndGet();
+        return super.getReadableDatabase();
+    }
+
+    /**
+     * Veces que se abrió una conexión (onOpen) en este proceso.
+     */
+    public long getConnectionOpenCount() {
+        return connectionOpens.get();
+    }
+
+    /**
+     * Veces que se pidió la base (getWritableDatabase/getReadableDatabase) en este proceso.
+     */
+    public long getDatabaseAccessCount() {
+        return databaseAccesses.get();
+    }
+
+    /**
+     * Versión del contenido de la tabla habits en este proceso. Todo método que escribe
+     * en la tabla la incrementa; la caché de HabitRepository la compara para saber si
+     * sus datos siguen vigentes, sin importar quién hizo la escritura.
+     */
+    public long getHabitsVersion() {
+        return habitsVersion.get();
+    }
+
+    protected void habitsChanged() {
+        habitsVersion.incrementAndGet();
     }
 
     @Override
@@ -195,6 +288,27 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
                 "FOREIGN KEY(" + COLUMN_SCORE_USER_ID + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_USER_ID + ")" +
                 ")";
         db.execSQL(createScoresTable);
+
+        createIndexes(db);
+        createUserStats(db);
+        createHabitProgress(db);
+        migrateProgressFromPrefs(db);
+        linkScoresToHabits(db);
+    }
+
+    /**
+     * Se llama después de que onCreate/onUpgrade confirmen su transacción: solo entonces se
+     * vacían las preferencias migradas, para no perderlas si la actualización se revierte.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        connectionOpens.incrementAndGet();
+        if (clearLegacyProgressOnOpen) {
+            clearLegacyProgressOnOpen = false;
+            context.getSharedPreferences(LEGACY_PROGRESS_PREFS, Context.MODE_PRIVATE).edit().clear().apply();
+            Log.d(TAG, "Preferencias de progreso antiguas eliminadas");
+        }
     }
 
     @Override
@@ -298,6 +412,152 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
                     "   WHERE " + COLUMN_HABIT_ID + " = NEW." + COLUMN_HABIT_ID + "; " +
                     " END;");
         }
+
+        if (oldVersion < 8) {
+            // Índices para las consultas filtradas por usuario y ordenadas por fecha
+            createIndexes(db);
+        }
+
+        if (oldVersion < 9) {
+            createUserStats(db);
+
+            // Rellenar user_stats con los datos existentes (una sola vez)
+            db.execSQL("INSERT OR REPLACE INTO " + TABLE_USER_STATS + " (" + COLUMN_STATS_USER_ID + ", "
+                    + COLUMN_STATS_TOTAL_SCORE + ", " + COLUMN_STATS_HABITS_COMPLETED + ") " +
+                    "SELECT u." + COLUMN_USER_ID + ", " +
+                    "IFNULL((SELECT SUM(s." + COLUMN_SCORE_POINTS + ") FROM " + TABLE_SCORES + " s WHERE s."
+                    + COLUMN_SCORE_USER_ID + " = u." + COLUMN_USER_ID + "), 0), " +
+                    "(SELECT COUNT(*) FROM " + TABLE_HABITS + " h WHERE h." + COLUMN_HABIT_USER_ID + " = u."
+                    + COLUMN_USER_ID + " AND h." + COLUMN_HABIT_COMPLETED + " = 1) " +
+                    "FROM " + TABLE_USERS + " u");
+        }
+
+        if (oldVersion < 10) {
+            createHabitProgress(db);
+            migrateProgressFromPrefs(db);
+        }
+
+        if (oldVersion < 11) {
+            linkScoresToHabits(db);
+        }
+    }
+
+    /**
+     * Crea los índices secundarios de las columnas más consultadas:
+     * hábitos por usuario (ordenados por created_at) y puntajes por usuario (ordenados por fecha).
+     */
+    private void createIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_habits_user_created ON " + TABLE_HABITS + "("
+                + COLUMN_HABIT_USER_ID + ", " + COLUMN_HABIT_CREATED_AT + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_scores_user_date ON " + TABLE_SCORES + "("
+                + COLUMN_SCORE_USER_ID + ", " + COLUMN_SCORE_DATE + ")");
+    }
+
+    /**
+     * Asegura la columna scores.habit_id con su índice y rellena la de los puntajes antiguos,
+     * que solo guardaban el título: se enlazan al hábito del mismo usuario con ese título (el
+     * más antiguo si hay varios). Los de hábitos que ya no existen quedan con habit_id nulo.
+     * habit_title se conserva como historial (el nombre que tenía el hábito al puntuar).
+     */
+    private void linkScoresToHabits(SQLiteDatabase db) {
+        addColumnIfNotExists(db, TABLE_SCORES, COLUMN_SCORE_HABIT_ID, "INTEGER");
+        db.execSQL("UPDATE " + TABLE_SCORES + " SET " + COLUMN_SCORE_HABIT_ID + " = " +
+                "(SELECT h." + COLUMN_HABIT_ID + " FROM " + TABLE_HABITS + " h WHERE h." + COLUMN_HABIT_TITLE
+                + " = " + TABLE_SCORES + "." + COLUMN_SCORE_HABIT_TITLE + " AND h." + COLUMN_HABIT_USER_ID
+                + " IS " + TABLE_SCORES + "." + COLUMN_SCORE_USER_ID + " ORDER BY h." + COLUMN_HABIT_ID + " LIMIT 1) " +
+                "WHERE " + COLUMN_SCORE_HABIT_ID + " IS NULL");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_scores_habit ON " + TABLE_SCORES + "("
+                + COLUMN_SCORE_HABIT_ID + ")");
+    }
+
+    /**
+     * Crea la tabla user_stats (puntaje total y hábitos completados por usuario) y los
+     * triggers que la mantienen al insertar/borrar usuarios, puntajes y al cambiar el
+     * estado completado de un hábito. El ranking pasa a ser una lectura ordenada por índice.
+     */
+    private void createUserStats(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_USER_STATS + " (" +
+                COLUMN_STATS_USER_ID + " INTEGER PRIMARY KEY, " +
+                COLUMN_STATS_TOTAL_SCORE + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_STATS_HABITS_COMPLETED + " INTEGER NOT NULL DEFAULT 0" +
+                ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_user_stats_score ON " + TABLE_USER_STATS + "("
+                + COLUMN_STATS_TOTAL_SCORE + " DESC)");
+
+        // Asegura la fila de estadísticas de un usuario (ignora user_id nulo)
+        String ensureNewRow = "INSERT OR IGNORE INTO " + TABLE_USER_STATS + " (" + COLUMN_STATS_USER_ID + ") " +
+                "SELECT NEW." + COLUMN_USER_ID + " WHERE NEW." + COLUMN_USER_ID + " IS NOT NULL; ";
+
+        // Usuarios
+        db.execSQL("DROP TRIGGER IF EXISTS user_stats_user_insert");
+        db.execSQL("CREATE TRIGGER user_stats_user_insert AFTER INSERT ON " + TABLE_USERS +
+                " BEGIN " + ensureNewRow + " END;");
+        db.execSQL("DROP TRIGGER IF EXISTS user_stats_user_delete");
+        db.execSQL("CREATE TRIGGER user_stats_user_delete AFTER DELETE ON " + TABLE_USERS +
+                " BEGIN DELETE FROM " + TABLE_USER_STATS + " WHERE " + COLUMN_STATS_USER_ID + " = OLD."
+                + COLUMN_USER_ID + "; END;");
+
+        // Puntajes
+        db.execSQL("DROP TRIGGER IF EXISTS user_stats_score_insert");
+        db.execSQL("CREATE TRIGGER user_stats_score_insert AFTER INSERT ON " + TABLE_SCORES +
+                " BEGIN " + ensureNewRow +
+                "   UPDATE " + TABLE_USER_STATS + " SET " + COLUMN_STATS_TOTAL_SCORE + " = "
+                + COLUMN_STATS_TOTAL_SCORE + " + NEW." + COLUMN_SCORE_POINTS +
+                "   WHERE " + COLUMN_STATS_USER_ID + " = NEW." + COLUMN_SCORE_USER_ID + "; " +
+                " END;");
+        db.execSQL("DROP TRIGGER IF EXISTS user_stats_score_delete");
+        db.execSQL("CREATE TRIGGER user_stats_score_delete AFTER DELETE ON " + TABLE_SCORES +
+                " BEGIN " +
+                "   UPDATE " + TABLE_USER_STATS + " SET " + COLUMN_STATS_TOTAL_SCORE + " = "
+                + COLUMN_STATS_TOTAL_SCORE + " - OLD." + COLUMN_SCORE_POINTS +
+                "   WHERE " + COLUMN_STATS_USER_ID + " = OLD." + COLUMN_SCORE_USER_ID + "; " +
+                " END;");
+        db.execSQL("DROP TRIGGER IF EXISTS user_stats_score_update");
+        db.execSQL("CREATE TRIGGER user_stats_score_update AFTER UPDATE OF " + COLUMN_SCORE_POINTS + ", "
+                + COLUMN_SCORE_USER_ID + " ON " + TABLE_SCORES +
+                " BEGIN " +
+                "   UPDATE " + TABLE_USER_STATS + " SET " + COLUMN_STATS_TOTAL_SCORE + " = "
+                + COLUMN_STATS_TOTAL_SCORE + " - OLD." + COLUMN_SCORE_POINTS +
+                "   WHERE " + COLUMN_STATS_USER_ID + " = OLD." + COLUMN_SCORE_USER_ID + "; " +
+                ensureNewRow +
+                "   UPDATE " + TABLE_USER_STATS + " SET " + COLUMN_STATS_TOTAL_SCORE + " = "
+                + COLUMN_STATS_TOTAL_SCORE + " + NEW." + COLUMN_SCORE_POINTS +
+                "   WHERE " + COLUMN_STATS_USER_ID + " = NEW." + COLUMN_SCORE_USER_ID + "; " +
+                " END;");
+
+        // Hábitos completados
+        db.execSQL("DROP TRIGGER IF EXISTS user_stats_habit_insert");
+        db.execSQL("CREATE TRIGGER user_stats_habit_insert AFTER INSERT ON " + TABLE_HABITS +
+                " FOR EACH ROW WHEN NEW." + COLUMN_HABIT_COMPLETED + " = 1 " +
+                " BEGIN " + ensureNewRow +
+                "   UPDATE " + TABLE_USER_STATS + " SET " + COLUMN_STATS_HABITS_COMPLETED + " = "
+                + COLUMN_STATS_HABITS_COMPLETED + " + 1" +
+                "   WHERE " + COLUMN_STATS_USER_ID + " = NEW." + COLUMN_HABIT_USER_ID + "; " +
+                " END;");
+        db.execSQL("DROP TRIGGER IF EXISTS user_stats_habit_delete");
+        db.execSQL("CREATE TRIGGER user_stats_habit_delete AFTER DELETE ON " + TABLE_HABITS +
+                " FOR EACH ROW WHEN OLD." + COLUMN_HABIT_COMPLETED + " = 1 " +
+                " BEGIN " +
+                "   UPDATE " + TABLE_USER_STATS + " SET " + COLUMN_STATS_HABITS_COMPLETED + " = "
+                + COLUMN_STATS_HABITS_COMPLETED + " - 1" +
+                "   WHERE " + COLUMN_STATS_USER_ID + " = OLD." + COLUMN_HABIT_USER_ID + "; " +
+                " END;");
+        db.execSQL("DROP TRIGGER IF EXISTS user_stats_habit_update");
+        db.execSQL("CREATE TRIGGER user_stats_habit_update AFTER UPDATE OF " + COLUMN_HABIT_COMPLETED + ", "
+                + COLUMN_HABIT_USER_ID + " ON " + TABLE_HABITS +
+                " FOR EACH ROW WHEN OLD." + COLUMN_HABIT_COMPLETED + " IS NOT NEW." + COLUMN_HABIT_COMPLETED +
+                " OR OLD." + COLUMN_HABIT_USER_ID + " IS NOT NEW." + COLUMN_HABIT_USER_ID +
+                " BEGIN " +
+                "   UPDATE " + TABLE_USER_STATS + " SET " + COLUMN_STATS_HABITS_COMPLETED + " = "
+                + COLUMN_STATS_HABITS_COMPLETED + " - 1" +
+                "   WHERE " + COLUMN_STATS_USER_ID + " = OLD." + COLUMN_HABIT_USER_ID
+                + " AND OLD." + COLUMN_HABIT_COMPLETED + " = 1; " +
+                ensureNewRow +
+                "   UPDATE " + TABLE_USER_STATS + " SET " + COLUMN_STATS_HABITS_COMPLETED + " = "
+                + COLUMN_STATS_HABITS_COMPLETED + " + 1" +
+                "   WHERE " + COLUMN_STATS_USER_ID + " = NEW." + COLUMN_HABIT_USER_ID
+                + " AND NEW." + COLUMN_HABIT_COMPLETED + " = 1; " +
+                " END;");
     }
 
     protected void addColumnIfNotExists(SQLiteDatabase db, String table, String column, String type) {
@@ -323,7 +583,6 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
         values.put(COLUMN_USER_CREATED_AT, System.currentTimeMillis());
         values.put(COLUMN_USER_IS_ACTIVE, 1);
         long id = db.insert(TABLE_USERS, null, values);
-        db.close();
         return id;
     }
 
@@ -353,105 +612,58 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
             user.setActive(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_USER_IS_ACTIVE)) == 1);
         }
         cursor.close();
-        db.close();
         return user;
     }
 
     // ... (Resto de métodos existentes) ...
 
+    private void createHabitProgress(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_HABIT_PROGRESS + " (" +
+                COLUMN_PROGRESS_HABIT_ID + " INTEGER NOT NULL, " +
+                COLUMN_PROGRESS_DAY + " TEXT NOT NULL, " +
+                COLUMN_PROGRESS_VALUE + " INTEGER NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (" + COLUMN_PROGRESS_HABIT_ID + ", " + COLUMN_PROGRESS_DAY + ")" +
+                ") WITHOUT ROWID");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_habit_progress_day ON " + TABLE_HABIT_PROGRESS + "("
+                + COLUMN_PROGRESS_DAY + ")");
+
+        // El progreso se elimina junto con su hábito
+        db.execSQL("DROP TRIGGER IF EXISTS habit_progress_cleanup");
+        db.execSQL("CREATE TRIGGER habit_progress_cleanup AFTER DELETE ON " + TABLE_HABITS +
+                " BEGIN DELETE FROM " + TABLE_HABIT_PROGRESS + " WHERE " + COLUMN_PROGRESS_HABIT_ID
+                + " = OLD." + COLUMN_HABIT_ID + "; END;");
+    }
+
     /**
-     * Carga los campos adicionales de un hábito desde el cursor
+     * Copia una sola vez las claves read_<id>_<fecha> y water_<id>_<fecha> del archivo de
+     * preferencias habit_progress a la tabla. Corre dentro de la transacción de onCreate/onUpgrade,
+     * así que el archivo no se vacía aquí sino en onOpen, una vez confirmada la migración.
      */
-    private void loadHabitExtraFields(Cursor cursor, Habit habit) {
-        try {
-            // Cargar points
-            int pointsIndex = cursor.getColumnIndex(COLUMN_HABIT_POINTS);
-            if (pointsIndex >= 0 && !cursor.isNull(pointsIndex)) {
-                habit.setPoints(cursor.getInt(pointsIndex));
-            }
-
-            int targetValueIndex = cursor.getColumnIndex(COLUMN_HABIT_TARGET_VALUE);
-            int targetUnitIndex = cursor.getColumnIndex(COLUMN_HABIT_TARGET_UNIT);
-            if (targetValueIndex >= 0 && !cursor.isNull(targetValueIndex)) {
-                habit.setTargetValue(cursor.getDouble(targetValueIndex));
-            }
-            if (targetUnitIndex >= 0 && !cursor.isNull(targetUnitIndex)) {
-                habit.setTargetUnit(cursor.getString(targetUnitIndex));
-            }
-
-            // Nuevos campos
-            int pagesPerDayIndex = cursor.getColumnIndex(COLUMN_HABIT_PAGES_PER_DAY);
-            if (pagesPerDayIndex >= 0 && !cursor.isNull(pagesPerDayIndex)) {
-                habit.setPagesPerDay(cursor.getInt(pagesPerDayIndex));
-            }
-
-            int reminderTimesIndex = cursor.getColumnIndex(COLUMN_HABIT_REMINDER_TIMES);
-            if (reminderTimesIndex >= 0 && !cursor.isNull(reminderTimesIndex)) {
-                habit.setReminderTimes(cursor.getString(reminderTimesIndex));
-            }
-
-            int durationMinutesIndex = cursor.getColumnIndex(COLUMN_HABIT_DURATION_MINUTES);
-            if (durationMinutesIndex >= 0 && !cursor.isNull(durationMinutesIndex)) {
-                habit.setDurationMinutes(cursor.getInt(durationMinutesIndex));
-            }
-
-            int dndModeIndex = cursor.getColumnIndex(COLUMN_HABIT_DND_MODE);
-            if (dndModeIndex >= 0 && !cursor.isNull(dndModeIndex)) {
-                habit.setDndMode(cursor.getInt(dndModeIndex) == 1);
-            }
-
-            int musicIdIndex = cursor.getColumnIndex(COLUMN_HABIT_MUSIC_ID);
-            if (musicIdIndex >= 0 && !cursor.isNull(musicIdIndex)) {
-                habit.setMusicId(cursor.getInt(musicIdIndex));
-            }
-
-            int journalEnabledIndex = cursor.getColumnIndex(COLUMN_HABIT_JOURNAL_ENABLED);
-            if (journalEnabledIndex >= 0 && !cursor.isNull(journalEnabledIndex)) {
-                habit.setJournalEnabled(cursor.getInt(journalEnabledIndex) == 1);
-            }
-
-            int gymDaysIndex = cursor.getColumnIndex(COLUMN_HABIT_GYM_DAYS);
-            if (gymDaysIndex >= 0 && !cursor.isNull(gymDaysIndex)) {
-                habit.setGymDays(cursor.getString(gymDaysIndex));
-            }
-
-            int waterGoalGlassesIndex = cursor.getColumnIndex(COLUMN_HABIT_WATER_GOAL_GLASSES);
-            if (waterGoalGlassesIndex >= 0 && !cursor.isNull(waterGoalGlassesIndex)) {
-                habit.setWaterGoalGlasses(cursor.getInt(waterGoalGlassesIndex));
-            }
-
-            int oneClickCompleteIndex = cursor.getColumnIndex(COLUMN_HABIT_ONE_CLICK_COMPLETE);
-            if (oneClickCompleteIndex >= 0 && !cursor.isNull(oneClickCompleteIndex)) {
-                habit.setOneClickComplete(cursor.getInt(oneClickCompleteIndex) == 1);
-            }
-
-            int englishModeIndex = cursor.getColumnIndex(COLUMN_HABIT_ENGLISH_MODE);
-            if (englishModeIndex >= 0 && !cursor.isNull(englishModeIndex)) {
-                habit.setEnglishMode(cursor.getInt(englishModeIndex) == 1);
-            }
-
-            int codingModeIndex = cursor.getColumnIndex(COLUMN_HABIT_CODING_MODE);
-            if (codingModeIndex >= 0 && !cursor.isNull(codingModeIndex)) {
-                habit.setCodingMode(cursor.getInt(codingModeIndex) == 1);
-            }
-
-            int habitIconIndex = cursor.getColumnIndex(COLUMN_HABIT_ICON);
-            if (habitIconIndex >= 0 && !cursor.isNull(habitIconIndex)) {
-                habit.setHabitIcon(cursor.getString(habitIconIndex));
-            }
-
-            int streakIndex = cursor.getColumnIndex(COLUMN_HABIT_STREAK_COUNT);
-            if (streakIndex >= 0 && !cursor.isNull(streakIndex)) {
-                habit.setStreakCount(cursor.getInt(streakIndex));
-            }
+    private void migrateProgressFromPrefs(SQLiteDatabase db) {
+        android.content.SharedPreferences prefs = context.getSharedPreferences(LEGACY_PROGRESS_PREFS,
+                Context.MODE_PRIVATE);
+        Map<String, ?> entries = prefs.getAll();
+        if (entries.isEmpty()) {
+            return;
+        }
 
-            int lastCompletedIndex = cursor.getColumnIndex(COLUMN_HABIT_LAST_COMPLETED_DATE);
-            if (lastCompletedIndex >= 0 && !cursor.isNull(lastCompletedIndex)) {
-                habit.setLastCompletedDate(cursor.getLong(lastCompletedIndex));
+        int migrated = 0;
+        for (Map.Entry<String, ?> entry : entries.entrySet()) {
+            Matcher matcher = LEGACY_PROGRESS_KEY.matcher(entry.getKey());
+            if (!matcher.matches() || !(entry.getValue() instanceof Integer)) {
+                continue;
             }
-        } catch (Exception e) {
-            // Si las columnas no existen, ignorar el error
+            // Si un mismo hábito tuviera ambas claves el mismo día, conservar el mayor valor
+            Object[] args = new Object[] { Long.parseLong(matcher.group(1)), matcher.group(2), entry.getValue() };
+            db.execSQL("INSERT OR IGNORE INTO " + TABLE_HABIT_PROGRESS + " (" + COLUMN_PROGRESS_HABIT_ID + ", "
+                    + COLUMN_PROGRESS_DAY + ", " + COLUMN_PROGRESS_VALUE + ") VALUES (?, ?, ?)", args);
+            db.execSQL("UPDATE " + TABLE_HABIT_PROGRESS + " SET " + COLUMN_PROGRESS_VALUE + " = MAX("
+                    + COLUMN_PROGRESS_VALUE + ", ?3) WHERE " + COLUMN_PROGRESS_HABIT_ID + " = ?1 AND "
+                    + COLUMN_PROGRESS_DAY + " = ?2", args);
+            migrated++;
         }
+        clearLegacyProgressOnOpen = true;
+        Log.d(TAG, "Progreso migrado desde SharedPreferences: " + migrated + " registros");
     }
 
     // MÉTODO ELIMINADO: Los hábitos ahora vienen exclusivamente de la API
@@ -490,7 +702,7 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
      * Inserta un hábito con todos los campos opcionales
      */
     // Helper para obtener el userId actual
-    private long getCurrentUserId() {
+    protected long getCurrentUserId() {
         com.tuempresa.proyecto_01_11_25.utils.SessionManager session = new com.tuempresa.proyecto_01_11_25.utils.SessionManager(
                 context);
         return session.getUserId();
@@ -505,24 +717,81 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
                 new String[] { String.valueOf(userId) }, null, null, COLUMN_HABIT_CREATED_AT + " DESC");
 
         if (cursor.moveToFirst()) {
+            HabitRowMapper mapper = new HabitRowMapper(cursor);
             do {
-                Habit habit = new Habit(
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_TITLE)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_GOAL)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_CATEGORY)),
-                        Habit.HabitType.valueOf(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_TYPE))));
-                habit.setCompleted(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_HABIT_COMPLETED)) == 1);
-                long id = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_HABIT_ID));
-                habit.setId(id);
-                loadHabitExtraFields(cursor, habit);
-                habits.add(habit);
+                habits.add(mapper.map(cursor));
             } while (cursor.moveToNext());
         }
         cursor.close();
-        db.close();
         return habits;
     }
 
+    /**
+     * Página de hábitos del usuario ordenada por (created_at DESC, id DESC).
+     * Usa paginación por clave: el costo no depende de cuántas páginas se hayan leído y
+     * la consulta recorre idx_habits_user_created (que incluye el rowid) sin ordenar.
+     * @param after clave de la página anterior, o null para la primera página
+     */
+    public HabitPage getHabitsPage(HabitPage.Key after, int limit) {
+        long userId = getCurrentUserId();
+        List<Habit> habits = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+
+        String selection = COLUMN_HABIT_USER_ID + "=?";
+        String[] args;
+        if (after == null) {
+            args = new String[] { String.valueOf(userId) };
+        } else {
+            selection += " AND (" + COLUMN_HABIT_CREATED_AT + " < ? OR (" + COLUMN_HABIT_CREATED_AT + " = ? AND "
+                    + COLUMN_HABIT_ID + " < ?))";
+            String createdAt = String.valueOf(after.getCreatedAt());
+            args = new String[] { String.valueOf(userId), createdAt, createdAt, String.valueOf(after.getId()) };
+        }
+
+        // Se pide una fila extra para saber si hay más páginas
+        Cursor cursor = db.query(TABLE_HABITS, null, selection, args, null, null,
+                COLUMN_HABIT_CREATED_AT + " DESC, " + COLUMN_HABIT_ID + " DESC", String.valueOf(limit + 1));
+
+        HabitPage.Key nextKey = after;
+        if (cursor.moveToFirst()) {
+            HabitRowMapper mapper = new HabitRowMapper(cursor);
+            int createdAtIndex = cursor.getColumnIndexOrThrow(COLUMN_HABIT_CREATED_AT);
+            do {
+                if (habits.size() == limit) {
+                    break;
+                }
+                Habit habit = mapper.map(cursor);
+                habits.add(habit);
+                nextKey = new HabitPage.Key(cursor.getLong(createdAtIndex), habit.getId());
+            } while (cursor.moveToNext());
+        }
+        boolean hasMore = cursor.getCount() > limit;
+        cursor.close();
+        return new HabitPage(habits, nextKey, hasMore);
+    }
+
+    /**
+     * Hábito más reciente de un tipo (opcionalmente solo si está pendiente), sin cargar la lista completa.
+     */
+    public Habit getFirstHabitByType(Habit.HabitType type, boolean pendingOnly) {
+        long userId = getCurrentUserId();
+        SQLiteDatabase db = this.getReadableDatabase();
+        String selection = COLUMN_HABIT_USER_ID + "=? AND " + COLUMN_HABIT_TYPE + "=?";
+        if (pendingOnly) {
+            selection += " AND " + COLUMN_HABIT_COMPLETED + "=0";
+        }
+        Cursor cursor = db.query(TABLE_HABITS, null, selection,
+                new String[] { String.valueOf(userId), type.name() }, null, null,
+                COLUMN_HABIT_CREATED_AT + " DESC, " + COLUMN_HABIT_ID + " DESC", "1");
+
+        Habit habit = null;
+        if (cursor.moveToFirst()) {
+            habit = new HabitRowMapper(cursor).map(cursor);
+        }
+        cursor.close();
+        return habit;
+    }
+
     public long insertHabitFull(String title, String goal, String category, String type, int points,
             Double targetValue, String targetUnit,
             Integer pagesPerDay, String reminderTimes, Integer durationMinutes,
@@ -570,35 +839,167 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
             values.put(COLUMN_HABIT_ICON, habitIcon);
 
         long id = db.insert(TABLE_HABITS, null, values);
-        db.close();
+        habitsChanged();
         return id;
     }
 
-    public long addScore(String habitTitle, int points) {
-        long userId = getCurrentUserId();
+    /**
+     * Suma puntos a un hábito (búsqueda por clave primaria).
+     * @return id del score, o -1 si el hábito no existe
+     */
+    public long addScore(long habitId, int points) {
+        SQLiteDatabase db = this.getWritableDatabase();
+
+        // El trigger user_stats_score_insert actualiza el total dentro de la misma transacción
+        long id = -1;
+        db.beginTransaction();
+        try {
+            String title = getHabitTitle(db, habitId);
+            if (title != null) {
+                id = insertScore(db, habitId, title, points, null);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return id;
+    }
+
+    /**
+     * Restaura puntajes de una copia de seguridad en una sola transacción, conservando su fecha.
+     * Cada uno se enlaza al hábito local con su título; si no hay ninguno queda con habit_id nulo.
+     * @param habitIdsByTitle Ids locales por título (ver getHabitIdsByTitle)
+     * @return Número de puntajes insertados
+     */
+    public int importScores(List<ScoreEntry> scores, Map<String, Long> habitIdsByTitle) {
         SQLiteDatabase db = this.getWritableDatabase();
+        int count = 0;
+        db.beginTransaction();
+        try {
+            for (ScoreEntry score : scores) {
+                if (score.getHabitTitle() == null) {
+                    continue;
+                }
+                Long date = score.getDate() > 0 ? score.getDate() : null;
+                if (insertScore(db, habitIdsByTitle.get(score.getHabitTitle()), score.getHabitTitle(),
+                        score.getPoints(), date) != -1) {
+                    count++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return count;
+    }
+
+    /**
+     * Inserta la fila de score del usuario actual dentro de la transacción del llamador.
+     * @param habitId Hábito puntuado (null si ya no existe localmente)
+     * @param habitTitle Título del hábito en ese momento, como historial
+     * @param date Fecha en segundos (null = ahora, el DEFAULT de la columna)
+     */
+    protected long insertScore(SQLiteDatabase db, Long habitId, String habitTitle, int points, Long date) {
         ContentValues values = new ContentValues();
-        values.put(COLUMN_SCORE_USER_ID, userId); // Asignar al usuario actual
+        values.put(COLUMN_SCORE_USER_ID, getCurrentUserId()); // Asignar al usuario actual
+        values.put(COLUMN_SCORE_HABIT_ID, habitId);
         values.put(COLUMN_SCORE_HABIT_TITLE, habitTitle);
         values.put(COLUMN_SCORE_POINTS, points);
-        long id = db.insert(TABLE_SCORES, null, values);
-        db.close();
-        return id;
+        if (date != null) {
+            values.put(COLUMN_SCORE_DATE, date);
+        }
+        return db.insert(TABLE_SCORES, null, values);
+    }
+
+    /**
+     * Hábito al que está enlazado un score (scores.habit_id), o null si no tiene.
+     */
+    public Long getScoreHabitId(long scoreId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_SCORES, new String[] { COLUMN_SCORE_HABIT_ID },
+                COLUMN_SCORE_ID + "=?", new String[] { String.valueOf(scoreId) }, null, null, null);
+        Long habitId = null;
+        if (cursor.moveToFirst() && !cursor.isNull(0)) {
+            habitId = cursor.getLong(0);
+        }
+        cursor.close();
+        return habitId;
     }
 
+    /**
+     * Título actual de un hábito, o null si no existe.
+     */
+    protected String getHabitTitle(SQLiteDatabase db, long habitId) {
+        Cursor cursor = db.query(TABLE_HABITS, new String[] { COLUMN_HABIT_TITLE },
+                COLUMN_HABIT_ID + "=?", new String[] { String.valueOf(habitId) }, null, null, null);
+        String title = null;
+        if (cursor.moveToFirst()) {
+            title = cursor.getString(0);
+        }
+        cursor.close();
+        return title;
+    }
+
+    /**
+     * Total acumulado del usuario actual, leído de user_stats (sin recorrer scores).
+     */
     public int getTotalScore() {
         long userId = getCurrentUserId();
         SQLiteDatabase db = this.getReadableDatabase();
-        // Filtrar suma por usuario
-        Cursor cursor = db.rawQuery("SELECT SUM(" + COLUMN_SCORE_POINTS + ") as total FROM " + TABLE_SCORES + " WHERE "
-                + COLUMN_SCORE_USER_ID + "=?", new String[] { String.valueOf(userId) });
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_STATS_TOTAL_SCORE + " FROM " + TABLE_USER_STATS + " WHERE "
+                + COLUMN_STATS_USER_ID + "=?", new String[] { String.valueOf(userId) });
 
         int total = 0;
         if (cursor.moveToFirst()) {
-            total = cursor.getInt(cursor.getColumnIndexOrThrow("total"));
+            total = cursor.getInt(0);
         }
         cursor.close();
-        db.close();
+        return total;
+    }
+
+    /**
+     * Verifica el total acumulado del usuario actual contra la suma real de scores y
+     * lo reconstruye si no coincide (también recalcula los hábitos completados).
+     * @return el total correcto
+     */
+    public int rebuildTotalScore() {
+        long userId = getCurrentUserId();
+        String[] args = new String[] { String.valueOf(userId) };
+        SQLiteDatabase db = this.getWritableDatabase();
+
+        int total;
+        db.beginTransaction();
+        try {
+            total = 0;
+            Cursor cursor = db.rawQuery("SELECT IFNULL(SUM(" + COLUMN_SCORE_POINTS + "), 0) FROM " + TABLE_SCORES
+                    + " WHERE " + COLUMN_SCORE_USER_ID + "=?", args);
+            if (cursor.moveToFirst()) {
+                total = cursor.getInt(0);
+            }
+            cursor.close();
+
+            int completed = 0;
+            cursor = db.rawQuery("SELECT COUNT(*) FROM " + TABLE_HABITS + " WHERE " + COLUMN_HABIT_USER_ID
+                    + "=? AND " + COLUMN_HABIT_COMPLETED + " = 1", args);
+            if (cursor.moveToFirst()) {
+                completed = cursor.getInt(0);
+            }
+            cursor.close();
+
+            int cached = getTotalScore();
+            if (cached != total) {
+                Log.w(TAG, "Total acumulado inconsistente (" + cached + " != " + total + "), reconstruyendo");
+            }
+
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_STATS_USER_ID, userId);
+            values.put(COLUMN_STATS_TOTAL_SCORE, total);
+            values.put(COLUMN_STATS_HABITS_COMPLETED, completed);
+            db.insertWithOnConflict(TABLE_USER_STATS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
         return total;
     }
 
@@ -621,22 +1022,24 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
             } while (cursor.moveToNext());
         }
         cursor.close();
-        db.close();
         return scores;
     }
 
-    public long getHabitIdByTitle(String title) {
+    /**
+     * Ids de los hábitos del usuario actual por título, en una sola consulta (para emparejar
+     * los hábitos de una copia de seguridad). Si hay títulos repetidos gana el más antiguo.
+     */
+    public Map<String, Long> getHabitIdsByTitle() {
+        Map<String, Long> ids = new HashMap<>();
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_HABITS, new String[] { COLUMN_HABIT_ID },
-                COLUMN_HABIT_TITLE + "=?", new String[] { title }, null, null, null);
-
-        long id = -1;
-        if (cursor.moveToFirst()) {
-            id = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_HABIT_ID));
+        Cursor cursor = db.query(TABLE_HABITS, new String[] { COLUMN_HABIT_ID, COLUMN_HABIT_TITLE },
+                COLUMN_HABIT_USER_ID + "=?", new String[] { String.valueOf(getCurrentUserId()) },
+                null, null, COLUMN_HABIT_ID + " ASC");
+        while (cursor.moveToNext()) {
+            ids.putIfAbsent(cursor.getString(1), cursor.getLong(0));
         }
         cursor.close();
-        db.close();
-        return id;
+        return ids;
     }
 
     public Habit getHabitById(long id) {
@@ -646,17 +1049,9 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
 
         Habit habit = null;
         if (cursor.moveToFirst()) {
-            habit = new Habit(
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_TITLE)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_GOAL)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_CATEGORY)),
-                    Habit.HabitType.valueOf(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_TYPE))));
-            habit.setId(id);
-            habit.setCompleted(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_HABIT_COMPLETED)) == 1);
-            loadHabitExtraFields(cursor, habit);
+            habit = new HabitRowMapper(cursor).map(cursor);
         }
         cursor.close();
-        db.close();
         return habit;
     }
 
@@ -715,39 +1110,138 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
             values.put(COLUMN_HABIT_ICON, habitIcon);
 
         int rowsAffected = db.update(TABLE_HABITS, values, COLUMN_HABIT_ID + "=?", new String[] { String.valueOf(id) });
-        db.close();
+        habitsChanged();
         return rowsAffected > 0;
     }
 
     public boolean deleteHabit(long id) {
         SQLiteDatabase db = this.getWritableDatabase();
         int rowsAffected = db.delete(TABLE_HABITS, COLUMN_HABIT_ID + "=?", new String[] { String.valueOf(id) });
-        db.close();
+        habitsChanged();
         return rowsAffected > 0;
     }
 
-    public void updateHabitCompleted(String title, boolean completed) {
+    /**
+     * Marca o desmarca un hábito como completado (búsqueda por clave primaria).
+     * @return true si el hábito existe
+     */
+    public boolean updateHabitCompleted(long id, boolean completed) {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
         values.put(COLUMN_HABIT_COMPLETED, completed ? 1 : 0);
-        db.update(TABLE_HABITS, values, COLUMN_HABIT_TITLE + "=?", new String[] { title });
-        db.close();
+        int rows = db.update(TABLE_HABITS, values, COLUMN_HABIT_ID + "=?", new String[] { String.valueOf(id) });
+        habitsChanged();
+        return rows > 0;
     }
 
-    public int getHabitPoints(String title) {
+    public int getHabitPoints(long id) {
         SQLiteDatabase db = this.getReadableDatabase();
         Cursor cursor = db.query(TABLE_HABITS, new String[] { COLUMN_HABIT_POINTS },
-                COLUMN_HABIT_TITLE + "=?", new String[] { title }, null, null, null);
+                COLUMN_HABIT_ID + "=?", new String[] { String.valueOf(id) }, null, null, null);
 
         int points = 10; // default
         if (cursor.moveToFirst()) {
             points = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_HABIT_POINTS));
         }
         cursor.close();
-        db.close();
         return points;
     }
 
+    // ========== PROGRESO DIARIO ==========
+
+    /**
+     * Día en el formato usado por habit_progress (yyyy-MM-dd).
+     */
+    public static String progressDay(long timeMillis) {
+        return new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(new Date(timeMillis));
+    }
+
+    public static String today() {
+        return progressDay(System.currentTimeMillis());
+    }
+
+    /**
+     * Suma delta al progreso de un hábito en un día de forma atómica.
+     * @return el nuevo valor
+     */
+    public int incrementProgress(long habitId, String day, int delta) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        Object[] args = new Object[] { habitId, day, delta };
+        int value;
+        db.beginTransaction();
+        try {
+            db.execSQL("INSERT OR IGNORE INTO " + TABLE_HABIT_PROGRESS + " (" + COLUMN_PROGRESS_HABIT_ID + ", "
+                    + COLUMN_PROGRESS_DAY + ", " + COLUMN_PROGRESS_VALUE + ") VALUES (?, ?, 0)",
+                    new Object[] { habitId, day });
+            db.execSQL("UPDATE " + TABLE_HABIT_PROGRESS + " SET " + COLUMN_PROGRESS_VALUE + " = "
+                    + COLUMN_PROGRESS_VALUE + " + ?3 WHERE " + COLUMN_PROGRESS_HABIT_ID + " = ?1 AND "
+                    + COLUMN_PROGRESS_DAY + " = ?2", args);
+            value = getProgress(habitId, day);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return value;
+    }
+
+    public int getProgress(long habitId, String day) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_PROGRESS_VALUE + " FROM " + TABLE_HABIT_PROGRESS + " WHERE "
+                + COLUMN_PROGRESS_HABIT_ID + "=? AND " + COLUMN_PROGRESS_DAY + "=?",
+                new String[] { String.valueOf(habitId), day });
+        int value = 0;
+        if (cursor.moveToFirst()) {
+            value = cursor.getInt(0);
+        }
+        cursor.close();
+        return value;
+    }
+
+    /**
+     * Progreso de todos los hábitos del usuario actual en un día (habitId -> valor),
+     * para que la lista no tenga que consultar la base de datos en cada fila.
+     */
+    public Map<Long, Integer> getProgressForDay(String day) {
+        long userId = getCurrentUserId();
+        Map<Long, Integer> progress = new java.util.HashMap<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT p." + COLUMN_PROGRESS_HABIT_ID + ", p." + COLUMN_PROGRESS_VALUE
+                + " FROM " + TABLE_HABIT_PROGRESS + " p JOIN " + TABLE_HABITS + " h ON h." + COLUMN_HABIT_ID
+                + " = p." + COLUMN_PROGRESS_HABIT_ID + " WHERE p." + COLUMN_PROGRESS_DAY + " = ? AND h."
+                + COLUMN_HABIT_USER_ID + " = ?", new String[] { day, String.valueOf(userId) });
+        while (cursor.moveToNext()) {
+            progress.put(cursor.getLong(0), cursor.getInt(1));
+        }
+        cursor.close();
+        return progress;
+    }
+
+    /**
+     * Progreso de un hábito entre dos días (ambos incluidos), ordenado por día.
+     */
+    public Map<String, Integer> getProgressRange(long habitId, String fromDay, String toDay) {
+        Map<String, Integer> progress = new LinkedHashMap<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_PROGRESS_DAY + ", " + COLUMN_PROGRESS_VALUE + " FROM "
+                + TABLE_HABIT_PROGRESS + " WHERE " + COLUMN_PROGRESS_HABIT_ID + "=? AND " + COLUMN_PROGRESS_DAY
+                + " BETWEEN ? AND ? ORDER BY " + COLUMN_PROGRESS_DAY,
+                new String[] { String.valueOf(habitId), fromDay, toDay });
+        while (cursor.moveToNext()) {
+            progress.put(cursor.getString(0), cursor.getInt(1));
+        }
+        cursor.close();
+        return progress;
+    }
+
+    /**
+     * Elimina el progreso anterior a un día (limpieza del historial).
+     * @return número de registros eliminados
+     */
+    public int deleteProgressBefore(String day) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        return db.delete(TABLE_HABIT_PROGRESS, COLUMN_PROGRESS_DAY + " < ?", new String[] { day });
+    }
+
     public static class ScoreEntry {
         private long id;
         private String habitTitle;
@@ -805,7 +1299,7 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
             return false;
         } finally {
             db.endTransaction();
-            db.close();
+            habitsChanged();
         }
     }
 
@@ -813,17 +1307,15 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
         List<com.tuempresa.proyecto_01_11_25.model.UserRanking> ranking = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
 
-        // Query compleja para obtener ranking
+        // Lectura ordenada de la tabla agregada (mantenida por triggers)
         String query = "SELECT " +
                 "u." + COLUMN_USER_EMAIL + ", " +
                 "u." + COLUMN_USER_FIRST_NAME + ", " +
-                "IFNULL(SUM(s." + COLUMN_SCORE_POINTS + "), 0) as total_score, " +
-                "(SELECT COUNT(*) FROM " + TABLE_HABITS + " h WHERE h." + COLUMN_HABIT_USER_ID + " = u."
-                + COLUMN_USER_ID + " AND h." + COLUMN_HABIT_COMPLETED + " = 1) as habits_completed " +
-                "FROM " + TABLE_USERS + " u " +
-                "LEFT JOIN " + TABLE_SCORES + " s ON u." + COLUMN_USER_ID + " = s." + COLUMN_SCORE_USER_ID + " " +
-                "GROUP BY u." + COLUMN_USER_ID + " " +
-                "ORDER BY total_score DESC";
+                "st." + COLUMN_STATS_TOTAL_SCORE + " as total_score, " +
+                "st." + COLUMN_STATS_HABITS_COMPLETED + " as habits_completed " +
+                "FROM " + TABLE_USER_STATS + " st " +
+                "JOIN " + TABLE_USERS + " u ON u." + COLUMN_USER_ID + " = st." + COLUMN_STATS_USER_ID + " " +
+                "ORDER BY st." + COLUMN_STATS_TOTAL_SCORE + " DESC";
 
         Cursor cursor = db.rawQuery(query, null);
 
@@ -846,7 +1338,6 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
             } while (cursor.moveToNext());
         }
         cursor.close();
-        db.close();
         return ranking;
     }
 }
@@ -3,13 +3,24 @@ package com.tuempresa.proyecto_01_11_25.database;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.model.HabitsResponse;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Extensión de HabitDatabaseHelper para agregar funcionalidad de sincronización.
@@ -19,6 +30,8 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
     private static final String TAG = "HabitDatabaseHelperSync";
     private static final int DATABASE_VERSION_SYNC = 5; // Nueva versión con sincronización
     private static final String DATABASE_NAME = "habitus.db";
+    // Hábitos por transacción al aplicar una descarga en streaming
+    private static final int DOWNLOAD_CHUNK_SIZE = 100;
 
     // Campos adicionales para sincronización (deben coincidir con SQL Server)
     private static final String COLUMN_HABIT_SYNCED = "synced";
@@ -44,20 +57,55 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
     private static final String COLUMN_PENDING_RETRY_COUNT = "retry_count";
     private static final String COLUMN_PENDING_LAST_ERROR = "last_error";
     private static final String COLUMN_PENDING_PRIORITY = "priority";
+    private static final String COLUMN_PENDING_NEXT_ATTEMPT_AT = "next_attempt_at";
 
-    public HabitDatabaseHelperSync(Context context) {
+    // Operaciones que agotaron sus reintentos: se conservan para revisarlas o reencolarlas
+    private static final String TABLE_DEAD_LETTER_OPERATIONS = "dead_letter_operations";
+    private static final String COLUMN_DEAD_FAILED_AT = "failed_at";
+
+    // Prioridades de pending_operations (menor = antes)
+    public static final int PRIORITY_HIGH = 1;
+    public static final int PRIORITY_NORMAL = 2;
+    public static final int PRIORITY_LOW = 3;
+
+    // Estado de la sincronización delta por usuario (marca de agua del servidor)
+    private static final String TABLE_SYNC_STATE = "sync_state";
+    private static final String COLUMN_SYNC_STATE_USER_ID = "user_id";
+    private static final String COLUMN_SYNC_STATE_HABITS_WATERMARK = "habits_watermark";
+
+    private static HabitDatabaseHelperSync instance;
+    private volatile boolean syncColumnsVerified = false;
+    private volatile boolean pendingTablesVerified = false;
+
+    private HabitDatabaseHelperSync(Context context) {
         // Llamar al constructor del padre que solo acepta Context
         super(context);
     }
 
+    /**
+     * Obtiene la instancia singleton (una conexión compartida por todo el proceso).
+     */
+    public static synchronized HabitDatabaseHelperSync getInstance(Context context) {
+        if (instance == null) {
+            instance = new HabitDatabaseHelperSync(context);
+        }
+        return instance;
+    }
+
     /**
      * Elimina la base de datos local completamente.
      * Útil para resolver conflictos y forzar una sincronización limpia desde la API.
      * @param context Contexto de la aplicación
      */
-    public static void deleteLocalDatabase(Context context) {
+    public static synchronized void deleteLocalDatabase(Context context) {
         try {
-            // Cerrar cualquier conexión abierta primero
+            // Cerrar la conexión compartida primero; se reabrirá en el siguiente acceso
+            if (instance != null) {
+                instance.close();
+                instance.syncColumnsVerified = false;
+                instance.pendingTablesVerified = false;
+                instance.habitsChanged();
+            }
             context.deleteDatabase(DATABASE_NAME);
             Log.d(TAG, "Base de datos local eliminada: " + DATABASE_NAME);
         } catch (Exception e) {
@@ -76,20 +124,10 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
         addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_UPDATED_AT, "INTEGER DEFAULT (strftime('%s', 'now'))");
 
         // Crear tabla de operaciones pendientes
-        String createPendingOpsTable = "CREATE TABLE IF NOT EXISTS " + TABLE_PENDING_OPERATIONS + " (" +
-                COLUMN_PENDING_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                COLUMN_PENDING_OPERATION_TYPE + " TEXT NOT NULL, " +
-                COLUMN_PENDING_ENTITY_TYPE + " TEXT NOT NULL, " +
-                COLUMN_PENDING_ENTITY_ID + " INTEGER NOT NULL, " +
-                COLUMN_PENDING_ENTITY_DATA + " TEXT, " +
-                COLUMN_PENDING_CREATED_AT + " INTEGER DEFAULT (strftime('%s', 'now')), " +
-                COLUMN_PENDING_RETRY_COUNT + " INTEGER DEFAULT 0, " +
-                COLUMN_PENDING_LAST_ERROR + " TEXT, " +
-                COLUMN_PENDING_PRIORITY + " INTEGER DEFAULT 2" +
-                ")";
-        
-        db.execSQL(createPendingOpsTable);
-        Log.d(TAG, "Tabla de operaciones pendientes creada");
+        createPendingOperationsTables(db);
+
+        createSyncIndexes(db);
+        createSyncStateTable(db);
     }
 
     @Override
@@ -101,26 +139,32 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
         addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_SERVER_ID, "INTEGER");
         addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_UPDATED_AT, "INTEGER DEFAULT (strftime('%s', 'now'))");
 
-        // Crear tabla de operaciones pendientes si no existe
-        String createPendingOpsTable = "CREATE TABLE IF NOT EXISTS " + TABLE_PENDING_OPERATIONS + " (" +
-                COLUMN_PENDING_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                COLUMN_PENDING_OPERATION_TYPE + " TEXT NOT NULL, " +
-                COLUMN_PENDING_ENTITY_TYPE + " TEXT NOT NULL, " +
-                COLUMN_PENDING_ENTITY_ID + " INTEGER NOT NULL, " +
-                COLUMN_PENDING_ENTITY_DATA + " TEXT, " +
-                COLUMN_PENDING_CREATED_AT + " INTEGER DEFAULT (strftime('%s', 'now')), " +
-                COLUMN_PENDING_RETRY_COUNT + " INTEGER DEFAULT 0, " +
-                COLUMN_PENDING_LAST_ERROR + " TEXT, " +
-                COLUMN_PENDING_PRIORITY + " INTEGER DEFAULT 2" +
-                ")";
-        
-        try {
-            db.execSQL(createPendingOpsTable);
-            Log.d(TAG, "Tabla de operaciones pendientes creada/verificada");
-        } catch (Exception e) {
-            // La tabla ya existe, ignorar
-            Log.d(TAG, "Tabla de operaciones pendientes ya existe");
-        }
+        // Crear tabla de operaciones pendientes si no existe (y las columnas nuevas)
+        createPendingOperationsTables(db);
+
+        // Índices de sincronización (idempotente, las columnas ya existen en este punto)
+        createSyncIndexes(db);
+        createSyncStateTable(db);
+    }
+
+    /**
+     * Crea los índices usados por la sincronización: búsqueda por server_id
+     * y filtrado de pendientes por synced (ordenados por created_at).
+     */
+    private void createSyncIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_habits_server_id ON " + TABLE_HABITS + "("
+                + COLUMN_HABIT_SERVER_ID + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_habits_synced_created ON " + TABLE_HABITS + "("
+                + COLUMN_HABIT_SYNCED + ", " + COLUMN_HABIT_CREATED_AT + ")");
+    }
+
+    /**
+     * Crea la tabla con la marca de agua de la sincronización delta (una fila por usuario).
+     */
+    private void createSyncStateTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_SYNC_STATE + " ("
+                + COLUMN_SYNC_STATE_USER_ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_SYNC_STATE_HABITS_WATERMARK + " INTEGER NOT NULL DEFAULT 0)");
     }
 
     // ========== MÉTODOS DE SINCRONIZACIÓN PARA HÁBITOS ==========
@@ -152,9 +196,13 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
     }
 
     /**
-     * Asegura que las columnas de sincronización existan
+     * Asegura que las columnas de sincronización existan.
+     * El PRAGMA solo se ejecuta una vez por proceso (la conexión es compartida).
      */
     private void ensureSyncColumns(SQLiteDatabase db) {
+        if (syncColumnsVerified) {
+            return;
+        }
         if (!columnExists(db, TABLE_HABITS, COLUMN_HABIT_SYNCED)) {
             addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_SYNCED, "INTEGER DEFAULT 0");
             Log.d(TAG, "Columna 'synced' agregada");
@@ -167,46 +215,56 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
             addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_UPDATED_AT, "INTEGER DEFAULT (strftime('%s', 'now'))");
             Log.d(TAG, "Columna 'updated_at' agregada");
         }
+        createSyncIndexes(db);
+        createSyncStateTable(db);
+        syncColumnsVerified = true;
     }
 
     /**
-     * Verifica si una tabla existe
+     * Asegura que la tabla de operaciones pendientes exista (una vez por proceso).
      */
-    private boolean tableExists(SQLiteDatabase db, String tableName) {
-        Cursor cursor = null;
-        try {
-            cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type='table' AND name=?", new String[]{tableName});
-            return cursor != null && cursor.getCount() > 0;
-        } catch (Exception e) {
-            Log.e(TAG, "Error al verificar tabla", e);
-            return false;
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
+    private void ensurePendingOperationsTable(SQLiteDatabase db) {
+        if (pendingTablesVerified) {
+            return;
         }
+        createPendingOperationsTables(db);
+        pendingTablesVerified = true;
     }
 
     /**
-     * Asegura que la tabla de operaciones pendientes exista
+     * Crea pending_operations, la columna next_attempt_at (bases anteriores) y la tabla de
+     * operaciones descartadas. Idempotente.
      */
-    private void ensurePendingOperationsTable(SQLiteDatabase db) {
-        if (!tableExists(db, TABLE_PENDING_OPERATIONS)) {
-            String createPendingOpsTable = "CREATE TABLE IF NOT EXISTS " + TABLE_PENDING_OPERATIONS + " (" +
-                    COLUMN_PENDING_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    COLUMN_PENDING_OPERATION_TYPE + " TEXT NOT NULL, " +
-                    COLUMN_PENDING_ENTITY_TYPE + " TEXT NOT NULL, " +
-                    COLUMN_PENDING_ENTITY_ID + " INTEGER NOT NULL, " +
-                    COLUMN_PENDING_ENTITY_DATA + " TEXT, " +
-                    COLUMN_PENDING_CREATED_AT + " INTEGER DEFAULT (strftime('%s', 'now')), " +
-                    COLUMN_PENDING_RETRY_COUNT + " INTEGER DEFAULT 0, " +
-                    COLUMN_PENDING_LAST_ERROR + " TEXT, " +
-                    COLUMN_PENDING_PRIORITY + " INTEGER DEFAULT 2" +
-                    ")";
-            
-            db.execSQL(createPendingOpsTable);
-            Log.d(TAG, "Tabla 'pending_operations' creada");
+    private void createPendingOperationsTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_PENDING_OPERATIONS + " (" +
+                COLUMN_PENDING_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_PENDING_OPERATION_TYPE + " TEXT NOT NULL, " +
+                COLUMN_PENDING_ENTITY_TYPE + " TEXT NOT NULL, " +
+                COLUMN_PENDING_ENTITY_ID + " INTEGER NOT NULL, " +
+                COLUMN_PENDING_ENTITY_DATA + " TEXT, " +
+                COLUMN_PENDING_CREATED_AT + " INTEGER DEFAULT (strftime('%s', 'now')), " +
+                COLUMN_PENDING_RETRY_COUNT + " INTEGER DEFAULT 0, " +
+                COLUMN_PENDING_LAST_ERROR + " TEXT, " +
+                COLUMN_PENDING_PRIORITY + " INTEGER DEFAULT 2, " +
+                COLUMN_PENDING_NEXT_ATTEMPT_AT + " INTEGER NOT NULL DEFAULT 0" +
+                ")");
+        if (!columnExists(db, TABLE_PENDING_OPERATIONS, COLUMN_PENDING_NEXT_ATTEMPT_AT)) {
+            addColumnIfNotExists(db, TABLE_PENDING_OPERATIONS, COLUMN_PENDING_NEXT_ATTEMPT_AT, "INTEGER NOT NULL DEFAULT 0");
         }
+
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_DEAD_LETTER_OPERATIONS + " (" +
+                COLUMN_PENDING_ID + " INTEGER PRIMARY KEY, " +
+                COLUMN_PENDING_OPERATION_TYPE + " TEXT NOT NULL, " +
+                COLUMN_PENDING_ENTITY_TYPE + " TEXT NOT NULL, " +
+                COLUMN_PENDING_ENTITY_ID + " INTEGER NOT NULL, " +
+                COLUMN_PENDING_ENTITY_DATA + " TEXT, " +
+                COLUMN_PENDING_CREATED_AT + " INTEGER, " +
+                COLUMN_PENDING_RETRY_COUNT + " INTEGER, " +
+                COLUMN_PENDING_LAST_ERROR + " TEXT, " +
+                COLUMN_PENDING_PRIORITY + " INTEGER, " +
+                COLUMN_DEAD_FAILED_AT + " INTEGER NOT NULL" +
+                ")");
+        Log.d(TAG, "Tablas de operaciones pendientes creadas/verificadas");
     }
 
     /**
@@ -223,13 +281,12 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
                 COLUMN_HABIT_SYNCED + "=0", null, null, null, COLUMN_HABIT_CREATED_AT + " DESC");
 
         if (cursor.moveToFirst()) {
+            HabitRowMapper mapper = new HabitRowMapper(cursor);
             do {
-                Habit habit = cursorToHabit(cursor);
-                habits.add(habit);
+                habits.add(mapper.map(cursor));
             } while (cursor.moveToNext());
         }
         cursor.close();
-        db.close();
         return habits;
     }
 
@@ -249,18 +306,18 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
                 null, null, null, COLUMN_HABIT_CREATED_AT + " DESC");
 
         if (cursor.moveToFirst()) {
+            HabitRowMapper mapper = new HabitRowMapper(cursor);
             do {
-                Habit habit = cursorToHabit(cursor);
-                habits.add(habit);
+                habits.add(mapper.map(cursor));
             } while (cursor.moveToNext());
         }
         cursor.close();
-        db.close();
         return habits;
     }
 
     /**
-     * Marca un hábito como sincronizado
+     * Marca un hábito como sincronizado. Si la fila ya no existe (se borró mientras su petición
+     * estaba en curso) encola un DELETE con el serverId recibido, ver enqueueDeleteOfGoneHabit.
      */
     public void markHabitAsSynced(long localId, long serverId) {
         SQLiteDatabase db = this.getWritableDatabase();
@@ -269,8 +326,78 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
         values.put(COLUMN_HABIT_SYNCED, 1);
         values.put(COLUMN_HABIT_SERVER_ID, serverId);
         values.put(COLUMN_HABIT_UPDATED_AT, System.currentTimeMillis() / 1000);
-        db.update(TABLE_HABITS, values, COLUMN_HABIT_ID + "=?", new String[]{String.valueOf(localId)});
-        db.close();
+        db.beginTransaction();
+        try {
+            if (db.update(TABLE_HABITS, values, COLUMN_HABIT_ID + "=?", new String[]{String.valueOf(localId)}) == 0) {
+                enqueueDeleteOfGoneHabit(localId, serverId);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            habitsChanged();
+        }
+    }
+
+    /**
+     * Si la confirmación del servidor llega para un hábito que ya se borró localmente, deleteHabit
+     * no tenía serverId que borrar: sin este DELETE el servidor conservaría el hábito. Si el
+     * borrado ya se había encolado, el segundo DELETE recibe 404, que también cuenta como hecho.
+     */
+    private void enqueueDeleteOfGoneHabit(long localId, long serverId) {
+        if (serverId <= 0) {
+            return;
+        }
+        Log.d(TAG, "Hábito " + localId + " borrado durante su envío: se encola DELETE de " + serverId);
+        savePendingOperation("DELETE", "HABIT", localId, String.valueOf(serverId));
+    }
+
+    /**
+     * Aplica la respuesta de un lote de habits/sync en una sola transacción: guarda el serverId
+     * de cada hábito (misma posición que en el lote enviado), lo marca como sincronizado y borra
+     * las operaciones pendientes que el lote ya cubría. Los hábitos borrados localmente durante
+     * el envío dejan un DELETE encolado (ver enqueueDeleteOfGoneHabit).
+     */
+    public void applyBatchSyncResult(long[] localIds, List<Habit> serverHabits, List<Long> pendingOperationIds) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ensureSyncColumns(db);
+        long now = System.currentTimeMillis() / 1000;
+
+        SQLiteStatement markSynced = db.compileStatement("UPDATE " + TABLE_HABITS + " SET "
+                + COLUMN_HABIT_SYNCED + " = 1, " + COLUMN_HABIT_SERVER_ID + " = ?, "
+                + COLUMN_HABIT_UPDATED_AT + " = ? WHERE " + COLUMN_HABIT_ID + " = ?");
+        SQLiteStatement deleteOp = db.compileStatement("DELETE FROM " + TABLE_PENDING_OPERATIONS
+                + " WHERE " + COLUMN_PENDING_ID + " = ?");
+        // Posiciones del lote cuyo hábito se borró localmente mientras se enviaba
+        List<Integer> gone = new ArrayList<>();
+
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < localIds.length; i++) {
+                long serverId = serverHabits.get(i).getId();
+                if (serverId <= 0) {
+                    continue;
+                }
+                markSynced.bindLong(1, serverId);
+                markSynced.bindLong(2, now);
+                markSynced.bindLong(3, localIds[i]);
+                if (markSynced.executeUpdateDelete() == 0) {
+                    gone.add(i);
+                }
+            }
+            for (Long opId : pendingOperationIds) {
+                deleteOp.bindLong(1, opId);
+                deleteOp.executeUpdateDelete();
+            }
+            for (int i : gone) {
+                enqueueDeleteOfGoneHabit(localIds[i], serverHabits.get(i).getId());
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            markSynced.close();
+            deleteOp.close();
+            habitsChanged();
+        }
     }
 
     /**
@@ -283,13 +410,12 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
         values.put(COLUMN_HABIT_SYNCED, 0);
         values.put(COLUMN_HABIT_UPDATED_AT, System.currentTimeMillis() / 1000);
         db.update(TABLE_HABITS, values, COLUMN_HABIT_ID + "=?", new String[]{String.valueOf(localId)});
-        db.close();
+        habitsChanged();
     }
 
     /**
      * Obtiene un hábito por serverId
      * @param serverId El ID del servidor
-     * @param db Instancia opcional de SQLiteDatabase. Si se proporciona, no se cerrará.
      * @return El hábito encontrado o null
      */
     public Habit getHabitByServerId(long serverId) {
@@ -299,14 +425,12 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
     /**
      * Obtiene un hábito por serverId usando una instancia de base de datos existente
      * @param serverId El ID del servidor
-     * @param db Instancia opcional de SQLiteDatabase. Si se proporciona, no se cerrará.
+     * @param db Instancia opcional de SQLiteDatabase (la conexión compartida si es null)
      * @return El hábito encontrado o null
      */
     private Habit getHabitByServerId(long serverId, SQLiteDatabase db) {
-        boolean shouldClose = false;
         if (db == null) {
             db = this.getReadableDatabase();
-            shouldClose = true;
         }
         ensureSyncColumns(db);
         Cursor cursor = db.query(TABLE_HABITS, null, 
@@ -314,12 +438,9 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
 
         Habit habit = null;
         if (cursor.moveToFirst()) {
-            habit = cursorToHabit(cursor);
+            habit = new HabitRowMapper(cursor).map(cursor);
         }
         cursor.close();
-        if (shouldClose) {
-            db.close();
-        }
         return habit;
     }
 
@@ -365,6 +486,7 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
             // Actualizar existente
             id = existing.getId();
             db.update(TABLE_HABITS, values, COLUMN_HABIT_ID + "=?", new String[]{String.valueOf(id)});
+            habitsChanged();
         } else {
             // Insertar nuevo usando insertHabitFull
             id = insertHabitFull(
@@ -392,10 +514,352 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
             markHabitAsSynced(id, serverId);
         }
         
-        db.close();
         return id;
     }
 
+    /**
+     * Actualiza o inserta en bloque los hábitos descargados del servidor.
+     * Todo el merge se hace en una sola transacción con sentencias precompiladas:
+     * primero UPDATE por server_id y, si no afectó filas, INSERT.
+     * (No se usa INSERT ... ON CONFLICT DO UPDATE porque requiere SQLite 3.24 / API 30
+     * y la app soporta desde API 26.)
+     * @param serverHabits Hábitos del servidor (su id es el serverId)
+     * @return Número de hábitos actualizados o insertados
+     */
+    public int upsertHabitsFromServer(List<Habit> serverHabits) {
+        if (serverHabits == null || serverHabits.isEmpty()) {
+            return 0;
+        }
+
+        SQLiteDatabase db = this.getWritableDatabase();
+        ensureSyncColumns(db);
+
+        int count;
+        db.beginTransaction();
+        try {
+            count = upsertHabits(db, serverHabits);
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e(TAG, "Error en upsert masivo de hábitos", e);
+            count = 0;
+        } finally {
+            db.endTransaction();
+            habitsChanged();
+        }
+        return count;
+    }
+
+    /**
+     * Merge de hábitos del servidor dentro de la transacción abierta por el llamador.
+     * Las excepciones se propagan para que el llamador revierta la transacción completa.
+     */
+    private int upsertHabits(SQLiteDatabase db, List<Habit> serverHabits) {
+        int count = 0;
+        try (HabitUpserter upserter = new HabitUpserter(db)) {
+            for (Habit habit : serverHabits) {
+                if (upserter.upsert(habit)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Sentencias compiladas del merge de hábitos del servidor (UPDATE por server_id y, si no
+     * existe, INSERT). Se reutilizan para todos los hábitos de una descarga.
+     * Los hábitos con cambios locales sin subir (synced = 0, p. ej. recién completados) no se
+     * sobrescriben: su versión local llega al servidor en el siguiente habits/sync.
+     */
+    private final class HabitUpserter implements AutoCloseable {
+        private final SQLiteStatement updateStmt;
+        private final SQLiteStatement existsStmt;
+        private final SQLiteStatement insertStmt;
+        private final long userId;
+        private final long now;
+
+        HabitUpserter(SQLiteDatabase db) {
+            userId = getCurrentUserId();
+            now = System.currentTimeMillis() / 1000;
+
+            // Los opcionales usan COALESCE para conservar el valor local si el servidor manda null
+            updateStmt = db.compileStatement("UPDATE " + TABLE_HABITS + " SET " +
+                    COLUMN_HABIT_TITLE + "=?, " +
+                    COLUMN_HABIT_GOAL + "=?, " +
+                    COLUMN_HABIT_CATEGORY + "=?, " +
+                    COLUMN_HABIT_TYPE + "=?, " +
+                    COLUMN_HABIT_COMPLETED + "=?, " +
+                    COLUMN_HABIT_POINTS + "=?, " +
+                    COLUMN_HABIT_TARGET_VALUE + "=?, " +
+                    COLUMN_HABIT_TARGET_UNIT + "=COALESCE(?, " + COLUMN_HABIT_TARGET_UNIT + "), " +
+                    COLUMN_HABIT_PAGES_PER_DAY + "=COALESCE(?, " + COLUMN_HABIT_PAGES_PER_DAY + "), " +
+                    COLUMN_HABIT_REMINDER_TIMES + "=COALESCE(?, " + COLUMN_HABIT_REMINDER_TIMES + "), " +
+                    COLUMN_HABIT_DURATION_MINUTES + "=COALESCE(?, " + COLUMN_HABIT_DURATION_MINUTES + "), " +
+                    COLUMN_HABIT_DND_MODE + "=COALESCE(?, " + COLUMN_HABIT_DND_MODE + "), " +
+                    COLUMN_HABIT_MUSIC_ID + "=COALESCE(?, " + COLUMN_HABIT_MUSIC_ID + "), " +
+                    COLUMN_HABIT_JOURNAL_ENABLED + "=COALESCE(?, " + COLUMN_HABIT_JOURNAL_ENABLED + "), " +
+                    COLUMN_HABIT_GYM_DAYS + "=COALESCE(?, " + COLUMN_HABIT_GYM_DAYS + "), " +
+                    COLUMN_HABIT_WATER_GOAL_GLASSES + "=COALESCE(?, " + COLUMN_HABIT_WATER_GOAL_GLASSES + "), " +
+                    COLUMN_HABIT_ONE_CLICK_COMPLETE + "=COALESCE(?, " + COLUMN_HABIT_ONE_CLICK_COMPLETE + "), " +
+                    COLUMN_HABIT_ENGLISH_MODE + "=COALESCE(?, " + COLUMN_HABIT_ENGLISH_MODE + "), " +
+                    COLUMN_HABIT_CODING_MODE + "=COALESCE(?, " + COLUMN_HABIT_CODING_MODE + "), " +
+                    COLUMN_HABIT_ICON + "=COALESCE(?, " + COLUMN_HABIT_ICON + "), " +
+                    COLUMN_HABIT_SYNCED + "=1, " +
+                    COLUMN_HABIT_UPDATED_AT + "=? " +
+                    "WHERE " + COLUMN_HABIT_SERVER_ID + "=? AND " + COLUMN_HABIT_SYNCED + "=1");
+            existsStmt = db.compileStatement("SELECT COUNT(*) FROM " + TABLE_HABITS + " WHERE "
+                    + COLUMN_HABIT_SERVER_ID + "=?");
+
+            // En el INSERT los booleanos nulos toman el DEFAULT 0 de la tabla, igual que insertHabitFull
+            insertStmt = db.compileStatement("INSERT INTO " + TABLE_HABITS + " (" +
+                    COLUMN_HABIT_TITLE + ", " +
+                    COLUMN_HABIT_GOAL + ", " +
+                    COLUMN_HABIT_CATEGORY + ", " +
+                    COLUMN_HABIT_TYPE + ", " +
+                    COLUMN_HABIT_COMPLETED + ", " +
+                    COLUMN_HABIT_POINTS + ", " +
+                    COLUMN_HABIT_TARGET_VALUE + ", " +
+                    COLUMN_HABIT_TARGET_UNIT + ", " +
+                    COLUMN_HABIT_PAGES_PER_DAY + ", " +
+                    COLUMN_HABIT_REMINDER_TIMES + ", " +
+                    COLUMN_HABIT_DURATION_MINUTES + ", " +
+                    COLUMN_HABIT_DND_MODE + ", " +
+                    COLUMN_HABIT_MUSIC_ID + ", " +
+                    COLUMN_HABIT_JOURNAL_ENABLED + ", " +
+                    COLUMN_HABIT_GYM_DAYS + ", " +
+                    COLUMN_HABIT_WATER_GOAL_GLASSES + ", " +
+                    COLUMN_HABIT_ONE_CLICK_COMPLETE + ", " +
+                    COLUMN_HABIT_ENGLISH_MODE + ", " +
+                    COLUMN_HABIT_CODING_MODE + ", " +
+                    COLUMN_HABIT_ICON + ", " +
+                    COLUMN_HABIT_USER_ID + ", " +
+                    COLUMN_HABIT_POINTS_PER_COMPLETION + ", " +
+                    COLUMN_HABIT_SYNCED + ", " +
+                    COLUMN_HABIT_UPDATED_AT + ", " +
+                    COLUMN_HABIT_SERVER_ID +
+                    ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, COALESCE(?, 0), ?, COALESCE(?, 0), ?, ?, " +
+                    "COALESCE(?, 0), COALESCE(?, 0), COALESCE(?, 0), ?, ?, ?, 1, ?, ?)");
+        }
+
+        /**
+         * @return true si el hábito se actualizó o insertó
+         */
+        boolean upsert(Habit habit) {
+            long serverId = habit.getId();
+            if (serverId <= 0) {
+                return false;
+            }
+
+            updateStmt.clearBindings();
+            int next = bindHabitColumns(updateStmt, habit);
+            updateStmt.bindLong(next++, now);
+            updateStmt.bindLong(next, serverId);
+            if (updateStmt.executeUpdateDelete() > 0) {
+                return true;
+            }
+            existsStmt.bindLong(1, serverId);
+            if (existsStmt.simpleQueryForLong() > 0) {
+                // Existe con cambios locales pendientes: gana la versión local
+                return false;
+            }
+
+            insertStmt.clearBindings();
+            next = bindHabitColumns(insertStmt, habit);
+            insertStmt.bindLong(next++, userId);
+            insertStmt.bindLong(next++, habit.getPoints());
+            insertStmt.bindLong(next++, now);
+            insertStmt.bindLong(next, serverId);
+            return insertStmt.executeInsert() != -1;
+        }
+
+        @Override
+        public void close() {
+            updateStmt.close();
+            existsStmt.close();
+            insertStmt.close();
+        }
+    }
+
+    /**
+     * Devuelve la marca de agua de la última sincronización delta del usuario actual
+     * (0 si nunca se sincronizó, lo que equivale a pedir todos los hábitos).
+     */
+    public long getHabitsWatermark() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        ensureSyncColumns(db);
+        Cursor cursor = db.query(TABLE_SYNC_STATE, new String[]{COLUMN_SYNC_STATE_HABITS_WATERMARK},
+                COLUMN_SYNC_STATE_USER_ID + "=?", new String[]{String.valueOf(getCurrentUserId())},
+                null, null, null);
+
+        long watermark = 0;
+        if (cursor.moveToFirst()) {
+            watermark = cursor.getLong(0);
+        }
+        cursor.close();
+        return watermark;
+    }
+
+    /**
+     * Respuesta de hábitos que se lee una sola vez, entregando cada hábito según se parsea.
+     */
+    public interface HabitsDownload {
+        /**
+         * @param consumer Recibe cada hábito de la respuesta (su id es el serverId)
+         * @return El resto de la respuesta: success, deletedIds y watermark (habits se ignora)
+         */
+        HabitsResponse read(Consumer<Habit> consumer) throws IOException;
+    }
+
+    /**
+     * Aplica una descarga de hábitos en streaming sin mantener una transacción abierta mientras
+     * se lee la red: los hábitos se parsean fuera de transacción y se fusionan en bloques de
+     * DOWNLOAD_CHUNK_SIZE, cada uno en su propia transacción corta. El último bloque se aplica
+     * en la transacción final, junto con:
+     * - con watermark (delta): el borrado de los hábitos sincronizados cuyo serverId llegó como
+     *   eliminado y la nueva marca de agua;
+     * - sin watermark (el servidor devolvió la lista completa): el borrado de los hábitos
+     *   sincronizados del usuario actual que no aparecieron en la respuesta.
+     * Solo se borran hábitos sin cambios locales pendientes (synced = 1). Si la lectura falla a
+     * mitad, los bloques ya confirmados se quedan, pero la marca no avanza y el mismo delta se
+     * vuelve a pedir; el merge es idempotente.
+     * @return Número de hábitos actualizados o insertados
+     */
+    public int applyHabitsDownload(HabitsDownload download) throws IOException {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ensureSyncColumns(db);
+
+        Set<Long> receivedServerIds = new HashSet<>();
+        List<Habit> chunk = new ArrayList<>(DOWNLOAD_CHUNK_SIZE);
+        int[] count = {0};
+        HabitsResponse summary;
+        int deleted;
+        try {
+            summary = download.read(habit -> {
+                chunk.add(habit);
+                receivedServerIds.add(habit.getId());
+                if (chunk.size() >= DOWNLOAD_CHUNK_SIZE) {
+                    count[0] += applyHabitsChunk(db, chunk);
+                    chunk.clear();
+                }
+            });
+
+            db.beginTransaction();
+            try {
+                count[0] += upsertHabits(db, chunk);
+                if (summary.getWatermark() != null) {
+                    deleted = deleteSyncedHabitsByServerId(db, summary.getDeletedIds());
+                    ContentValues values = new ContentValues();
+                    values.put(COLUMN_SYNC_STATE_USER_ID, getCurrentUserId());
+                    values.put(COLUMN_SYNC_STATE_HABITS_WATERMARK, summary.getWatermark());
+                    db.insertWithOnConflict(TABLE_SYNC_STATE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                } else {
+                    deleted = deleteSyncedHabitsByServerId(db, syncedServerIdsMissingFrom(db, receivedServerIds));
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            habitsChanged();
+        }
+        Log.d(TAG, "Descarga aplicada: " + count[0] + " hábitos actualizados, " + deleted
+                + " eliminados, watermark=" + summary.getWatermark());
+        return count[0];
+    }
+
+    /**
+     * Fusiona un bloque de la descarga en su propia transacción.
+     */
+    private int applyHabitsChunk(SQLiteDatabase db, List<Habit> chunk) {
+        db.beginTransaction();
+        try {
+            int count = upsertHabits(db, chunk);
+            db.setTransactionSuccessful();
+            return count;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private int deleteSyncedHabitsByServerId(SQLiteDatabase db, Collection<Long> serverIds) {
+        if (serverIds == null || serverIds.isEmpty()) {
+            return 0;
+        }
+        int deleted = 0;
+        try (SQLiteStatement deleteStmt = db.compileStatement("DELETE FROM " + TABLE_HABITS + " WHERE "
+                + COLUMN_HABIT_SERVER_ID + " = ? AND " + COLUMN_HABIT_SYNCED + " = 1")) {
+            for (Long serverId : serverIds) {
+                if (serverId == null) {
+                    continue;
+                }
+                deleteStmt.bindLong(1, serverId);
+                deleted += deleteStmt.executeUpdateDelete();
+            }
+        }
+        return deleted;
+    }
+
+    private List<Long> syncedServerIdsMissingFrom(SQLiteDatabase db, Set<Long> serverIds) {
+        List<Long> missing = new ArrayList<>();
+        // Solo los del usuario actual: la lista completa no dice nada de los de otras cuentas
+        Cursor cursor = db.query(TABLE_HABITS, new String[]{COLUMN_HABIT_SERVER_ID},
+                COLUMN_HABIT_USER_ID + "=? AND " + COLUMN_HABIT_SYNCED + "=1 AND " + COLUMN_HABIT_SERVER_ID + " > 0",
+                new String[]{String.valueOf(getCurrentUserId())}, null, null, null);
+        while (cursor.moveToNext()) {
+            long serverId = cursor.getLong(0);
+            if (!serverIds.contains(serverId)) {
+                missing.add(serverId);
+            }
+        }
+        cursor.close();
+        return missing;
+    }
+
+    /**
+     * Enlaza las 20 columnas de datos del hábito (de title a habit_icon) en el orden
+     * usado por las sentencias de HabitUpserter.
+     * @return Siguiente índice libre
+     */
+    private int bindHabitColumns(SQLiteStatement stmt, Habit habit) {
+        int i = 1;
+        stmt.bindString(i++, habit.getTitle() != null ? habit.getTitle() : "");
+        bindNullable(stmt, i++, habit.getGoal());
+        bindNullable(stmt, i++, habit.getCategory());
+        // Igual que HabitTypeAdapter: tipo desconocido -> DEMO
+        stmt.bindString(i++, habit.getType() != null ? habit.getType().name() : Habit.HabitType.DEMO.name());
+        stmt.bindLong(i++, habit.isCompleted() ? 1 : 0);
+        stmt.bindLong(i++, habit.getPoints());
+        stmt.bindDouble(i++, habit.getTargetValue());
+        bindNullable(stmt, i++, habit.getTargetUnit());
+        bindNullable(stmt, i++, habit.getPagesPerDay());
+        bindNullable(stmt, i++, habit.getReminderTimes());
+        bindNullable(stmt, i++, habit.getDurationMinutes());
+        bindNullable(stmt, i++, habit.getDndMode());
+        bindNullable(stmt, i++, habit.getMusicId());
+        bindNullable(stmt, i++, habit.getJournalEnabled());
+        bindNullable(stmt, i++, habit.getGymDays());
+        bindNullable(stmt, i++, habit.getWaterGoalGlasses());
+        bindNullable(stmt, i++, habit.getOneClickComplete());
+        bindNullable(stmt, i++, habit.getEnglishMode());
+        bindNullable(stmt, i++, habit.getCodingMode());
+        bindNullable(stmt, i++, habit.getHabitIcon());
+        return i;
+    }
+
+    private static void bindNullable(SQLiteStatement stmt, int index, Object value) {
+        if (value == null) {
+            stmt.bindNull(index);
+        } else if (value instanceof String) {
+            stmt.bindString(index, (String) value);
+        } else if (value instanceof Boolean) {
+            stmt.bindLong(index, (Boolean) value ? 1 : 0);
+        } else if (value instanceof Number) {
+            stmt.bindLong(index, ((Number) value).longValue());
+        } else {
+            stmt.bindString(index, value.toString());
+        }
+    }
+
     /**
      * Obtiene el serverId de un hábito local
      */
@@ -410,10 +874,27 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
             serverId = cursor.getLong(0);
         }
         cursor.close();
-        db.close();
         return serverId;
     }
 
+    /**
+     * serverId de cada hábito del usuario actual que ya lo tiene, indexado por id local
+     */
+    public Map<Long, Long> getServerIdsByLocalId() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        ensureSyncColumns(db);
+        Cursor cursor = db.query(TABLE_HABITS, new String[]{COLUMN_HABIT_ID, COLUMN_HABIT_SERVER_ID},
+                COLUMN_HABIT_USER_ID + "=? AND " + COLUMN_HABIT_SERVER_ID + " IS NOT NULL",
+                new String[]{String.valueOf(getCurrentUserId())}, null, null, null);
+
+        Map<Long, Long> serverIds = new LinkedHashMap<>();
+        while (cursor.moveToNext()) {
+            serverIds.put(cursor.getLong(0), cursor.getLong(1));
+        }
+        cursor.close();
+        return serverIds;
+    }
+
     /**
      * Verifica si un hábito está sincronizado
      */
@@ -428,14 +909,72 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
             synced = cursor.getInt(0) == 1;
         }
         cursor.close();
-        db.close();
         return synced;
     }
 
+    /**
+     * Completa un hábito en una sola transacción: marca completed (el trigger update_streak
+     * suma la racha), inserta el score (user_stats_score_insert suma el total) y encola una
+     * única operación COMPLETE de la entidad COMPLETION, identificada por el id del score.
+     * El hábito queda como no sincronizado: el estado completado viaja en el siguiente lote de
+     * habits/sync y, hasta entonces, la descarga del servidor no lo sobrescribe (ver
+     * HabitUpserter). Los puntos se envían aparte, como Score (ver SyncManager#syncCompletions).
+     * @param completionData JSON del completado (HabitCompletion con el id local del hábito)
+     * @return id del score, o -1 si el hábito no existe o ya estaba completado
+     */
+    public long completeHabit(long habitId, int points, String completionData) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ensureSyncColumns(db);
+        ensurePendingOperationsTable(db);
+
+        long scoreId;
+        db.beginTransaction();
+        try {
+            String title = null;
+            Cursor cursor = db.query(TABLE_HABITS, new String[]{COLUMN_HABIT_TITLE},
+                    COLUMN_HABIT_ID + "=? AND " + COLUMN_HABIT_COMPLETED + "=0",
+                    new String[]{String.valueOf(habitId)}, null, null, null);
+            if (cursor.moveToFirst()) {
+                title = cursor.getString(0);
+            }
+            cursor.close();
+            if (title == null) {
+                return -1;
+            }
+
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_HABIT_COMPLETED, 1);
+            values.put(COLUMN_HABIT_SYNCED, 0);
+            values.put(COLUMN_HABIT_UPDATED_AT, System.currentTimeMillis() / 1000);
+            db.update(TABLE_HABITS, values, COLUMN_HABIT_ID + "=?", new String[]{String.valueOf(habitId)});
+
+            scoreId = insertScore(db, habitId, title, points, null);
+
+            PendingOperation op = new PendingOperation();
+            op.operationType = "COMPLETE";
+            op.entityType = "COMPLETION";
+            op.entityId = scoreId;
+            op.entityData = completionData;
+            op.createdAt = System.currentTimeMillis() / 1000;
+            op.priority = priorityFor(op.operationType, op.entityType);
+            replacePendingOperations(db, new ArrayList<>(), Collections.singletonList(op));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        habitsChanged();
+        return scoreId;
+    }
+
     // ========== MÉTODOS PARA OPERACIONES PENDIENTES ==========
 
     /**
-     * Guarda una operación pendiente
+     * Guarda una operación pendiente compactándola con las que ya hay para la misma entidad
+     * (ver PendingOperationCompactor): varias ediciones seguidas de un hábito quedan en un solo
+     * UPDATE y un CREATE seguido de un DELETE sin serverId no deja nada que enviar.
+     * Las filas fusionadas se reemplazan por una nueva, así la confirmación de una petición que
+     * ya estaba en curso no borra los datos más recientes.
+     * @return id de la última operación pendiente de la entidad, o -1 si se anularon
      */
     public long savePendingOperation(String operationType, String entityType, long entityId, String entityData) {
         SQLiteDatabase db = this.getWritableDatabase();
@@ -443,19 +982,116 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
         // Asegurar que la tabla exista
         ensurePendingOperationsTable(db);
         
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_PENDING_OPERATION_TYPE, operationType);
-        values.put(COLUMN_PENDING_ENTITY_TYPE, entityType);
-        values.put(COLUMN_PENDING_ENTITY_ID, entityId);
-        values.put(COLUMN_PENDING_ENTITY_DATA, entityData);
-        values.put(COLUMN_PENDING_CREATED_AT, System.currentTimeMillis() / 1000);
-        values.put(COLUMN_PENDING_PRIORITY, 2); // Prioridad media por defecto
-        
-        long id = db.insert(TABLE_PENDING_OPERATIONS, null, values);
-        db.close();
+        PendingOperation op = new PendingOperation();
+        op.operationType = operationType;
+        op.entityType = entityType;
+        op.entityId = entityId;
+        op.entityData = entityData;
+        op.createdAt = System.currentTimeMillis() / 1000;
+        op.priority = priorityFor(operationType, entityType);
+
+        long id;
+        db.beginTransaction();
+        try {
+            List<PendingOperation> ops = new ArrayList<>();
+            Cursor cursor = db.query(TABLE_PENDING_OPERATIONS, null,
+                    COLUMN_PENDING_ENTITY_TYPE + "=? AND " + COLUMN_PENDING_ENTITY_ID + "=?",
+                    new String[]{entityType, String.valueOf(entityId)}, null, null, COLUMN_PENDING_ID + " ASC");
+            while (cursor.moveToNext()) {
+                ops.add(readPendingOperation(cursor));
+            }
+            cursor.close();
+
+            ops.add(op);
+            id = replacePendingOperations(db, ops, PendingOperationCompactor.compact(ops));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
         return id;
     }
 
+    /**
+     * Compacta toda la cola de operaciones pendientes por entidad, incluidas las que se
+     * encolaron antes de que savePendingOperation compactara.
+     * @return Número de operaciones eliminadas
+     */
+    public int compactPendingOperations() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ensurePendingOperationsTable(db);
+
+        int removed = 0;
+        db.beginTransaction();
+        try {
+            Map<String, List<PendingOperation>> opsByEntity = new LinkedHashMap<>();
+            Cursor cursor = db.query(TABLE_PENDING_OPERATIONS, null, null, null, null, null,
+                    COLUMN_PENDING_ID + " ASC");
+            while (cursor.moveToNext()) {
+                PendingOperation op = readPendingOperation(cursor);
+                String key = op.entityType + ":" + op.entityId;
+                List<PendingOperation> ops = opsByEntity.get(key);
+                if (ops == null) {
+                    ops = new ArrayList<>();
+                    opsByEntity.put(key, ops);
+                }
+                ops.add(op);
+            }
+            cursor.close();
+
+            for (List<PendingOperation> ops : opsByEntity.values()) {
+                if (ops.size() < 2) {
+                    continue;
+                }
+                List<PendingOperation> compacted = PendingOperationCompactor.compact(ops);
+                if (compacted.size() < ops.size()) {
+                    replacePendingOperations(db, ops, compacted);
+                    removed += ops.size() - compacted.size();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (removed > 0) {
+            Log.d(TAG, "Cola de operaciones pendientes compactada: " + removed + " operaciones eliminadas");
+        }
+        return removed;
+    }
+
+    /**
+     * Sustituye las operaciones de una entidad por su versión compactada: borra las filas que
+     * ya no están e inserta las fusionadas (id 0).
+     * @return id de la última operación resultante, o -1 si no queda ninguna
+     */
+    private long replacePendingOperations(SQLiteDatabase db, List<PendingOperation> before, List<PendingOperation> after) {
+        Set<Long> kept = new HashSet<>();
+        for (PendingOperation op : after) {
+            kept.add(op.id);
+        }
+        for (PendingOperation op : before) {
+            if (op.id > 0 && !kept.contains(op.id)) {
+                db.delete(TABLE_PENDING_OPERATIONS, COLUMN_PENDING_ID + "=?", new String[]{String.valueOf(op.id)});
+            }
+        }
+
+        long lastId = -1;
+        for (PendingOperation op : after) {
+            if (op.id > 0) {
+                lastId = op.id;
+                continue;
+            }
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_PENDING_OPERATION_TYPE, op.operationType);
+            values.put(COLUMN_PENDING_ENTITY_TYPE, op.entityType);
+            values.put(COLUMN_PENDING_ENTITY_ID, op.entityId);
+            values.put(COLUMN_PENDING_ENTITY_DATA, op.entityData);
+            values.put(COLUMN_PENDING_CREATED_AT, op.createdAt);
+            values.put(COLUMN_PENDING_PRIORITY, op.priority);
+            lastId = db.insert(TABLE_PENDING_OPERATIONS, null, values);
+        }
+        return lastId;
+    }
+
     /**
      * Obtiene todas las operaciones pendientes
      */
@@ -466,29 +1102,34 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
         // Asegurar que la tabla exista
         ensurePendingOperationsTable(db);
         
-        Cursor cursor = db.query(TABLE_PENDING_OPERATIONS, null, null, null, null, null, 
-                COLUMN_PENDING_PRIORITY + " ASC, " + COLUMN_PENDING_CREATED_AT + " ASC");
+        Cursor cursor = db.query(TABLE_PENDING_OPERATIONS, null, null, null, null, null,
+                COLUMN_PENDING_PRIORITY + " ASC, " + COLUMN_PENDING_CREATED_AT + " ASC, " + COLUMN_PENDING_ID + " ASC");
 
         if (cursor.moveToFirst()) {
             do {
-                PendingOperation op = new PendingOperation();
-                op.id = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_PENDING_ID));
-                op.operationType = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PENDING_OPERATION_TYPE));
-                op.entityType = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PENDING_ENTITY_TYPE));
-                op.entityId = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_PENDING_ENTITY_ID));
-                op.entityData = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PENDING_ENTITY_DATA));
-                op.createdAt = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_PENDING_CREATED_AT));
-                op.retryCount = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_PENDING_RETRY_COUNT));
-                op.lastError = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PENDING_LAST_ERROR));
-                op.priority = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_PENDING_PRIORITY));
+                PendingOperation op = readPendingOperation(cursor);
                 operations.add(op);
             } while (cursor.moveToNext());
         }
         cursor.close();
-        db.close();
         return operations;
     }
 
+    private PendingOperation readPendingOperation(Cursor cursor) {
+        PendingOperation op = new PendingOperation();
+        op.id = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_PENDING_ID));
+        op.operationType = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PENDING_OPERATION_TYPE));
+        op.entityType = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PENDING_ENTITY_TYPE));
+        op.entityId = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_PENDING_ENTITY_ID));
+        op.entityData = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PENDING_ENTITY_DATA));
+        op.createdAt = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_PENDING_CREATED_AT));
+        op.retryCount = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_PENDING_RETRY_COUNT));
+        op.lastError = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PENDING_LAST_ERROR));
+        op.priority = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_PENDING_PRIORITY));
+        op.nextAttemptAt = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_PENDING_NEXT_ATTEMPT_AT));
+        return op;
+    }
+
     /**
      * Elimina una operación pendiente
      */
@@ -496,130 +1137,107 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
         SQLiteDatabase db = this.getWritableDatabase();
         ensurePendingOperationsTable(db);
         db.delete(TABLE_PENDING_OPERATIONS, COLUMN_PENDING_ID + "=?", new String[]{String.valueOf(id)});
-        db.close();
     }
 
     /**
-     * Incrementa el contador de reintentos
+     * Registra un intento fallido: suma un reintento, guarda el error y no vuelve a intentarse
+     * hasta nextAttemptAt (segundos).
      */
-    public void incrementRetryCount(long id, String error) {
+    public void scheduleRetry(long id, String error, long nextAttemptAt) {
         SQLiteDatabase db = this.getWritableDatabase();
         ensurePendingOperationsTable(db);
-        ContentValues values = new ContentValues();
-        Cursor cursor = db.query(TABLE_PENDING_OPERATIONS, new String[]{COLUMN_PENDING_RETRY_COUNT}, 
-                COLUMN_PENDING_ID + "=?", new String[]{String.valueOf(id)}, null, null, null);
-        
-        int retryCount = 0;
-        if (cursor.moveToFirst()) {
-            retryCount = cursor.getInt(0);
+        db.execSQL("UPDATE " + TABLE_PENDING_OPERATIONS + " SET " +
+                COLUMN_PENDING_RETRY_COUNT + " = " + COLUMN_PENDING_RETRY_COUNT + " + 1, " +
+                COLUMN_PENDING_LAST_ERROR + " = ?, " +
+                COLUMN_PENDING_NEXT_ATTEMPT_AT + " = ? WHERE " + COLUMN_PENDING_ID + " = ?",
+                new Object[]{error, nextAttemptAt, id});
+    }
+
+    /**
+     * Mueve una operación que agotó sus reintentos a dead_letter_operations en vez de perderla.
+     */
+    public void moveToDeadLetter(long id, String error) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ensurePendingOperationsTable(db);
+        String columns = COLUMN_PENDING_ID + ", " + COLUMN_PENDING_OPERATION_TYPE + ", " +
+                COLUMN_PENDING_ENTITY_TYPE + ", " + COLUMN_PENDING_ENTITY_ID + ", " +
+                COLUMN_PENDING_ENTITY_DATA + ", " + COLUMN_PENDING_CREATED_AT + ", " +
+                COLUMN_PENDING_RETRY_COUNT + ", " + COLUMN_PENDING_LAST_ERROR + ", " + COLUMN_PENDING_PRIORITY;
+        db.beginTransaction();
+        try {
+            db.execSQL("INSERT OR REPLACE INTO " + TABLE_DEAD_LETTER_OPERATIONS + " (" + columns + ", " +
+                    COLUMN_DEAD_FAILED_AT + ") SELECT " + COLUMN_PENDING_ID + ", " + COLUMN_PENDING_OPERATION_TYPE + ", " +
+                    COLUMN_PENDING_ENTITY_TYPE + ", " + COLUMN_PENDING_ENTITY_ID + ", " +
+                    COLUMN_PENDING_ENTITY_DATA + ", " + COLUMN_PENDING_CREATED_AT + ", " +
+                    COLUMN_PENDING_RETRY_COUNT + " + 1, ?, " + COLUMN_PENDING_PRIORITY + ", ? FROM " +
+                    TABLE_PENDING_OPERATIONS + " WHERE " + COLUMN_PENDING_ID + " = ?",
+                    new Object[]{error, System.currentTimeMillis() / 1000, id});
+            db.delete(TABLE_PENDING_OPERATIONS, COLUMN_PENDING_ID + "=?", new String[]{String.valueOf(id)});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
-        cursor.close();
-        
-        values.put(COLUMN_PENDING_RETRY_COUNT, retryCount + 1);
-        values.put(COLUMN_PENDING_LAST_ERROR, error);
-        db.update(TABLE_PENDING_OPERATIONS, values, COLUMN_PENDING_ID + "=?", new String[]{String.valueOf(id)});
-        db.close();
-    }
-
-    // ========== MÉTODOS AUXILIARES ==========
-
-    private Habit cursorToHabit(Cursor cursor) {
-        Habit habit = new Habit(
-                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_TITLE)),
-                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_GOAL)),
-                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_CATEGORY)),
-                Habit.HabitType.valueOf(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_TYPE)))
-        );
-        habit.setId(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_HABIT_ID)));
-        habit.setCompleted(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_HABIT_COMPLETED)) == 1);
-        habit.setPoints(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_HABIT_POINTS)));
-        
-        // Cargar campos adicionales
-        loadHabitExtraFields(cursor, habit);
-        
-        return habit;
     }
 
+    /**
+     * Número de operaciones que SyncManager puede enviar ya: de hábitos, completados y CREATE
+     * SCORE antiguas, sin contar las que esperan su reintento (next_attempt_at en el futuro).
+     */
+    public long getDuePendingOperationCount() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        ensurePendingOperationsTable(db);
+        return DatabaseUtils.queryNumEntries(db, TABLE_PENDING_OPERATIONS,
+                COLUMN_PENDING_NEXT_ATTEMPT_AT + " <= ? AND (" + COLUMN_PENDING_ENTITY_TYPE + " IN ('HABIT', 'COMPLETION') OR ("
+                        + COLUMN_PENDING_ENTITY_TYPE + " = 'SCORE' AND " + COLUMN_PENDING_OPERATION_TYPE + " = 'CREATE'))",
+                new String[]{String.valueOf(System.currentTimeMillis() / 1000)});
+    }
+
+    /**
+     * Número de operaciones descartadas pendientes de revisión.
+     */
+    public long getDeadLetterCount() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        ensurePendingOperationsTable(db);
+        return DatabaseUtils.queryNumEntries(db, TABLE_DEAD_LETTER_OPERATIONS);
+    }
 
-    private void loadHabitExtraFields(Cursor cursor, Habit habit) {
+    /**
+     * Devuelve todas las operaciones descartadas a la cola con los reintentos a cero. Conservan
+     * su id original, así la compactación las sigue ordenando antes que lo encolado después.
+     * @return Número de operaciones reencoladas
+     */
+    public int requeueDeadLetterOperations() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ensurePendingOperationsTable(db);
+        String columns = COLUMN_PENDING_ID + ", " + COLUMN_PENDING_OPERATION_TYPE + ", " +
+                COLUMN_PENDING_ENTITY_TYPE + ", " + COLUMN_PENDING_ENTITY_ID + ", " +
+                COLUMN_PENDING_ENTITY_DATA + ", " + COLUMN_PENDING_CREATED_AT + ", " +
+                COLUMN_PENDING_LAST_ERROR + ", " + COLUMN_PENDING_PRIORITY;
+
+        int count;
+        db.beginTransaction();
         try {
-            // Cargar points
-            int pointsIndex = cursor.getColumnIndex(COLUMN_HABIT_POINTS);
-            if (pointsIndex >= 0 && !cursor.isNull(pointsIndex)) {
-                habit.setPoints(cursor.getInt(pointsIndex));
-            }
-            
-            int targetValueIndex = cursor.getColumnIndex(COLUMN_HABIT_TARGET_VALUE);
-            int targetUnitIndex = cursor.getColumnIndex(COLUMN_HABIT_TARGET_UNIT);
-            if (targetValueIndex >= 0 && !cursor.isNull(targetValueIndex)) {
-                habit.setTargetValue(cursor.getDouble(targetValueIndex));
-            }
-            if (targetUnitIndex >= 0 && !cursor.isNull(targetUnitIndex)) {
-                habit.setTargetUnit(cursor.getString(targetUnitIndex));
-            }
-            
-            int pagesPerDayIndex = cursor.getColumnIndex(COLUMN_HABIT_PAGES_PER_DAY);
-            if (pagesPerDayIndex >= 0 && !cursor.isNull(pagesPerDayIndex)) {
-                habit.setPagesPerDay(cursor.getInt(pagesPerDayIndex));
-            }
-            
-            int reminderTimesIndex = cursor.getColumnIndex(COLUMN_HABIT_REMINDER_TIMES);
-            if (reminderTimesIndex >= 0 && !cursor.isNull(reminderTimesIndex)) {
-                habit.setReminderTimes(cursor.getString(reminderTimesIndex));
-            }
-            
-            int durationMinutesIndex = cursor.getColumnIndex(COLUMN_HABIT_DURATION_MINUTES);
-            if (durationMinutesIndex >= 0 && !cursor.isNull(durationMinutesIndex)) {
-                habit.setDurationMinutes(cursor.getInt(durationMinutesIndex));
-            }
-            
-            int dndModeIndex = cursor.getColumnIndex(COLUMN_HABIT_DND_MODE);
-            if (dndModeIndex >= 0 && !cursor.isNull(dndModeIndex)) {
-                habit.setDndMode(cursor.getInt(dndModeIndex) == 1);
-            }
-            
-            int musicIdIndex = cursor.getColumnIndex(COLUMN_HABIT_MUSIC_ID);
-            if (musicIdIndex >= 0 && !cursor.isNull(musicIdIndex)) {
-                habit.setMusicId(cursor.getInt(musicIdIndex));
-            }
-            
-            int journalEnabledIndex = cursor.getColumnIndex(COLUMN_HABIT_JOURNAL_ENABLED);
-            if (journalEnabledIndex >= 0 && !cursor.isNull(journalEnabledIndex)) {
-                habit.setJournalEnabled(cursor.getInt(journalEnabledIndex) == 1);
-            }
-            
-            int gymDaysIndex = cursor.getColumnIndex(COLUMN_HABIT_GYM_DAYS);
-            if (gymDaysIndex >= 0 && !cursor.isNull(gymDaysIndex)) {
-                habit.setGymDays(cursor.getString(gymDaysIndex));
-            }
-            
-            int waterGoalGlassesIndex = cursor.getColumnIndex(COLUMN_HABIT_WATER_GOAL_GLASSES);
-            if (waterGoalGlassesIndex >= 0 && !cursor.isNull(waterGoalGlassesIndex)) {
-                habit.setWaterGoalGlasses(cursor.getInt(waterGoalGlassesIndex));
-            }
-            
-            int oneClickCompleteIndex = cursor.getColumnIndex(COLUMN_HABIT_ONE_CLICK_COMPLETE);
-            if (oneClickCompleteIndex >= 0 && !cursor.isNull(oneClickCompleteIndex)) {
-                habit.setOneClickComplete(cursor.getInt(oneClickCompleteIndex) == 1);
-            }
-            
-            int englishModeIndex = cursor.getColumnIndex(COLUMN_HABIT_ENGLISH_MODE);
-            if (englishModeIndex >= 0 && !cursor.isNull(englishModeIndex)) {
-                habit.setEnglishMode(cursor.getInt(englishModeIndex) == 1);
-            }
-            
-            int codingModeIndex = cursor.getColumnIndex(COLUMN_HABIT_CODING_MODE);
-            if (codingModeIndex >= 0 && !cursor.isNull(codingModeIndex)) {
-                habit.setCodingMode(cursor.getInt(codingModeIndex) == 1);
-            }
-            
-            int habitIconIndex = cursor.getColumnIndex(COLUMN_HABIT_ICON);
-            if (habitIconIndex >= 0 && !cursor.isNull(habitIconIndex)) {
-                habit.setHabitIcon(cursor.getString(habitIconIndex));
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error al cargar campos adicionales", e);
+            db.execSQL("INSERT OR IGNORE INTO " + TABLE_PENDING_OPERATIONS + " (" + columns + ") SELECT " +
+                    columns + " FROM " + TABLE_DEAD_LETTER_OPERATIONS);
+            count = db.delete(TABLE_DEAD_LETTER_OPERATIONS, null, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        compactPendingOperations();
+        Log.d(TAG, "Reencoladas " + count + " operaciones descartadas");
+        return count;
+    }
+
+    /**
+     * Prioridad con la que se encola una operación: los CREATE y DELETE de hábitos primero
+     * (las demás operaciones del hábito dependen de su serverId), los scores al final.
+     */
+    private static int priorityFor(String operationType, String entityType) {
+        if (!"HABIT".equals(entityType)) {
+            return PRIORITY_LOW;
         }
+        return "UPDATE".equals(operationType) ? PRIORITY_NORMAL : PRIORITY_HIGH;
     }
 
     /**
@@ -627,14 +1245,15 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
      */
     public static class PendingOperation {
         public long id;
-        public String operationType; // CREATE, UPDATE, DELETE
-        public String entityType; // HABIT, SCORE
+        public String operationType; // CREATE, UPDATE, DELETE, COMPLETE
+        public String entityType; // HABIT, SCORE, COMPLETION
         public long entityId;
-        public String entityData; // JSON
+        public String entityData; // JSON (en DELETE de hábito, el serverId)
         public long createdAt;
         public int retryCount;
         public String lastError;
         public int priority;
+        public long nextAttemptAt; // segundos; 0 = lista para enviarse
     }
 }
 
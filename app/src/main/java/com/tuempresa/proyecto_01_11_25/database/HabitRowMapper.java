@@ -0,0 +1,150 @@
+package com.tuempresa.proyecto_01_11_25.database;
+
+import android.database.Cursor;
+
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Convierte filas de la tabla habits en objetos Habit.
+ * Resuelve los índices de columna una sola vez por cursor, de modo que el mapeo de cada
+ * fila no hace búsquedas por nombre. Las columnas que no existan en el cursor se ignoran.
+ */
+final class HabitRowMapper {
+
+    // Búsqueda directa del tipo (evita valueOf y su excepción con valores desconocidos)
+    private static final Map<String, Habit.HabitType> TYPES = new HashMap<>();
+
+    static {
+        for (Habit.HabitType type : Habit.HabitType.values()) {
+            TYPES.put(type.name(), type);
+        }
+    }
+
+    private final int idIndex;
+    private final int titleIndex;
+    private final int goalIndex;
+    private final int categoryIndex;
+    private final int typeIndex;
+    private final int completedIndex;
+    private final int pointsIndex;
+    private final int targetValueIndex;
+    private final int targetUnitIndex;
+    private final int pagesPerDayIndex;
+    private final int reminderTimesIndex;
+    private final int durationMinutesIndex;
+    private final int dndModeIndex;
+    private final int musicIdIndex;
+    private final int journalEnabledIndex;
+    private final int gymDaysIndex;
+    private final int waterGoalGlassesIndex;
+    private final int oneClickCompleteIndex;
+    private final int englishModeIndex;
+    private final int codingModeIndex;
+    private final int habitIconIndex;
+    private final int streakIndex;
+    private final int lastCompletedIndex;
+
+    HabitRowMapper(Cursor cursor) {
+        idIndex = cursor.getColumnIndexOrThrow(HabitDatabaseHelper.COLUMN_HABIT_ID);
+        titleIndex = cursor.getColumnIndexOrThrow(HabitDatabaseHelper.COLUMN_HABIT_TITLE);
+        goalIndex = cursor.getColumnIndexOrThrow(HabitDatabaseHelper.COLUMN_HABIT_GOAL);
+        categoryIndex = cursor.getColumnIndexOrThrow(HabitDatabaseHelper.COLUMN_HABIT_CATEGORY);
+        typeIndex = cursor.getColumnIndexOrThrow(HabitDatabaseHelper.COLUMN_HABIT_TYPE);
+        completedIndex = cursor.getColumnIndexOrThrow(HabitDatabaseHelper.COLUMN_HABIT_COMPLETED);
+        pointsIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_POINTS);
+        targetValueIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_TARGET_VALUE);
+        targetUnitIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_TARGET_UNIT);
+        pagesPerDayIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_PAGES_PER_DAY);
+        reminderTimesIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_REMINDER_TIMES);
+        durationMinutesIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_DURATION_MINUTES);
+        dndModeIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_DND_MODE);
+        musicIdIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_MUSIC_ID);
+        journalEnabledIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_JOURNAL_ENABLED);
+        gymDaysIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_GYM_DAYS);
+        waterGoalGlassesIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_WATER_GOAL_GLASSES);
+        oneClickCompleteIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_ONE_CLICK_COMPLETE);
+        englishModeIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_ENGLISH_MODE);
+        codingModeIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_CODING_MODE);
+        habitIconIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_ICON);
+        streakIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_STREAK_COUNT);
+        lastCompletedIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_LAST_COMPLETED_DATE);
+    }
+
+    /**
+     * Mapea la fila actual del cursor (el mismo con el que se creó el mapper).
+     */
+    Habit map(Cursor cursor) {
+        Habit habit = new Habit(
+                cursor.getString(titleIndex),
+                cursor.getString(goalIndex),
+                cursor.getString(categoryIndex),
+                parseType(cursor.getString(typeIndex)));
+        habit.setId(cursor.getLong(idIndex));
+        habit.setCompleted(cursor.getInt(completedIndex) == 1);
+
+        if (has(cursor, pointsIndex)) {
+            habit.setPoints(cursor.getInt(pointsIndex));
+        }
+        if (has(cursor, targetValueIndex)) {
+            habit.setTargetValue(cursor.getDouble(targetValueIndex));
+        }
+        if (has(cursor, targetUnitIndex)) {
+            habit.setTargetUnit(cursor.getString(targetUnitIndex));
+        }
+        if (has(cursor, pagesPerDayIndex)) {
+            habit.setPagesPerDay(cursor.getInt(pagesPerDayIndex));
+        }
+        if (has(cursor, reminderTimesIndex)) {
+            habit.setReminderTimes(cursor.getString(reminderTimesIndex));
+        }
+        if (has(cursor, durationMinutesIndex)) {
+            habit.setDurationMinutes(cursor.getInt(durationMinutesIndex));
+        }
+        if (has(cursor, dndModeIndex)) {
+            habit.setDndMode(cursor.getInt(dndModeIndex) == 1);
+        }
+        if (has(cursor, musicIdIndex)) {
+            habit.setMusicId(cursor.getInt(musicIdIndex));
+        }
+        if (has(cursor, journalEnabledIndex)) {
+            habit.setJournalEnabled(cursor.getInt(journalEnabledIndex) == 1);
+        }
+        if (has(cursor, gymDaysIndex)) {
+            habit.setGymDays(cursor.getString(gymDaysIndex));
+        }
+        if (has(cursor, waterGoalGlassesIndex)) {
+            habit.setWaterGoalGlasses(cursor.getInt(waterGoalGlassesIndex));
+        }
+        if (has(cursor, oneClickCompleteIndex)) {
+            habit.setOneClickComplete(cursor.getInt(oneClickCompleteIndex) == 1);
+        }
+        if (has(cursor, englishModeIndex)) {
+            habit.setEnglishMode(cursor.getInt(englishModeIndex) == 1);
+        }
+        if (has(cursor, codingModeIndex)) {
+            habit.setCodingMode(cursor.getInt(codingModeIndex) == 1);
+        }
+        if (has(cursor, habitIconIndex)) {
+            habit.setHabitIcon(cursor.getString(habitIconIndex));
+        }
+        if (has(cursor, streakIndex)) {
+            habit.setStreakCount(cursor.getInt(streakIndex));
+        }
+        if (has(cursor, lastCompletedIndex)) {
+            habit.setLastCompletedDate(cursor.getLong(lastCompletedIndex));
+        }
+        return habit;
+    }
+
+    static Habit.HabitType parseType(String value) {
+        Habit.HabitType type = value != null ? TYPES.get(value) : null;
+        return type != null ? type : Habit.HabitType.DEMO;
+    }
+
+    private static boolean has(Cursor cursor, int index) {
+        return index >= 0 && !cursor.isNull(index);
+    }
+}
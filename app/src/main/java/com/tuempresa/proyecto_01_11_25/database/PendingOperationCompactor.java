@@ -0,0 +1,74 @@
+package com.tuempresa.proyecto_01_11_25.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compacta las operaciones pendientes de una misma entidad (entity_type, entity_id) para que
+ * varias ediciones seguidas viajen como una sola petición:
+ * CREATE+UPDATE = CREATE con los datos nuevos, UPDATE+UPDATE = el último UPDATE,
+ * UPDATE+DELETE = DELETE y CREATE+DELETE = DELETE. Un DELETE lleva el serverId siempre que el
+ * servidor tiene el hábito, aunque el CREATE siga en la cola (ya enviado o en curso); solo un
+ * DELETE sin serverId anula el CREATE, porque el hábito nunca llegó al servidor.
+ * Tras un DELETE no se fusiona nada: el id local puede haberse reutilizado para otra entidad.
+ * Los completados (COMPLETION) se identifican por su score, así que cada uno es una entidad
+ * con una sola operación y nunca se fusionan entre sí.
+ */
+final class PendingOperationCompactor {
+    static final String CREATE = "CREATE";
+    static final String UPDATE = "UPDATE";
+    static final String DELETE = "DELETE";
+
+    private PendingOperationCompactor() {
+    }
+
+    /**
+     * @param ops Operaciones de una sola entidad, en orden de encolado
+     * @return Operaciones equivalentes. Las que conservan su id (> 0) no cambiaron; las de id 0
+     *         son fusiones nuevas que hay que insertar
+     */
+    static List<HabitDatabaseHelperSync.PendingOperation> compact(List<HabitDatabaseHelperSync.PendingOperation> ops) {
+        List<HabitDatabaseHelperSync.PendingOperation> result = new ArrayList<>();
+        for (HabitDatabaseHelperSync.PendingOperation op : ops) {
+            int lastIndex = result.size() - 1;
+            HabitDatabaseHelperSync.PendingOperation last = lastIndex >= 0 ? result.get(lastIndex) : null;
+            if (last == null || DELETE.equals(last.operationType)) {
+                result.add(op);
+            } else if (DELETE.equals(op.operationType)) {
+                if (CREATE.equals(last.operationType) && !hasServerId(op)) {
+                    // Nunca llegó al servidor: no hay nada que crear ni que borrar
+                    result.remove(lastIndex);
+                } else {
+                    result.set(lastIndex, op);
+                }
+            } else {
+                // Última escritura gana, conservando si hay que crear o actualizar
+                result.set(lastIndex, merged(last, op));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Los DELETE de hábitos guardan el serverId como entity_data (la fila local ya no existe).
+     */
+    private static boolean hasServerId(HabitDatabaseHelperSync.PendingOperation delete) {
+        try {
+            return delete.entityData != null && Long.parseLong(delete.entityData) > 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static HabitDatabaseHelperSync.PendingOperation merged(HabitDatabaseHelperSync.PendingOperation pending,
+                                                                 HabitDatabaseHelperSync.PendingOperation next) {
+        HabitDatabaseHelperSync.PendingOperation op = new HabitDatabaseHelperSync.PendingOperation();
+        op.operationType = pending.operationType;
+        op.entityType = next.entityType;
+        op.entityId = next.entityId;
+        op.entityData = next.entityData;
+        op.createdAt = next.createdAt;
+        op.priority = next.priority;
+        return op;
+    }
+}
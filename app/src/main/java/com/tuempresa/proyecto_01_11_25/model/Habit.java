@@ -63,6 +63,33 @@ public class Habit {
         this.completed = false;
     }
 
+    // Copia campo a campo (la caché del repositorio entrega copias para que nadie modifique la suya)
+    public Habit(Habit other) {
+        this.id = other.id;
+        this.title = other.title;
+        this.goal = other.goal;
+        this.category = other.category;
+        this.type = other.type;
+        this.completed = other.completed;
+        this.points = other.points;
+        this.targetValue = other.targetValue;
+        this.targetUnit = other.targetUnit;
+        this.pagesPerDay = other.pagesPerDay;
+        this.reminderTimes = other.reminderTimes;
+        this.durationMinutes = other.durationMinutes;
+        this.dndMode = other.dndMode;
+        this.musicId = other.musicId;
+        this.journalEnabled = other.journalEnabled;
+        this.gymDays = other.gymDays;
+        this.waterGoalGlasses = other.waterGoalGlasses;
+        this.oneClickComplete = other.oneClickComplete;
+        this.englishMode = other.englishMode;
+        this.codingMode = other.codingMode;
+        this.habitIcon = other.habitIcon;
+        this.streakCount = other.streakCount;
+        this.lastCompletedDate = other.lastCompletedDate;
+    }
+
     public long getId() {
         return id;
     }
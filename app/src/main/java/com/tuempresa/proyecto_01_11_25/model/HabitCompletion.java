@@ -0,0 +1,71 @@
+package com.tuempresa.proyecto_01_11_25.model;
+
+/**
+ * Completado de un hábito pendiente de enviar (entity_data de la operación COMPLETE).
+ * habitId es el id local. El estado completado viaja con el hábito por habits/sync y los
+ * puntos se envían como Score por scores, con el serverId del hábito.
+ */
+public class HabitCompletion {
+    // Origen del completado
+    public static final String SOURCE_MANUAL = "manual";
+    public static final String SOURCE_SENSOR = "sensor";
+    public static final String SOURCE_CAMERA = "camera";
+
+    private long habitId;
+    private String habitTitle;
+    private int points;
+    private String source;
+    private long completedAt; // segundos
+
+    // Constructor sin parámetros para Gson
+    public HabitCompletion() {
+    }
+
+    public HabitCompletion(long habitId, String habitTitle, int points, String source, long completedAt) {
+        this.habitId = habitId;
+        this.habitTitle = habitTitle;
+        this.points = points;
+        this.source = source;
+        this.completedAt = completedAt;
+    }
+
+    public long getHabitId() {
+        return habitId;
+    }
+
+    public void setHabitId(long habitId) {
+        this.habitId = habitId;
+    }
+
+    public String getHabitTitle() {
+        return habitTitle;
+    }
+
+    public void setHabitTitle(String habitTitle) {
+        this.habitTitle = habitTitle;
+    }
+
+    public int getPoints() {
+        return points;
+    }
+
+    public void setPoints(int points) {
+        this.points = points;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    public long getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(long completedAt) {
+        this.completedAt = completedAt;
+    }
+}
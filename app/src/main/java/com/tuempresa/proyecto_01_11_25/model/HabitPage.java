@@ -0,0 +1,52 @@
+package com.tuempresa.proyecto_01_11_25.model;
+
+import java.util.List;
+
+/**
+ * Página de hábitos obtenida con paginación por clave (created_at DESC, id DESC).
+ * La clave de la página siguiente es la posición del último elemento devuelto.
+ */
+public class HabitPage {
+    private final List<Habit> items;
+    private final Key nextKey;
+    private final boolean hasMore;
+
+    public HabitPage(List<Habit> items, Key nextKey, boolean hasMore) {
+        this.items = items;
+        this.nextKey = nextKey;
+        this.hasMore = hasMore;
+    }
+
+    public List<Habit> getItems() {
+        return items;
+    }
+
+    public Key getNextKey() {
+        return nextKey;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * Posición en el orden (created_at, id) a partir de la cual continuar.
+     */
+    public static class Key {
+        private final long createdAt;
+        private final long id;
+
+        public Key(long createdAt, long id) {
+            this.createdAt = createdAt;
+            this.id = id;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        public long getId() {
+            return id;
+        }
+    }
+}
@@ -11,6 +11,10 @@ public class HabitsResponse {
     private String message;
     private List<Habit> habits;
     private int count;
+    // Sincronización delta (GET habits?since=): serverIds borrados desde la marca recibida
+    private List<Long> deletedIds;
+    // Marca de agua del servidor para la siguiente petición; null si el servidor ignoró "since"
+    private Long watermark;
 
     // Constructor sin parámetros para Gson
     public HabitsResponse() {
@@ -55,5 +59,20 @@ public class HabitsResponse {
     public void setCount(int count) {
         this.count = count;
     }
-}
 
+    public List<Long> getDeletedIds() {
+        return deletedIds;
+    }
+
+    public void setDeletedIds(List<Long> deletedIds) {
+        this.deletedIds = deletedIds;
+    }
+
+    public Long getWatermark() {
+        return watermark;
+    }
+
+    public void setWatermark(Long watermark) {
+        this.watermark = watermark;
+    }
+}
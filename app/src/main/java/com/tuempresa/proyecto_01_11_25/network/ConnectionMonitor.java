@@ -5,16 +5,15 @@ import android.net.ConnectivityManager;
 import android.net.Network;
 import android.net.NetworkCapabilities;
 import android.net.NetworkRequest;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.tuempresa.proyecto_01_11_25.api.HabitApiClient;
-import com.tuempresa.proyecto_01_11_25.api.HabitApiService;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import retrofit2.Call;
@@ -23,20 +22,34 @@ import retrofit2.Response;
 /**
  * Monitor de conexión a la API.
  * Detecta cambios en la conectividad a la API y notifica a los listeners.
- * Verifica periódicamente si la API está disponible haciendo peticiones reales.
+ *
+ * El estado se obtiene de tres fuentes:
+ * - NetworkCallback: sin red validada no se sondea la API; al recuperarla se sondea al momento.
+ * - Sonda HEAD sin cuerpo, con intervalo adaptativo: empieza en MIN_PROBE_INTERVAL_MS y se
+ *   duplica mientras el estado no cambie, hasta MAX_PROBE_INTERVAL_MS.
+ * - Salud pasiva: el resultado de las peticiones reales (HabitApiClient) confirma el estado
+ *   y aplaza la siguiente sonda; un fallo provoca una sonda de confirmación.
  */
 public class ConnectionMonitor {
     private static final String TAG = "ConnectionMonitor";
     private static ConnectionMonitor instance;
-    
+
+    private static final long MIN_PROBE_INTERVAL_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_PROBE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(15);
+    private static final long PROBE_TIMEOUT_SECONDS = 5;
+
     private final Context context;
     private final ConnectivityManager connectivityManager;
-    private final List<ConnectionListener> listeners;
-    private boolean isConnected = false;
+    private final CopyOnWriteArrayList<ConnectionListener> listeners;
+    private volatile boolean isConnected = false;
+    private volatile boolean networkAvailable = false;
     private ConnectivityManager.NetworkCallback networkCallback;
-    private final ExecutorService executorService;
     private final ScheduledExecutorService scheduledExecutor;
-    private static final long CHECK_INTERVAL_SECONDS = 10; // Verificar cada 10 segundos
+
+    // Solo se modifican con el monitor tomado
+    private ScheduledFuture<?> nextProbe;
+    private long probeIntervalMs = MIN_PROBE_INTERVAL_MS;
+    private long lastProbeAt;
 
     public interface ConnectionListener {
         void onConnectionChanged(boolean isConnected);
@@ -45,13 +58,24 @@ public class ConnectionMonitor {
     private ConnectionMonitor(Context context) {
         this.context = context.getApplicationContext();
         this.connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-        this.listeners = new ArrayList<>();
-        this.executorService = Executors.newSingleThreadExecutor();
+        this.listeners = new CopyOnWriteArrayList<>();
         this.scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
-        this.isConnected = false; // Inicialmente desconectado hasta verificar
+        this.networkAvailable = hasValidatedNetwork();
+        HabitApiClient.getInstance(context).setRequestOutcomeListener(new HabitApiClient.RequestOutcomeListener() {
+            @Override
+            public void onRequestSucceeded() {
+                onPassiveSuccess();
+            }
+
+            @Override
+            public void onRequestFailed() {
+                onPassiveFailure();
+            }
+        });
         setupNetworkCallback();
-        checkApiConnection(); // Verificar inmediatamente
-        startPeriodicCheck(); // Iniciar verificación periódica
+        if (networkAvailable) {
+            scheduleProbe(0); // Verificar inmediatamente
+        }
     }
 
     public static synchronized ConnectionMonitor getInstance(Context context) {
@@ -70,97 +94,135 @@ public class ConnectionMonitor {
         networkCallback = new ConnectivityManager.NetworkCallback() {
             @Override
             public void onAvailable(Network network) {
-                Log.d(TAG, "Red disponible - verificando conexión a API...");
-                // Cuando hay red, verificar conexión a la API
-                checkApiConnection();
+                onNetworkChanged(true);
             }
 
             @Override
             public void onLost(Network network) {
-                Log.d(TAG, "Red perdida - API no disponible");
-                boolean wasConnected = isConnected;
-                isConnected = false;
-                if (wasConnected) {
-                    notifyListeners(false);
-                }
+                // Puede quedar otra red validada (p. ej. se pierde wifi con datos móviles activos)
+                onNetworkChanged(hasValidatedNetwork());
             }
 
             @Override
             public void onCapabilitiesChanged(Network network, NetworkCapabilities networkCapabilities) {
-                boolean hasInternet = networkCapabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET) &&
-                                     networkCapabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
-                if (hasInternet) {
-                    // Si hay internet, verificar conexión a la API
-                    checkApiConnection();
-                } else {
-                    // Si no hay internet, la API tampoco está disponible
-                    boolean wasConnected = isConnected;
-                    isConnected = false;
-                    if (wasConnected) {
-                        notifyListeners(false);
-                    }
-                }
+                // Se llama también por cambios de señal o ancho de banda: solo importa la validación
+                onNetworkChanged(hasValidatedNetwork());
             }
         };
 
         connectivityManager.registerNetworkCallback(networkRequest, networkCallback);
     }
-    
+
+    private boolean hasValidatedNetwork() {
+        Network network = connectivityManager.getActiveNetwork();
+        if (network == null) {
+            return false;
+        }
+        NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(network);
+        return capabilities != null
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+    }
+
+    private synchronized void onNetworkChanged(boolean available) {
+        if (available == networkAvailable) {
+            return;
+        }
+        networkAvailable = available;
+        probeIntervalMs = MIN_PROBE_INTERVAL_MS;
+        if (available) {
+            Log.d(TAG, "Red disponible - verificando conexión a API...");
+            scheduleProbe(0);
+        } else {
+            Log.d(TAG, "Red perdida - API no disponible");
+            cancelProbe();
+            updateState(false);
+        }
+    }
+
     /**
-     * Inicia la verificación periódica de la conexión a la API
+     * Programa la siguiente sonda sustituyendo la pendiente. Sin red no se programa nada.
      */
-    private void startPeriodicCheck() {
-        scheduledExecutor.scheduleWithFixedDelay(
-            this::checkApiConnection,
-            CHECK_INTERVAL_SECONDS,
-            CHECK_INTERVAL_SECONDS,
-            TimeUnit.SECONDS
-        );
-    }
-    
+    private synchronized void scheduleProbe(long delayMs) {
+        cancelProbe();
+        if (!networkAvailable || scheduledExecutor.isShutdown()) {
+            return;
+        }
+        nextProbe = scheduledExecutor.schedule(this::probeApi, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void cancelProbe() {
+        if (nextProbe != null) {
+            nextProbe.cancel(false);
+            nextProbe = null;
+        }
+    }
+
     /**
-     * Verifica la conexión a la API haciendo una petición real
+     * Verifica la conexión a la API con una petición HEAD (sin cuerpo) y programa la siguiente.
      */
-    private void checkApiConnection() {
-        executorService.execute(() -> {
-            try {
-                HabitApiService apiService = HabitApiClient.getInstance().getApiService();
-                Call<com.tuempresa.proyecto_01_11_25.model.HabitsResponse> call = apiService.getAllHabits();
-                
-                // Hacer petición con timeout corto para verificación rápida
-                Response<com.tuempresa.proyecto_01_11_25.model.HabitsResponse> response = call.execute();
-                
-                boolean apiAvailable = response.isSuccessful();
-                boolean wasConnected = isConnected;
-                isConnected = apiAvailable;
-                
-                if (apiAvailable) {
-                    Log.d(TAG, "✅ API disponible - Estado: " + response.code());
-                } else {
-                    Log.d(TAG, "❌ API no disponible - Estado: " + response.code());
-                }
-                
-                // Notificar solo si cambió el estado
-                if (wasConnected != isConnected) {
-                    notifyListeners(isConnected);
-                }
-            } catch (Exception e) {
-                // Error al conectar con la API
-                boolean wasConnected = isConnected;
-                isConnected = false;
-                Log.d(TAG, "❌ Error al verificar API: " + e.getMessage());
-                
-                // Notificar solo si cambió el estado
-                if (wasConnected != isConnected) {
-                    notifyListeners(false);
-                }
+    private void probeApi() {
+        boolean apiAvailable;
+        try {
+            Call<Void> call = HabitApiClient.getInstance(context).getApiService().probe();
+            call.timeout().timeout(PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            Response<Void> response = call.execute();
+            // Cualquier respuesta sin error del servidor indica que la API es alcanzable
+            apiAvailable = response.code() < 500;
+            Log.d(TAG, (apiAvailable ? "✅ API disponible" : "❌ API no disponible") + " - Estado: " + response.code());
+        } catch (Exception e) {
+            apiAvailable = false;
+            Log.d(TAG, "❌ Error al verificar API: " + e.getMessage());
+        }
+
+        synchronized (this) {
+            lastProbeAt = SystemClock.elapsedRealtime();
+            if (updateState(apiAvailable)) {
+                probeIntervalMs = MIN_PROBE_INTERVAL_MS;
+            } else {
+                // Estado estable: sondear cada vez menos
+                probeIntervalMs = Math.min(probeIntervalMs * 2, MAX_PROBE_INTERVAL_MS);
             }
-        });
+            scheduleProbe(probeIntervalMs);
+        }
+    }
+
+    /**
+     * Una petición real obtuvo respuesta: la API está disponible y la sonda puede esperar.
+     */
+    private synchronized void onPassiveSuccess() {
+        if (updateState(true)) {
+            probeIntervalMs = MIN_PROBE_INTERVAL_MS;
+        }
+        scheduleProbe(probeIntervalMs);
+    }
+
+    /**
+     * Una petición real falló: se confirma con una sonda en lugar de cambiar el estado por un
+     * único error. Varias peticiones fallidas seguidas generan como mucho una sonda por intervalo mínimo.
+     */
+    private synchronized void onPassiveFailure() {
+        if (!isConnected) {
+            return;
+        }
+        long sinceLastProbe = SystemClock.elapsedRealtime() - lastProbeAt;
+        scheduleProbe(Math.max(0, MIN_PROBE_INTERVAL_MS - sinceLastProbe));
+    }
+
+    /**
+     * @return true si el estado cambió (y se notificó a los listeners)
+     */
+    private synchronized boolean updateState(boolean connected) {
+        if (isConnected == connected) {
+            return false;
+        }
+        isConnected = connected;
+        notifyListeners(connected);
+        return true;
     }
 
     public void addListener(ConnectionListener listener) {
-        if (!listeners.contains(listener)) {
-            listeners.add(listener);
+        if (listeners.addIfAbsent(listener)) {
             // Notificar estado actual inmediatamente
             listener.onConnectionChanged(isConnected);
         }
@@ -178,30 +240,28 @@ public class ConnectionMonitor {
 
     /**
      * Verifica si hay conexión a la API (sin hacer petición, solo retorna el último estado conocido)
-     * Para verificar realmente, se debe esperar a que el monitor periódico actualice el estado
+     * Para verificar realmente, se debe esperar a que el monitor actualice el estado
      */
     public boolean isConnected() {
         return isConnected;
     }
-    
+
     /**
      * Fuerza una verificación inmediata de la conexión a la API
      */
     public void checkConnectionNow() {
-        checkApiConnection();
+        scheduleProbe(0);
     }
 
     public void destroy() {
         if (networkCallback != null) {
             connectivityManager.unregisterNetworkCallback(networkCallback);
         }
+        HabitApiClient.getInstance(context).setRequestOutcomeListener(null);
+        cancelProbe();
         if (scheduledExecutor != null) {
             scheduledExecutor.shutdown();
         }
-        if (executorService != null) {
-            executorService.shutdown();
-        }
         listeners.clear();
     }
 }
-
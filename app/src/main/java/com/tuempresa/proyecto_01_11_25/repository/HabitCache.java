@@ -0,0 +1,199 @@
+package com.tuempresa.proyecto_01_11_25.repository;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelperSync;
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.utils.SessionManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copia en memoria de los hábitos del usuario actual, indexada por id local, tipo y serverId.
+ * Es una instantánea inmutable que se reemplaza entera: las lecturas no toman locks.
+ *
+ * Vigencia: la instantánea guarda la versión de la tabla habits (ver
+ * HabitDatabaseHelper#getHabitsVersion) con la que se cargó. Cualquier escritura, la haga quien
+ * la haga (pantallas, SyncManager, SyncWorker, copias de seguridad), cambia la versión y la
+ * siguiente lectura recarga desde SQLite. Las escrituras del repositorio se aplican además en
+ * memoria (write-through) para no tener que recargar todo.
+ *
+ * Siempre se devuelven copias de los hábitos, nunca las instancias de la caché.
+ */
+class HabitCache {
+    private static final String TAG = "HabitCache";
+
+    private final HabitDatabaseHelperSync dbHelper;
+    private final SessionManager sessionManager;
+    private volatile Snapshot snapshot;
+
+    HabitCache(Context context, HabitDatabaseHelperSync dbHelper) {
+        this.dbHelper = dbHelper;
+        this.sessionManager = new SessionManager(context.getApplicationContext());
+    }
+
+    /**
+     * Todos los hábitos del usuario, en el mismo orden que HabitDatabaseHelper#getAllHabits.
+     */
+    List<Habit> getAll() {
+        List<Habit> habits = snapshot().ordered;
+        List<Habit> copies = new ArrayList<>(habits.size());
+        for (Habit habit : habits) {
+            copies.add(new Habit(habit));
+        }
+        return copies;
+    }
+
+    Habit get(long id) {
+        return copyOf(snapshot().byId.get(id));
+    }
+
+    Habit getByServerId(long serverId) {
+        return copyOf(snapshot().byServerId.get(serverId));
+    }
+
+    Long getServerId(long id) {
+        return snapshot().serverIdById.get(id);
+    }
+
+    /**
+     * Hábito más reciente de un tipo, igual que HabitDatabaseHelper#getFirstHabitByType.
+     */
+    Habit getFirstOfType(Habit.HabitType type, boolean pendingOnly) {
+        Snapshot current = snapshot();
+        return copyOf(pendingOnly ? current.firstPendingByType.get(type) : current.firstByType.get(type));
+    }
+
+    /**
+     * Guarda en memoria el hábito recién escrito en SQLite por el llamador.
+     * @param versionBefore versión leída antes de la escritura; si desde entonces hubo más de un
+     *                      cambio (otro hilo escribió también), se descarta la caché
+     * @param habit fila tal como quedó en SQLite
+     */
+    synchronized void put(long versionBefore, Habit habit) {
+        Snapshot current = writableSnapshot(versionBefore);
+        if (current == null) {
+            return;
+        }
+        List<Habit> ordered = new ArrayList<>(current.ordered);
+        int index = indexOf(ordered, habit.getId());
+        if (index >= 0) {
+            ordered.set(index, new Habit(habit));
+        } else {
+            // Recién creado: el más reciente va primero (created_at DESC)
+            ordered.add(0, new Habit(habit));
+        }
+        snapshot = new Snapshot(current.userId, versionBefore + 1, ordered, current.serverIdById);
+    }
+
+    synchronized void putServerId(long versionBefore, long id, long serverId) {
+        Snapshot current = writableSnapshot(versionBefore);
+        if (current == null) {
+            return;
+        }
+        Map<Long, Long> serverIds = new HashMap<>(current.serverIdById);
+        serverIds.put(id, serverId);
+        snapshot = new Snapshot(current.userId, versionBefore + 1, current.ordered, serverIds);
+    }
+
+    synchronized void remove(long versionBefore, long id) {
+        Snapshot current = writableSnapshot(versionBefore);
+        if (current == null) {
+            return;
+        }
+        List<Habit> ordered = new ArrayList<>(current.ordered);
+        int index = indexOf(ordered, id);
+        if (index >= 0) {
+            ordered.remove(index);
+        }
+        Map<Long, Long> serverIds = new HashMap<>(current.serverIdById);
+        serverIds.remove(id);
+        snapshot = new Snapshot(current.userId, versionBefore + 1, ordered, serverIds);
+    }
+
+    /**
+     * Instantánea a la que se puede aplicar una escritura hecha desde versionBefore, o null
+     * si no hay caché o si hubo otras escrituras (en ese caso se invalida).
+     */
+    private Snapshot writableSnapshot(long versionBefore) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        if (current.version != versionBefore || dbHelper.getHabitsVersion() != versionBefore + 1) {
+            snapshot = null;
+            return null;
+        }
+        return current;
+    }
+
+    private Snapshot snapshot() {
+        long userId = sessionManager.getUserId();
+        Snapshot current = snapshot;
+        if (current != null && current.version == dbHelper.getHabitsVersion() && current.userId == userId) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            // La versión se lee antes de consultar: si alguien escribe mientras se carga,
+            // la versión guardada ya no coincide y la próxima lectura vuelve a cargar
+            long version = dbHelper.getHabitsVersion();
+            if (current == null || current.version != version || current.userId != userId) {
+                current = new Snapshot(userId, version, dbHelper.getAllHabits(), dbHelper.getServerIdsByLocalId());
+                snapshot = current;
+                Log.d(TAG, "Caché cargada: " + current.ordered.size() + " hábitos (versión " + version + ")");
+            }
+            return current;
+        }
+    }
+
+    private static int indexOf(List<Habit> habits, long id) {
+        for (int i = 0; i < habits.size(); i++) {
+            if (habits.get(i).getId() == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Habit copyOf(Habit habit) {
+        return habit != null ? new Habit(habit) : null;
+    }
+
+    private static final class Snapshot {
+        final long userId;
+        final long version;
+        final List<Habit> ordered;
+        final Map<Long, Habit> byId = new HashMap<>();
+        final Map<Long, Long> serverIdById;
+        final Map<Long, Habit> byServerId = new HashMap<>();
+        final Map<Habit.HabitType, Habit> firstByType = new EnumMap<>(Habit.HabitType.class);
+        final Map<Habit.HabitType, Habit> firstPendingByType = new EnumMap<>(Habit.HabitType.class);
+
+        Snapshot(long userId, long version, List<Habit> ordered, Map<Long, Long> serverIdById) {
+            this.userId = userId;
+            this.version = version;
+            this.ordered = Collections.unmodifiableList(ordered);
+            this.serverIdById = serverIdById;
+            for (Habit habit : ordered) {
+                byId.put(habit.getId(), habit);
+                Long serverId = serverIdById.get(habit.getId());
+                if (serverId != null) {
+                    byServerId.put(serverId, habit);
+                }
+                if (habit.getType() != null) {
+                    firstByType.putIfAbsent(habit.getType(), habit);
+                    if (!habit.isCompleted()) {
+                        firstPendingByType.putIfAbsent(habit.getType(), habit);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -5,20 +5,34 @@ import android.util.Log;
 
 import com.google.gson.Gson;
 import com.tuempresa.proyecto_01_11_25.api.HabitApiHelper;
-import com.tuempresa.proyecto_01_11_25.api.ScoreApiHelper;
 import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelperSync;
 import com.tuempresa.proyecto_01_11_25.model.Habit;
-import com.tuempresa.proyecto_01_11_25.model.Score;
+import com.tuempresa.proyecto_01_11_25.model.HabitCompletion;
+import com.tuempresa.proyecto_01_11_25.model.HabitPage;
 import com.tuempresa.proyecto_01_11_25.network.ConnectionMonitor;
 import com.tuempresa.proyecto_01_11_25.sync.SyncManager;
+import com.tuempresa.proyecto_01_11_25.sync.SyncScheduler;
+import com.tuempresa.proyecto_01_11_25.utils.AppExecutors;
+import com.tuempresa.proyecto_01_11_25.utils.GsonProvider;
+import com.tuempresa.proyecto_01_11_25.utils.SessionManager;
 
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * Repository que unifica el acceso a datos locales (Room) y remotos (API).
  * Implementa el patrón Repository para abstraer el origen de datos.
+ *
+ * Cada operación devuelve un CompletableFuture que se completa en un hilo de
+ * AppExecutors.io(): las lecturas se reparten en el pool y las escrituras pasan de una en una
+ * por AppExecutors.serial(). Cancelar el future (p. ej. con FutureScope al destruirse la
+ * Activity) evita que una tarea que aún no empezó llegue a ejecutarse. Los métodos con
+ * RepositoryCallback se mantienen como adaptadores sobre los futures.
  */
 public class  HabitRepository {
     private static final String TAG = "HabitRepository";
@@ -27,26 +41,39 @@ public class  HabitRepository {
     private final Context context;
     private final HabitDatabaseHelperSync dbHelper;
     private final HabitApiHelper apiHelper;
-    private final ScoreApiHelper scoreApiHelper;
     private final ConnectionMonitor connectionMonitor;
     private final SyncManager syncManager;
-    private final ExecutorService executorService;
+    private final SyncScheduler syncScheduler;
     private final Gson gson;
+    private final HabitCache habitCache;
+    private final SessionManager sessionManager;
+    private final List<ScoreListener> scoreListeners = new CopyOnWriteArrayList<>();
+
+    // Copia en memoria del total acumulado y del usuario al que pertenece (null = aún no cargado)
+    private volatile TotalScore totalScore;
 
     public interface RepositoryCallback<T> {
         void onSuccess(T data);
         void onError(String error);
     }
 
+    /**
+     * Recibe el total acumulado del usuario cada vez que cambia (en el hilo principal).
+     */
+    public interface ScoreListener {
+        void onTotalScoreChanged(int totalScore);
+    }
+
     private HabitRepository(Context context) {
         this.context = context.getApplicationContext();
-        this.dbHelper = new HabitDatabaseHelperSync(context);
-        this.apiHelper = new HabitApiHelper();
-        this.scoreApiHelper = new ScoreApiHelper();
+        this.dbHelper = HabitDatabaseHelperSync.getInstance(context);
+        this.apiHelper = new HabitApiHelper(context);
         this.connectionMonitor = ConnectionMonitor.getInstance(context);
         this.syncManager = SyncManager.getInstance(context);
-        this.executorService = Executors.newSingleThreadExecutor();
-        this.gson = new Gson();
+        this.syncScheduler = SyncScheduler.getInstance(context);
+        this.gson = GsonProvider.get();
+        this.habitCache = new HabitCache(context, dbHelper);
+        this.sessionManager = new SessionManager(this.context);
         
         // Agregar listener para sincronización automática cuando se restaure la conexión
         this.connectionMonitor.addListener(new ConnectionMonitor.ConnectionListener() {
@@ -62,6 +89,9 @@ public class  HabitRepository {
                 wasConnected = isConnected;
             }
         });
+
+        // Sincronización periódica en segundo plano aunque la app no esté abierta
+        this.syncScheduler.schedulePeriodicSync();
     }
 
     public static synchronized HabitRepository getInstance(Context context) {
@@ -72,232 +102,319 @@ public class  HabitRepository {
     }
 
     /**
-     * Obtiene todos los hábitos (primero desde local, luego sincroniza si hay conexión).
+     * Obtiene una página de hábitos locales (paginación por clave, sin cargar la lista completa).
+     * @param after clave devuelta por la página anterior, o null para la primera
      */
-    public void getAllHabits(RepositoryCallback<List<Habit>> callback) {
-        executorService.execute(() -> {
-            try {
-                // 1. Obtener de base de datos local inmediatamente (SQLite)
-                List<Habit> habits = dbHelper.getAllHabits();
-                
-                // Notificar inmediatamente con datos locales
-                callback.onSuccess(habits);
-                
-                // 2. Si hay conexión, sincronizar en segundo plano
-                if (connectionMonitor.isConnected()) {
-                    syncManager.syncAll(new SyncManager.SyncListener() {
-                        @Override
-                        public void onSyncStarted() {
-                            Log.d(TAG, "Sincronización iniciada");
-                        }
-
-                        @Override
-                        public void onSyncCompleted(int syncedCount) {
-                            // Actualizar lista después de sincronizar
-                            executorService.execute(() -> {
-                                List<Habit> updatedHabits = dbHelper.getAllHabits();
-                                Log.d(TAG, "Sincronización completada. Hábitos actualizados: " + updatedHabits.size());
-                                // Notificar en el hilo principal para actualizar UI
-                                new android.os.Handler(android.os.Looper.getMainLooper()).post(() -> {
-                                    callback.onSuccess(updatedHabits);
-                                });
-                            });
-                        }
-
-                        @Override
-                        public void onSyncError(String error) {
-                            Log.e(TAG, "Error en sincronización: " + error);
-                        }
-                    });
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error al obtener hábitos", e);
-                callback.onError(e.getMessage());
+    public CompletableFuture<HabitPage> getHabitsPage(HabitPage.Key after, int pageSize) {
+        return read(() -> dbHelper.getHabitsPage(after, pageSize));
+    }
+
+    public void getHabitsPage(HabitPage.Key after, int pageSize, RepositoryCallback<HabitPage> callback) {
+        deliver(getHabitsPage(after, pageSize), callback, "Error al obtener página de hábitos");
+    }
+
+    /**
+     * Progreso de hoy de todos los hábitos (habitId -> valor), leído en segundo plano
+     * para entregarlo ya calculado a la lista.
+     */
+    public CompletableFuture<Map<Long, Integer>> getProgressSnapshot() {
+        return read(() -> dbHelper.getProgressForDay(HabitDatabaseHelperSync.today()));
+    }
+
+    public void getProgressSnapshot(RepositoryCallback<Map<Long, Integer>> callback) {
+        deliver(getProgressSnapshot(), callback, "Error al obtener progreso del día");
+    }
+
+    /**
+     * Revalida la primera página en modo stale-while-revalidate: quien llama ya mostró
+     * {@code delivered} (copia local); si hay conexión se sincroniza en segundo plano y al
+     * terminar se relee la primera página. onChanged solo recibe la página nueva (en el hilo de
+     * E/S) si la sincronización cambió algún hábito de la página.
+     */
+    public void revalidateFirstHabitsPage(HabitPage delivered, int pageSize, Consumer<HabitPage> onChanged) {
+        if (!connectionMonitor.isConnected()) {
+            return;
+        }
+        syncManager.syncAll(new SyncManager.SyncListener() {
+            @Override
+            public void onSyncStarted() {
+                Log.d(TAG, "Sincronización iniciada");
+            }
+
+            @Override
+            public void onSyncCompleted(int syncedCount) {
+                AppExecutors.io().execute(() -> {
+                    HabitPage updated = dbHelper.getHabitsPage(null, pageSize);
+                    if (delivered.hasMore() == updated.hasMore()
+                            && sameHabits(delivered.getItems(), updated.getItems())) {
+                        Log.d(TAG, "Sincronización completada sin cambios en los hábitos");
+                        return;
+                    }
+                    Log.d(TAG, "Sincronización completada. Primera página actualizada: " + updated.getItems().size());
+                    onChanged.accept(updated);
+                });
+            }
+
+            @Override
+            public void onSyncError(String error) {
+                Log.e(TAG, "Error en sincronización: " + error);
             }
         });
     }
 
+    /**
+     * Compara campo a campo (mismo JSON que se envía a la API) y en el mismo orden.
+     */
+    private boolean sameHabits(List<Habit> a, List<Habit> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (!gson.toJson(a.get(i)).equals(gson.toJson(b.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Obtiene un hábito por ID.
      */
-    public void getHabitById(long id, RepositoryCallback<Habit> callback) {
-        executorService.execute(() -> {
-            try {
-                Habit habit = dbHelper.getHabitById(id);
-                if (habit != null) {
-                    callback.onSuccess(habit);
-                } else {
-                    callback.onError("Hábito no encontrado");
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error al obtener hábito", e);
-                callback.onError(e.getMessage());
+    public CompletableFuture<Habit> getHabitById(long id) {
+        return read(() -> {
+            Habit habit = habitCache.get(id);
+            if (habit == null) {
+                throw new NoSuchElementException("Hábito no encontrado");
             }
+            return habit;
         });
     }
 
+    public void getHabitById(long id, RepositoryCallback<Habit> callback) {
+        deliver(getHabitById(id), callback, "Error al obtener hábito");
+    }
+
+    /**
+     * Hábito por id leído de la caché en memoria, o null si no existe.
+     * Solo consulta SQLite si alguna escritura invalidó la caché desde la última lectura.
+     */
+    public Habit getCachedHabit(long id) {
+        return habitCache.get(id);
+    }
+
+    /**
+     * Todos los hábitos del usuario leídos de la caché en memoria (copias).
+     */
+    public List<Habit> getCachedHabits() {
+        return habitCache.getAll();
+    }
+
+    /**
+     * Hábito local que corresponde a un id del servidor, leído de la caché en memoria.
+     */
+    public Habit getCachedHabitByServerId(long serverId) {
+        return habitCache.getByServerId(serverId);
+    }
+
+    /**
+     * Hábito más reciente de un tipo (opcionalmente solo si no está completado), o null si no
+     * hay ninguno. Se lee de la caché en memoria en segundo plano: si alguna escritura la
+     * invalidó, la recarga desde SQLite no ocurre en el hilo que pregunta.
+     */
+    public CompletableFuture<Habit> findHabitByType(Habit.HabitType type, boolean pendingOnly) {
+        return read(() -> habitCache.getFirstOfType(type, pendingOnly));
+    }
+
+    public void findHabitByType(Habit.HabitType type, boolean pendingOnly, RepositoryCallback<Habit> callback) {
+        deliver(findHabitByType(type, pendingOnly), callback, "Error al buscar hábito por tipo");
+    }
+
     /**
      * Crea un nuevo hábito (local primero, luego sincroniza si hay conexión).
+     * El future se completa con el hábito local en cuanto está guardado en SQLite; la subida
+     * al servidor sigue en segundo plano aunque el future se cancele después.
+     */
+    public CompletableFuture<Habit> createHabit(Habit habit) {
+        return insertHabit(habit, logServerResult("crear"));
+    }
+
+    /**
+     * Variante con callback: onSuccess recibe el hábito local y, si se sube, también el del servidor.
      */
     public void createHabit(Habit habit, RepositoryCallback<Habit> callback) {
-        executorService.execute(() -> {
-            try {
-                // 1. Guardar en base de datos local (SQLite)
-                long localId = dbHelper.insertHabitFull(
-                    habit.getTitle(),
-                    habit.getGoal(),
-                    habit.getCategory(),
-                    habit.getType().name(),
-                    habit.getPoints(),
-                    habit.getTargetValue() != 0 ? habit.getTargetValue() : null,
-                    habit.getTargetUnit(),
-                    habit.getPagesPerDay(),
-                    habit.getReminderTimes(),
-                    habit.getDurationMinutes(),
-                    habit.getDndMode(),
-                    habit.getMusicId(),
-                    habit.getJournalEnabled(),
-                    habit.getGymDays(),
-                    habit.getWaterGoalGlasses(),
-                    habit.getOneClickComplete(),
-                    habit.getEnglishMode(),
-                    habit.getCodingMode(),
-                    habit.getHabitIcon()
-                );
-                
-                habit.setId(localId);
-                
-                // Notificar éxito inmediatamente
-                callback.onSuccess(habit);
-                
-                // 2. Si hay conexión, sincronizar con servidor
-                if (connectionMonitor.isConnected()) {
-                    syncHabitToServer(habit, localId, callback);
-                } else {
-                    // Marcar como no sincronizado y guardar como operación pendiente
-                    dbHelper.markHabitAsUnsynced(localId);
-                    String habitJson = gson.toJson(habit);
-                    dbHelper.savePendingOperation("CREATE", "HABIT", localId, habitJson);
-                    Log.d(TAG, "Hábito creado offline, marcado como no sincronizado: " + localId);
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error al crear hábito", e);
-                callback.onError(e.getMessage());
+        deliver(insertHabit(habit, callback), callback, "Error al crear hábito");
+    }
+
+    private CompletableFuture<Habit> insertHabit(Habit habit, RepositoryCallback<Habit> serverCallback) {
+        return write(() -> {
+            // 1. Guardar en base de datos local (SQLite)
+            long versionBefore = dbHelper.getHabitsVersion();
+            long localId = dbHelper.insertHabitFull(
+                habit.getTitle(),
+                habit.getGoal(),
+                habit.getCategory(),
+                habit.getType().name(),
+                habit.getPoints(),
+                habit.getTargetValue() != 0 ? habit.getTargetValue() : null,
+                habit.getTargetUnit(),
+                habit.getPagesPerDay(),
+                habit.getReminderTimes(),
+                habit.getDurationMinutes(),
+                habit.getDndMode(),
+                habit.getMusicId(),
+                habit.getJournalEnabled(),
+                habit.getGymDays(),
+                habit.getWaterGoalGlasses(),
+                habit.getOneClickComplete(),
+                habit.getEnglishMode(),
+                habit.getCodingMode(),
+                habit.getHabitIcon()
+            );
+
+            habit.setId(localId);
+            cacheWrittenHabit(versionBefore, localId);
+
+            // 2. Si hay conexión, sincronizar con servidor
+            if (connectionMonitor.isConnected()) {
+                syncHabitToServer(habit, localId, serverCallback);
+            } else {
+                // Marcar como no sincronizado y guardar como operación pendiente
+                dbHelper.markHabitAsUnsynced(localId);
+                String habitJson = gson.toJson(habit);
+                enqueuePendingOperation("CREATE", "HABIT", localId, habitJson);
+                Log.d(TAG, "Hábito creado offline, marcado como no sincronizado: " + localId);
             }
+            return habit;
         });
     }
 
     /**
-     * Actualiza un hábito existente.
+     * Actualiza un hábito existente. Igual que createHabit, el future se completa con la
+     * escritura local y la subida al servidor continúa en segundo plano.
      */
+    public CompletableFuture<Habit> updateHabit(Habit habit) {
+        return writeHabitChanges(habit, logServerResult("actualizar"));
+    }
+
     public void updateHabit(Habit habit, RepositoryCallback<Habit> callback) {
-        executorService.execute(() -> {
-            try {
-                // Actualizar en base de datos local
-                boolean updated = dbHelper.updateHabitFull(
-                    habit.getId(),
-                    habit.getTitle(),
-                    habit.getGoal(),
-                    habit.getCategory(),
-                    habit.getType().name(),
-                    habit.getPoints(),
-                    habit.getTargetValue() != 0 ? habit.getTargetValue() : null,
-                    habit.getTargetUnit(),
-                    habit.getPagesPerDay(),
-                    habit.getReminderTimes(),
-                    habit.getDurationMinutes(),
-                    habit.getDndMode(),
-                    habit.getMusicId(),
-                    habit.getJournalEnabled(),
-                    habit.getGymDays(),
-                    habit.getWaterGoalGlasses(),
-                    habit.getOneClickComplete(),
-                    habit.getEnglishMode(),
-                    habit.getCodingMode(),
-                    habit.getHabitIcon()
-                );
-                
-                if (!updated) {
-                    callback.onError("Hábito no encontrado");
-                    return;
-                }
-                
-                callback.onSuccess(habit);
-                
-                if (connectionMonitor.isConnected()) {
-                    syncHabitToServer(habit, habit.getId(), callback);
-                } else {
-                    // Marcar como no sincronizado y guardar como operación pendiente
-                    dbHelper.markHabitAsUnsynced(habit.getId());
-                    String habitJson = gson.toJson(habit);
-                    dbHelper.savePendingOperation("UPDATE", "HABIT", habit.getId(), habitJson);
-                    Log.d(TAG, "Hábito actualizado offline, marcado como no sincronizado: " + habit.getId());
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error al actualizar hábito", e);
-                callback.onError(e.getMessage());
+        deliver(writeHabitChanges(habit, callback), callback, "Error al actualizar hábito");
+    }
+
+    private CompletableFuture<Habit> writeHabitChanges(Habit habit, RepositoryCallback<Habit> serverCallback) {
+        return write(() -> {
+            // Actualizar en base de datos local
+            long versionBefore = dbHelper.getHabitsVersion();
+            boolean updated = dbHelper.updateHabitFull(
+                habit.getId(),
+                habit.getTitle(),
+                habit.getGoal(),
+                habit.getCategory(),
+                habit.getType().name(),
+                habit.getPoints(),
+                habit.getTargetValue() != 0 ? habit.getTargetValue() : null,
+                habit.getTargetUnit(),
+                habit.getPagesPerDay(),
+                habit.getReminderTimes(),
+                habit.getDurationMinutes(),
+                habit.getDndMode(),
+                habit.getMusicId(),
+                habit.getJournalEnabled(),
+                habit.getGymDays(),
+                habit.getWaterGoalGlasses(),
+                habit.getOneClickComplete(),
+                habit.getEnglishMode(),
+                habit.getCodingMode(),
+                habit.getHabitIcon()
+            );
+
+            if (!updated) {
+                throw new NoSuchElementException("Hábito no encontrado");
             }
+            cacheWrittenHabit(versionBefore, habit.getId());
+
+            if (connectionMonitor.isConnected()) {
+                syncHabitToServer(habit, habit.getId(), serverCallback);
+            } else {
+                // Marcar como no sincronizado y guardar como operación pendiente
+                dbHelper.markHabitAsUnsynced(habit.getId());
+                String habitJson = gson.toJson(habit);
+                enqueuePendingOperation("UPDATE", "HABIT", habit.getId(), habitJson);
+                Log.d(TAG, "Hábito actualizado offline, marcado como no sincronizado: " + habit.getId());
+            }
+            return habit;
         });
     }
 
     /**
-     * Elimina un hábito.
+     * Elimina un hábito. El future se completa cuando el servidor confirma el borrado o, si no
+     * se puede borrar allí ahora, cuando queda como operación pendiente.
      */
-    public void deleteHabit(long id, RepositoryCallback<Void> callback) {
-        executorService.execute(() -> {
-            try {
-                Habit habit = dbHelper.getHabitById(id);
-                if (habit != null) {
-                    // Eliminar de base de datos local
-                    dbHelper.deleteHabit(id);
-                    
-                    // Obtener serverId si existe
-                    Long serverId = dbHelper.getServerId(id);
-                    
-                    if (connectionMonitor.isConnected() && serverId != null && serverId > 0) {
-                        // Eliminar del servidor
-                        apiHelper.deleteHabit(serverId, new HabitApiHelper.OnHabitDeletedListener() {
-                            @Override
-                            public void onSuccess() {
-                                callback.onSuccess(null);
-                            }
-
-                            @Override
-                            public void onError(String error) {
-                                Log.e(TAG, "Error al eliminar hábito del servidor: " + error);
-                                // Guardar como operación pendiente
-                                String habitJson = gson.toJson(habit);
-                                dbHelper.savePendingOperation("DELETE", "HABIT", id, habitJson);
-                                callback.onSuccess(null);
-                            }
-                        });
-                    } else {
-                        // Guardar como operación pendiente
-                        String habitJson = gson.toJson(habit);
-                        dbHelper.savePendingOperation("DELETE", "HABIT", id, habitJson);
-                        callback.onSuccess(null);
-                    }
-                } else {
-                    callback.onError("Hábito no encontrado");
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error al eliminar hábito", e);
-                callback.onError(e.getMessage());
+    public CompletableFuture<Void> deleteHabit(long id) {
+        return write(() -> {
+            Habit habit = habitCache.get(id);
+            if (habit == null) {
+                throw new NoSuchElementException("Hábito no encontrado");
+            }
+            // Obtener serverId antes de borrar la fila local
+            Long serverId = habitCache.getServerId(id);
+
+            // Eliminar de base de datos local
+            long versionBefore = dbHelper.getHabitsVersion();
+            dbHelper.deleteHabit(id);
+            habitCache.remove(versionBefore, id);
+
+            if (serverId == null || serverId <= 0) {
+                // Nunca llegó al servidor: no hay nada que eliminar allí
+                return null;
+            }
+            if (!connectionMonitor.isConnected()) {
+                // Guardar como operación pendiente (con el serverId: la fila local ya no existe)
+                enqueuePendingOperation("DELETE", "HABIT", id, String.valueOf(serverId));
+                return null;
             }
+            return serverId;
+        }).thenCompose(serverId -> {
+            CompletableFuture<Void> deleted = new CompletableFuture<>();
+            if (serverId == null) {
+                deleted.complete(null);
+                return deleted;
+            }
+            // Eliminar del servidor
+            apiHelper.deleteHabit(serverId, new HabitApiHelper.OnHabitDeletedListener() {
+                @Override
+                public void onSuccess() {
+                    deleted.complete(null);
+                }
+
+                @Override
+                public void onError(String error) {
+                    Log.e(TAG, "Error al eliminar hábito del servidor: " + error);
+                    // Guardar como operación pendiente (con el serverId: la fila local ya no existe)
+                    AppExecutors.serial().execute(() -> {
+                        enqueuePendingOperation("DELETE", "HABIT", id, String.valueOf(serverId));
+                        deleted.complete(null);
+                    });
+                }
+            });
+            return deleted;
         });
     }
 
+    public void deleteHabit(long id, RepositoryCallback<Void> callback) {
+        deliver(deleteHabit(id), callback, "Error al eliminar hábito");
+    }
+
     private void syncHabitToServer(Habit habit, long localId, RepositoryCallback<Habit> callback) {
-        Long serverId = dbHelper.getServerId(localId);
+        Long serverId = habitCache.getServerId(localId);
         
         if (serverId != null && serverId > 0) {
             // Actualizar
             apiHelper.updateHabit(serverId, habit, new HabitApiHelper.OnHabitSavedListener() {
                 @Override
                 public void onSuccess(Habit updatedHabit) {
-                    executorService.execute(() -> {
+                    AppExecutors.serial().execute(() -> {
                         // Marcar como sincronizado
-                        dbHelper.markHabitAsSynced(localId, updatedHabit.getId());
+                        markHabitAsSynced(localId, updatedHabit.getId());
                         callback.onSuccess(updatedHabit);
                     });
                 }
@@ -305,11 +422,11 @@ public class  HabitRepository {
                 @Override
                 public void onError(String error) {
                     Log.e(TAG, "Error al sincronizar hábito: " + error);
-                    executorService.execute(() -> {
+                    AppExecutors.serial().execute(() -> {
                         // Marcar como no sincronizado y guardar como operación pendiente
                         dbHelper.markHabitAsUnsynced(localId);
                         String habitJson = gson.toJson(habit);
-                        dbHelper.savePendingOperation("UPDATE", "HABIT", localId, habitJson);
+                        enqueuePendingOperation("UPDATE", "HABIT", localId, habitJson);
                     });
                     callback.onError(error);
                 }
@@ -319,9 +436,9 @@ public class  HabitRepository {
             apiHelper.createHabit(habit, new HabitApiHelper.OnHabitSavedListener() {
                 @Override
                 public void onSuccess(Habit createdHabit) {
-                    executorService.execute(() -> {
+                    AppExecutors.serial().execute(() -> {
                         // Marcar como sincronizado y guardar serverId
-                        dbHelper.markHabitAsSynced(localId, createdHabit.getId());
+                        markHabitAsSynced(localId, createdHabit.getId());
                         callback.onSuccess(createdHabit);
                     });
                 }
@@ -329,11 +446,11 @@ public class  HabitRepository {
                 @Override
                 public void onError(String error) {
                     Log.e(TAG, "Error al crear hábito en servidor: " + error);
-                    executorService.execute(() -> {
+                    AppExecutors.serial().execute(() -> {
                         // Marcar como no sincronizado y guardar como operación pendiente
                         dbHelper.markHabitAsUnsynced(localId);
                         String habitJson = gson.toJson(habit);
-                        dbHelper.savePendingOperation("CREATE", "HABIT", localId, habitJson);
+                        enqueuePendingOperation("CREATE", "HABIT", localId, habitJson);
                     });
                     callback.onError(error);
                 }
@@ -341,11 +458,52 @@ public class  HabitRepository {
         }
     }
 
+    /**
+     * Callback para la subida al servidor cuando el llamador solo espera el future local.
+     */
+    private static RepositoryCallback<Habit> logServerResult(String action) {
+        return new RepositoryCallback<Habit>() {
+            @Override
+            public void onSuccess(Habit serverHabit) {
+                Log.d(TAG, "Hábito sincronizado con el servidor al " + action + ": " + serverHabit.getId());
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.e(TAG, "No se pudo " + action + " el hábito en el servidor (queda pendiente): " + error);
+            }
+        };
+    }
+
+    private void markHabitAsSynced(long localId, long serverId) {
+        long versionBefore = dbHelper.getHabitsVersion();
+        dbHelper.markHabitAsSynced(localId, serverId);
+        habitCache.putServerId(versionBefore, localId, serverId);
+    }
+
+    /**
+     * Pasa a la caché la fila que se acaba de escribir (releída por id, con los valores por
+     * defecto y los campos que la escritura no toca).
+     */
+    private void cacheWrittenHabit(long versionBefore, long id) {
+        Habit written = dbHelper.getHabitById(id);
+        if (written != null) {
+            habitCache.put(versionBefore, written);
+        }
+    }
+
     /**
      * Fuerza una sincronización inmediata con el servidor.
      * Útil para refrescar datos cuando el usuario lo solicita.
      */
     public void forceSync() {
+        forceSync(null);
+    }
+
+    /**
+     * Fuerza una sincronización y ejecuta onCompleted (en el hilo de sincronización) al terminar.
+     */
+    public void forceSync(Runnable onCompleted) {
         if (connectionMonitor.isConnected()) {
             Log.d(TAG, "Forzando sincronización...");
             syncManager.syncAll(new SyncManager.SyncListener() {
@@ -357,6 +515,9 @@ public class  HabitRepository {
                 @Override
                 public void onSyncCompleted(int syncedCount) {
                     Log.d(TAG, "Sincronización forzada completada: " + syncedCount + " elementos");
+                    if (onCompleted != null) {
+                        onCompleted.run();
+                    }
                 }
 
                 @Override
@@ -370,50 +531,149 @@ public class  HabitRepository {
     }
 
     /**
-     * Guarda un score (progreso) cuando se completa un hábito.
-     * Guarda localmente primero, luego sincroniza con la API si hay conexión.
+     * Completa un hábito: marca completed, guarda el score y encola el completado para el
+     * servidor en una sola transacción (ver HabitDatabaseHelperSync#completeHabit). En la
+     * siguiente sincronización el hábito viaja en el lote de habits/sync y los puntos por scores.
+     * @param source Origen del completado (HabitCompletion.SOURCE_*)
+     * @return true si se completó; false si el hábito no existe o ya estaba completado (así un
+     *         mismo completado avisado dos veces no suma puntos dos veces)
      */
-    public void addScore(long habitId, String habitTitle, int points, RepositoryCallback<Void> callback) {
-        executorService.execute(() -> {
-            try {
-                // 1. Guardar en base de datos local (SQLite)
-                long localScoreId = dbHelper.addScore(habitTitle, points);
-                
-                // Obtener serverId del hábito
-                Long serverHabitId = dbHelper.getServerId(habitId);
-                
-                // Notificar éxito inmediatamente
-                callback.onSuccess(null);
-                
-                // 2. Si hay conexión y el hábito tiene serverId, sincronizar con servidor
-                if (connectionMonitor.isConnected() && serverHabitId != null && serverHabitId > 0) {
-                    Score score = new Score(serverHabitId, habitTitle, points);
-                    scoreApiHelper.createScore(score, new ScoreApiHelper.OnScoreSavedListener() {
-                        @Override
-                        public void onSuccess(Score createdScore) {
-                            Log.d(TAG, "Score guardado en servidor: " + createdScore.getId());
-                            // El score local ya está guardado, no necesitamos actualizar nada
-                        }
-
-                        @Override
-                        public void onError(String error) {
-                            Log.e(TAG, "Error al guardar score en servidor: " + error);
-                            // Guardar como operación pendiente
-                            String scoreJson = gson.toJson(score);
-                            dbHelper.savePendingOperation("CREATE", "SCORE", localScoreId, scoreJson);
-                        }
-                    });
-                } else {
-                    // Guardar como operación pendiente si no hay conexión o no tiene serverId
-                    Score score = new Score(serverHabitId != null ? serverHabitId : habitId, habitTitle, points);
-                    String scoreJson = gson.toJson(score);
-                    dbHelper.savePendingOperation("CREATE", "SCORE", localScoreId, scoreJson);
+    public CompletableFuture<Boolean> completeHabit(long habitId, int points, String source) {
+        return write(() -> {
+            Habit habit = habitCache.get(habitId);
+            HabitCompletion completion = new HabitCompletion(habitId, habit != null ? habit.getTitle() : null,
+                    points, source, System.currentTimeMillis() / 1000);
+            long versionBefore = dbHelper.getHabitsVersion();
+            long scoreId = dbHelper.completeHabit(habitId, points, gson.toJson(completion));
+            if (scoreId == -1) {
+                Log.d(TAG, "Hábito " + habitId + " ya completado o inexistente");
+                return false;
+            }
+            cacheWrittenHabit(versionBefore, habitId);
+            reloadTotalScore();
+            syncScheduler.onPendingOperationsChanged(dbHelper.getDuePendingOperationCount());
+            return true;
+        });
+    }
+
+    public void completeHabit(long habitId, int points, String source, RepositoryCallback<Boolean> callback) {
+        deliver(completeHabit(habitId, points, source), callback, "Error al completar hábito");
+    }
+
+    public void addScoreListener(ScoreListener listener) {
+        if (!scoreListeners.contains(listener)) {
+            scoreListeners.add(listener);
+            // Notificar el valor actual inmediatamente si es del usuario de la sesión; si no, cargarlo
+            TotalScore current = totalScore;
+            if (current != null && current.userId == sessionManager.getUserId()) {
+                listener.onTotalScoreChanged(current.total);
+            } else {
+                AppExecutors.io().execute(this::reloadTotalScore);
+            }
+        }
+    }
+
+    public void removeScoreListener(ScoreListener listener) {
+        scoreListeners.remove(listener);
+    }
+
+    /**
+     * Total acumulado del usuario actual (lectura O(1) de user_stats).
+     */
+    public CompletableFuture<Integer> getTotalScore() {
+        return read(() -> {
+            long userId = sessionManager.getUserId();
+            int total = dbHelper.getTotalScore();
+            totalScore = new TotalScore(userId, total);
+            return total;
+        });
+    }
+
+    public void getTotalScore(RepositoryCallback<Integer> callback) {
+        deliver(getTotalScore(), callback, "Error al obtener total de puntos");
+    }
+
+    /**
+     * Reconstruye el total acumulado a partir de los scores (BackupManager lo llama tras
+     * restaurar una copia) y publica el resultado a los observadores.
+     */
+    public CompletableFuture<Integer> rebuildTotalScore() {
+        return write(() -> {
+            long userId = sessionManager.getUserId();
+            int total = dbHelper.rebuildTotalScore();
+            publishTotalScore(userId, total);
+            return total;
+        });
+    }
+
+    public void rebuildTotalScore(RepositoryCallback<Integer> callback) {
+        CompletableFuture<Integer> rebuilt = rebuildTotalScore();
+        if (callback != null) {
+            deliver(rebuilt, callback, "Error al reconstruir total de puntos");
+        } else {
+            rebuilt.whenComplete((total, error) -> {
+                if (error != null) {
+                    Log.e(TAG, "Error al reconstruir total de puntos", AppExecutors.causeOf(error));
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "Error al guardar score", e);
-                callback.onError(e.getMessage());
+            });
+        }
+    }
+
+    private static <T> CompletableFuture<T> read(Callable<T> work) {
+        return AppExecutors.supply(AppExecutors.io(), work);
+    }
+
+    private static <T> CompletableFuture<T> write(Callable<T> work) {
+        return AppExecutors.supply(AppExecutors.serial(), work);
+    }
+
+    /**
+     * Adapta un future a la API de callbacks (se llama en el hilo que completa el future).
+     */
+    private static <T> void deliver(CompletableFuture<T> future, RepositoryCallback<T> callback, String errorLog) {
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                Throwable cause = AppExecutors.causeOf(error);
+                Log.e(TAG, errorLog, cause);
+                callback.onError(cause.getMessage());
+            } else {
+                callback.onSuccess(result);
             }
         });
     }
-}
 
+    /**
+     * Guarda una operación pendiente y pide una sincronización urgente si la cola ha crecido demasiado.
+     */
+    private void enqueuePendingOperation(String operationType, String entityType, long entityId, String entityData) {
+        dbHelper.savePendingOperation(operationType, entityType, entityId, entityData);
+        syncScheduler.onPendingOperationsChanged(dbHelper.getDuePendingOperationCount());
+    }
+
+    private void reloadTotalScore() {
+        long userId = sessionManager.getUserId();
+        publishTotalScore(userId, dbHelper.getTotalScore());
+    }
+
+    private void publishTotalScore(long userId, int total) {
+        totalScore = new TotalScore(userId, total);
+        if (scoreListeners.isEmpty()) {
+            return;
+        }
+        AppExecutors.mainThread().execute(() -> {
+            for (ScoreListener listener : scoreListeners) {
+                listener.onTotalScoreChanged(total);
+            }
+        });
+    }
+
+    private static final class TotalScore {
+        final long userId;
+        final int total;
+
+        TotalScore(long userId, int total) {
+            this.userId = userId;
+            this.total = total;
+        }
+    }
+}
@@ -16,8 +16,8 @@ import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.location.Priority;
-import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelper;
 import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.model.HabitCompletion;
 import com.tuempresa.proyecto_01_11_25.model.HabitEvent;
 import com.tuempresa.proyecto_01_11_25.model.HabitEventStore;
 import com.tuempresa.proyecto_01_11_25.repository.HabitRepository;
@@ -77,47 +77,38 @@ public class StepSensorManager {
                                 HabitEvent.HabitType.WALK
                         ));
                         
-                        // Agregar puntos a la base de datos y API
+                        // Completar el hábito y agregar puntos (una transacción; la API en lote)
                         try {
-                            HabitDatabaseHelper dbHelper = new HabitDatabaseHelper(ctx);
                             HabitRepository habitRepository = HabitRepository.getInstance(ctx);
                             
-                            // Buscar hábito de tipo WALK
-                            java.util.List<Habit> habits = dbHelper.getAllHabits();
-                            for (Habit habit : habits) {
-                                if (habit.getType() == Habit.HabitType.WALK && !habit.isCompleted()) {
-                                    habit.setCompleted(true);
-                                    dbHelper.updateHabitCompleted(habit.getTitle(), true);
-                                    
-                                    // Actualizar hábito en API
-                                    habitRepository.updateHabit(habit, new HabitRepository.RepositoryCallback<Habit>() {
-                                        @Override
-                                        public void onSuccess(Habit updatedHabit) {
-                                            android.util.Log.d("StepSensor", "Hábito WALK actualizado en API");
-                                        }
-
-                                        @Override
-                                        public void onError(String error) {
-                                            android.util.Log.e("StepSensor", "Error al actualizar hábito WALK en API: " + error);
-                                        }
-                                    });
-                                    
-                                    // Agregar puntos (guarda en SQLite + API)
+                            // Hábito WALK sin completar (caché del repositorio, leída en segundo plano)
+                            habitRepository.findHabitByType(Habit.HabitType.WALK, true,
+                                    new HabitRepository.RepositoryCallback<Habit>() {
+                                @Override
+                                public void onSuccess(Habit habit) {
+                                    if (habit == null) {
+                                        return;
+                                    }
                                     int points = habit.getPoints();
-                                    habitRepository.addScore(habit.getId(), habit.getTitle(), points, new HabitRepository.RepositoryCallback<Void>() {
+                                    habitRepository.completeHabit(habit.getId(), points, HabitCompletion.SOURCE_SENSOR,
+                                            new HabitRepository.RepositoryCallback<Boolean>() {
                                         @Override
-                                        public void onSuccess(Void data) {
+                                        public void onSuccess(Boolean completed) {
                                             android.util.Log.d("StepSensor", "Score WALK guardado: " + points + " puntos");
                                         }
 
                                         @Override
                                         public void onError(String error) {
-                                            android.util.Log.e("StepSensor", "Error al guardar score WALK: " + error);
+                                            android.util.Log.e("StepSensor", "Error al completar hábito WALK: " + error);
                                         }
                                     });
-                                    break;
                                 }
-                            }
+
+                                @Override
+                                public void onError(String error) {
+                                    android.util.Log.e("StepSensor", "Error al buscar hábito WALK: " + error);
+                                }
+                            });
                         } catch (Exception e) {
                             android.util.Log.e("StepSensor", "Error al agregar puntos", e);
                         }
@@ -0,0 +1,27 @@
+package com.tuempresa.proyecto_01_11_25.sync;
+
+import java.util.Random;
+
+/**
+ * Espera antes de reintentar una operación pendiente: exponencial desde BASE_DELAY_SECONDS
+ * hasta MAX_DELAY_SECONDS, con la mitad de la espera aleatoria para que las operaciones que
+ * fallaron juntas no se reintenten todas a la vez.
+ */
+final class RetryBackoff {
+    static final long BASE_DELAY_SECONDS = 30;
+    static final long MAX_DELAY_SECONDS = 60 * 60;
+
+    private RetryBackoff() {
+    }
+
+    /**
+     * @param attempt Número de intentos fallidos (1 = primer fallo)
+     * @return Segundos hasta el siguiente intento, entre la mitad y el total de la espera exponencial
+     */
+    static long delaySeconds(int attempt, Random random) {
+        int shift = Math.min(Math.max(attempt - 1, 0), 20);
+        long delay = Math.min(BASE_DELAY_SECONDS << shift, MAX_DELAY_SECONDS);
+        long half = delay / 2;
+        return half + (long) (random.nextDouble() * (delay - half + 1));
+    }
+}
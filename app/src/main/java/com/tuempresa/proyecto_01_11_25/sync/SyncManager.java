@@ -5,30 +5,62 @@ import android.util.Log;
 
 import com.google.gson.Gson;
 import com.tuempresa.proyecto_01_11_25.api.HabitApiHelper;
+import com.tuempresa.proyecto_01_11_25.api.ScoreApiHelper;
 import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelperSync;
 import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.model.HabitCompletion;
+import com.tuempresa.proyecto_01_11_25.model.Score;
 import com.tuempresa.proyecto_01_11_25.network.ConnectionMonitor;
+import com.tuempresa.proyecto_01_11_25.utils.GsonProvider;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Gestor de sincronización entre la base de datos local y la API remota.
  * Maneja la sincronización bidireccional y resolución de conflictos.
+ *
+ * La sincronización corre en un único hilo y usa llamadas bloqueantes (execute): un elemento
+ * solo cuenta como sincronizado, y su operación pendiente solo se borra, cuando el servidor
+ * lo confirma. Las peticiones independientes se reparten en un pool de MAX_CONCURRENT_REQUESTS.
  */
 public class SyncManager {
     private static final String TAG = "SyncManager";
+    // Máximo de hábitos por petición a habits/sync
+    private static final int SYNC_BATCH_SIZE = 100;
+    // Peticiones simultáneas como máximo durante una sincronización
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+    // Intentos fallidos tras los que una operación pasa a dead_letter_operations
+    private static final int MAX_ATTEMPTS = 8;
     private static SyncManager instance;
     
     private final Context context;
     private final HabitDatabaseHelperSync dbHelper;
     private final HabitApiHelper apiHelper;
+    private final ScoreApiHelper scoreApiHelper;
     private final ConnectionMonitor connectionMonitor;
     private final ExecutorService executorService;
+    private final ExecutorService requestExecutor;
     private final Gson gson;
+    private final Random random = new Random();
     
-    private boolean isSyncing = false;
+    private final AtomicBoolean isSyncing = new AtomicBoolean(false);
+    // Listeners de la sincronización en curso (incluidos los que llegaron con ella ya empezada)
+    private final List<SyncListener> syncListeners = new ArrayList<>();
+    // Enviar hábitos y operaciones CREATE/UPDATE en lotes por habits/sync (false = una petición por hábito)
+    private volatile boolean batchSyncEnabled = true;
 
     public interface SyncListener {
         void onSyncStarted();
@@ -38,11 +70,13 @@ public class SyncManager {
 
     private SyncManager(Context context) {
         this.context = context.getApplicationContext();
-        this.dbHelper = new HabitDatabaseHelperSync(context);
-        this.apiHelper = new HabitApiHelper();
+        this.dbHelper = HabitDatabaseHelperSync.getInstance(context);
+        this.apiHelper = new HabitApiHelper(context);
+        this.scoreApiHelper = new ScoreApiHelper(context);
         this.connectionMonitor = ConnectionMonitor.getInstance(context);
         this.executorService = Executors.newSingleThreadExecutor();
-        this.gson = new Gson();
+        this.requestExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_REQUESTS);
+        this.gson = GsonProvider.get();
     }
 
     public static synchronized SyncManager getInstance(Context context) {
@@ -54,13 +88,10 @@ public class SyncManager {
 
     /**
      * Sincroniza todos los datos pendientes con el servidor.
+     * El listener recibe onSyncCompleted cuando todas las peticiones han terminado, con el
+     * número de elementos confirmados por el servidor (subidos + descargados).
      */
     public void syncAll(SyncListener listener) {
-        if (isSyncing) {
-            Log.d(TAG, "Sincronización ya en progreso");
-            return;
-        }
-
         if (!connectionMonitor.isConnected()) {
             Log.d(TAG, "Sin conexión a la API, no se puede sincronizar");
             if (listener != null) {
@@ -69,252 +100,522 @@ public class SyncManager {
             return;
         }
 
+        if (!startSync(listener)) {
+            // El listener se notificará al terminar la sincronización en curso
+            Log.d(TAG, "Sincronización ya en progreso");
+            return;
+        }
+
         executorService.execute(() -> {
-            isSyncing = true;
-            currentSyncListener = listener;
             if (listener != null) {
                 listener.onSyncStarted();
             }
 
             try {
-                int syncedCount = 0;
-
-                // 1. Sincronizar hábitos no sincronizados
-                syncedCount += syncHabits();
-
-                // 2. Sincronizar scores no sincronizados
-                syncedCount += syncScores();
-
-                // 3. Procesar operaciones pendientes
-                syncedCount += processPendingOperations();
-
-                // 4. Descargar datos del servidor (esto es asíncrono, pero notificará cuando termine)
-                downloadFromServer();
-
-                // Nota: downloadFromServer es asíncrono, pero onSyncCompleted se llamará
-                // después de que se complete la descarga en downloadFromServer
+                finishSync(runSync(), null);
             } catch (Exception e) {
-                isSyncing = false;
                 Log.e(TAG, "Error en sincronización", e);
-                if (listener != null) {
-                    listener.onSyncError(e.getMessage());
-                }
+                finishSync(0, e);
             }
         });
     }
 
-    private int syncHabits() {
+    /**
+     * Sincroniza en el hilo que llama (SyncWorker). No consulta ConnectionMonitor: el trabajo
+     * solo se ejecuta con la restricción de red cumplida.
+     * @return Elementos confirmados por el servidor, o -1 si ya había una sincronización en curso
+     */
+    public int syncBlocking() throws IOException, InterruptedException {
+        if (!startSync(null)) {
+            Log.d(TAG, "Sincronización ya en progreso");
+            return -1;
+        }
         int syncedCount = 0;
-        List<Habit> unsyncedHabits = dbHelper.getUnsyncedHabits();
-        
-        for (Habit habit : unsyncedHabits) {
-            try {
-                Long serverId = dbHelper.getServerId(habit.getId());
-                
-                if (serverId != null && serverId > 0) {
-                    // Actualizar hábito existente
-                    apiHelper.updateHabit(serverId, habit, new HabitApiHelper.OnHabitSavedListener() {
-                        @Override
-                        public void onSuccess(Habit updatedHabit) {
-                            // Marcar como sincronizado
-                            dbHelper.markHabitAsSynced(habit.getId(), updatedHabit.getId());
-                        }
-
-                        @Override
-                        public void onError(String error) {
-                            Log.e(TAG, "Error al actualizar hábito: " + error);
-                        }
-                    });
-                } else {
-                    // Crear nuevo hábito
-                    apiHelper.createHabit(habit, new HabitApiHelper.OnHabitSavedListener() {
-                        @Override
-                        public void onSuccess(Habit createdHabit) {
-                            // Marcar como sincronizado y guardar serverId
-                            dbHelper.markHabitAsSynced(habit.getId(), createdHabit.getId());
-                        }
-
-                        @Override
-                        public void onError(String error) {
-                            Log.e(TAG, "Error al crear hábito: " + error);
-                        }
-                    });
-                }
-                syncedCount++;
-            } catch (Exception e) {
-                Log.e(TAG, "Error al sincronizar hábito " + habit.getId(), e);
+        Exception error = null;
+        try {
+            syncedCount = runSync();
+            return syncedCount;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            finishSync(syncedCount, error);
+        }
+    }
+
+    /**
+     * Marca el inicio de una sincronización. Si ya hay una en curso, el listener se une a ella.
+     * @return true si la sincronización debe ejecutarla quien llama
+     */
+    private boolean startSync(SyncListener listener) {
+        synchronized (syncListeners) {
+            if (listener != null) {
+                syncListeners.add(listener);
             }
+            return isSyncing.compareAndSet(false, true);
         }
-        
-        return syncedCount;
     }
 
-    private int syncScores() {
-        // Similar a syncHabits pero para scores
-        // Implementación simplificada
-        return 0;
+    /**
+     * Marca el fin de la sincronización y notifica a todos los listeners que se unieron a ella.
+     */
+    private void finishSync(int syncedCount, Exception error) {
+        List<SyncListener> listeners;
+        synchronized (syncListeners) {
+            isSyncing.set(false);
+            listeners = new ArrayList<>(syncListeners);
+            syncListeners.clear();
+        }
+        for (SyncListener listener : listeners) {
+            if (error != null) {
+                listener.onSyncError(error.getMessage());
+            } else {
+                listener.onSyncCompleted(syncedCount);
+            }
+        }
     }
 
-    private int processPendingOperations() {
-        int processedCount = 0;
-        List<HabitDatabaseHelperSync.PendingOperation> pendingOps = dbHelper.getAllPendingOperations();
-        
-        for (HabitDatabaseHelperSync.PendingOperation op : pendingOps) {
-            try {
-                if (op.retryCount >= 3) {
-                    // Demasiados reintentos, eliminar
+    private int runSync() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+
+        // 0. Fusionar operaciones pendientes repetidas de una misma entidad
+        dbHelper.compactPendingOperations();
+
+        // 1. Subir hábitos no sincronizados
+        int habits = syncHabits();
+
+        // 2. Enviar los puntos de los hábitos completados (ya tienen serverId tras el paso 1)
+        int completions = syncCompletions();
+
+        // 3. Procesar operaciones pendientes
+        int operations = processPendingOperations();
+
+        // 4. Descargar cambios del servidor
+        int downloaded = downloadFromServer();
+
+        Log.d(TAG, "Sincronización completada en " + (System.nanoTime() - start) / 1_000_000 + " ms: "
+                + habits + " hábitos subidos, " + completions + " scores de completados enviados, "
+                + operations + " operaciones confirmadas, " + downloaded + " hábitos descargados");
+        return habits + completions + operations + downloaded;
+    }
+
+    public void setBatchSyncEnabled(boolean enabled) {
+        this.batchSyncEnabled = enabled;
+    }
+
+    private int syncHabits() throws InterruptedException {
+        return batchSyncEnabled ? syncHabitsInBatches() : syncHabitsIndividually();
+    }
+
+    /**
+     * Envía los hábitos no sincronizados, junto con las operaciones pendientes CREATE/UPDATE de
+     * hábitos, en lotes de SYNC_BATCH_SIZE por habits/sync. Cada hábito va una sola vez aunque
+     * tenga varias operaciones pendientes, con los datos actuales de SQLite.
+     * @return Número de hábitos confirmados por el servidor
+     */
+    private int syncHabitsInBatches() throws InterruptedException {
+        Map<Long, Habit> habitsById = new LinkedHashMap<>();
+        for (Habit habit : dbHelper.getUnsyncedHabits()) {
+            habitsById.put(habit.getId(), habit);
+        }
+
+        long now = System.currentTimeMillis() / 1000;
+        Set<Long> deferred = new HashSet<>();
+        Map<Long, List<HabitDatabaseHelperSync.PendingOperation>> opsByHabit = new LinkedHashMap<>();
+        for (HabitDatabaseHelperSync.PendingOperation op : dbHelper.getAllPendingOperations()) {
+            if (!isBatchable(op)) {
+                continue;
+            }
+            if (op.nextAttemptAt > now) {
+                // Falló hace poco: el hábito espera a su próximo intento
+                deferred.add(op.entityId);
+                continue;
+            }
+            if (!habitsById.containsKey(op.entityId)) {
+                Habit habit = dbHelper.getHabitById(op.entityId);
+                if (habit == null) {
+                    // El hábito ya no existe localmente: la operación quedó obsoleta
                     dbHelper.deletePendingOperation(op.id);
                     continue;
                 }
+                habitsById.put(habit.getId(), habit);
+            }
+            List<HabitDatabaseHelperSync.PendingOperation> ops = opsByHabit.get(op.entityId);
+            if (ops == null) {
+                ops = new ArrayList<>();
+                opsByHabit.put(op.entityId, ops);
+            }
+            ops.add(op);
+        }
+        for (Long habitId : deferred) {
+            habitsById.remove(habitId);
+            opsByHabit.remove(habitId);
+        }
 
-                // Procesar según el tipo de operación
-                boolean success = processOperation(op);
-                if (success) {
-                    dbHelper.deletePendingOperation(op.id);
-                    processedCount++;
-                } else {
-                    dbHelper.incrementRetryCount(op.id, "Error en procesamiento");
+        List<Habit> pending = new ArrayList<>(habitsById.values());
+        int batches = (pending.size() + SYNC_BATCH_SIZE - 1) / SYNC_BATCH_SIZE;
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int start = 0; start < pending.size(); start += SYNC_BATCH_SIZE) {
+            List<Habit> batch = new ArrayList<>(pending.subList(start, Math.min(start + SYNC_BATCH_SIZE, pending.size())));
+            int number = start / SYNC_BATCH_SIZE + 1;
+            results.add(requestExecutor.submit(() -> sendBatch(batch, opsByHabit, number, batches)));
+        }
+        int acked = sum(results);
+        if (batches > 0) {
+            Log.d(TAG, "Hábitos en lotes: " + acked + " de " + pending.size() + " confirmados (" + batches + " lotes)");
+        }
+        return acked;
+    }
+
+    /**
+     * Envía un lote y, solo si el servidor lo confirma, marca sus hábitos como sincronizados y
+     * borra las operaciones pendientes que cubría. Si falla, sus operaciones se reprograman
+     * con espera exponencial.
+     * @return Número de hábitos confirmados
+     */
+    private int sendBatch(List<Habit> batch, Map<Long, List<HabitDatabaseHelperSync.PendingOperation>> opsByHabit,
+                          int number, int batches) {
+        long start = System.nanoTime();
+        long[] localIds = new long[batch.size()];
+        List<HabitDatabaseHelperSync.PendingOperation> ops = new ArrayList<>();
+        List<Long> opIds = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Habit habit = batch.get(i);
+            localIds[i] = habit.getId();
+            List<HabitDatabaseHelperSync.PendingOperation> habitOps = opsByHabit.get(habit.getId());
+            if (habitOps != null) {
+                for (HabitDatabaseHelperSync.PendingOperation op : habitOps) {
+                    ops.add(op);
+                    opIds.add(op.id);
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "Error al procesar operación pendiente", e);
-                dbHelper.incrementRetryCount(op.id, e.getMessage());
             }
+            // El servidor identifica cada hábito por su serverId (0 = crear)
+            Long serverId = dbHelper.getServerId(habit.getId());
+            habit.setId(serverId != null && serverId > 0 ? serverId : 0);
         }
-        
-        return processedCount;
-    }
 
-    private boolean processOperation(HabitDatabaseHelperSync.PendingOperation op) {
         try {
-            if (op.entityType.equals("HABIT")) {
-                Habit habit = gson.fromJson(op.entityData, Habit.class);
-                
-                if (op.operationType.equals("CREATE")) {
-                    apiHelper.createHabit(habit, new HabitApiHelper.OnHabitSavedListener() {
-                        @Override
-                        public void onSuccess(Habit createdHabit) {
-                            dbHelper.markHabitAsSynced(op.entityId, createdHabit.getId());
-                        }
-
-                        @Override
-                        public void onError(String error) {
-                            Log.e(TAG, "Error al procesar CREATE: " + error);
-                        }
-                    });
-                    return true;
-                } else if (op.operationType.equals("UPDATE")) {
-                    Long serverId = dbHelper.getServerId(op.entityId);
-                    if (serverId != null && serverId > 0) {
-                        apiHelper.updateHabit(serverId, habit, new HabitApiHelper.OnHabitSavedListener() {
-                            @Override
-                            public void onSuccess(Habit updatedHabit) {
-                                dbHelper.markHabitAsSynced(op.entityId, updatedHabit.getId());
-                            }
-
-                            @Override
-                            public void onError(String error) {
-                                Log.e(TAG, "Error al procesar UPDATE: " + error);
-                            }
-                        });
-                        return true;
-                    }
-                } else if (op.operationType.equals("DELETE")) {
-                    Long serverId = dbHelper.getServerId(op.entityId);
-                    if (serverId != null && serverId > 0) {
-                        apiHelper.deleteHabit(serverId, new HabitApiHelper.OnHabitDeletedListener() {
-                            @Override
-                            public void onSuccess() {
-                                // Ya está eliminado localmente
-                            }
-
-                            @Override
-                            public void onError(String error) {
-                                Log.e(TAG, "Error al procesar DELETE: " + error);
-                            }
-                        });
-                        return true;
-                    }
+            List<Habit> serverHabits = apiHelper.syncHabitsBlocking(batch);
+            // La respuesta debe traer los hábitos en el mismo orden que el lote enviado
+            if (serverHabits == null || serverHabits.size() != localIds.length) {
+                throw new IOException("Respuesta de habits/sync inesperada: " + (serverHabits == null ? 0
+                        : serverHabits.size()) + " de " + localIds.length + " hábitos");
+            }
+            dbHelper.applyBatchSyncResult(localIds, serverHabits, opIds);
+
+            int acked = 0;
+            for (Habit serverHabit : serverHabits) {
+                if (serverHabit.getId() > 0) {
+                    acked++;
                 }
             }
-            return false;
-        } catch (Exception e) {
-            Log.e(TAG, "Error al procesar operación", e);
-            return false;
+            Log.d(TAG, "Lote " + number + "/" + batches + ": " + acked + " de " + localIds.length
+                    + " hábitos confirmados, " + opIds.size() + " operaciones resueltas en "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+            return acked;
+        } catch (IOException e) {
+            // Los hábitos siguen marcados como no sincronizados y sus operaciones esperan al siguiente intento
+            Log.e(TAG, "Lote " + number + "/" + batches + " de " + localIds.length + " hábitos falló en "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms: " + e.getMessage());
+            for (HabitDatabaseHelperSync.PendingOperation op : ops) {
+                recordFailure(op, e.getMessage());
+            }
+            return 0;
+        }
+    }
+
+    private boolean isBatchable(HabitDatabaseHelperSync.PendingOperation op) {
+        return "HABIT".equals(op.entityType)
+                && ("CREATE".equals(op.operationType) || "UPDATE".equals(op.operationType));
+    }
+
+    private int syncHabitsIndividually() throws InterruptedException {
+        List<Habit> unsyncedHabits = dbHelper.getUnsyncedHabits();
+        List<Future<Integer>> results = new ArrayList<>();
+        for (Habit habit : unsyncedHabits) {
+            results.add(requestExecutor.submit(() -> syncHabit(habit)));
+        }
+        int acked = sum(results);
+        if (!unsyncedHabits.isEmpty()) {
+            Log.d(TAG, "Hábitos individuales: " + acked + " de " + unsyncedHabits.size() + " confirmados");
         }
+        return acked;
     }
 
-    private void downloadFromServer() {
-        // Descargar hábitos del servidor y actualizar base de datos local (SQLite)
-        apiHelper.getAllHabits(new HabitApiHelper.OnHabitsLoadedListener() {
-            @Override
-            public void onSuccess(List<Habit> serverHabits) {
-                executorService.execute(() -> {
-                    // 1. Obtener todos los hábitos locales que están sincronizados (tienen serverId)
-                    List<Habit> localSyncedHabits = dbHelper.getSyncedHabits();
-                    
-                    // 2. Crear un conjunto de serverIds que vienen del servidor
-                    java.util.Set<Long> serverIds = new java.util.HashSet<>();
-                    for (Habit habit : serverHabits) {
-                        serverIds.add(habit.getId());
-                    }
-                    
-                    // 3. Eliminar hábitos locales que tienen serverId pero no están en el servidor
-                    int deletedCount = 0;
-                    for (Habit localHabit : localSyncedHabits) {
-                        Long serverId = dbHelper.getServerId(localHabit.getId());
-                        if (serverId != null && serverId > 0 && !serverIds.contains(serverId)) {
-                            // Este hábito existe localmente con serverId, pero no está en el servidor
-                            // Eliminarlo localmente
-                            dbHelper.deleteHabit(localHabit.getId());
-                            deletedCount++;
-                            Log.d(TAG, "Eliminado hábito local que ya no existe en servidor: " + localHabit.getTitle() + " (serverId: " + serverId + ")");
-                        }
-                    }
-                    
-                    // 4. Upsert de los hábitos del servidor
-                    int count = 0;
-                    for (Habit habit : serverHabits) {
-                        // Upsert: actualizar si existe, insertar si no
-                        long localId = dbHelper.upsertHabitFromServer(habit, habit.getId());
-                        if (localId > 0) {
-                            count++;
-                        }
-                    }
-                    
-                    Log.d(TAG, "Descargados " + count + " hábitos del servidor (de " + serverHabits.size() + " totales)");
-                    if (deletedCount > 0) {
-                        Log.d(TAG, "Eliminados " + deletedCount + " hábitos locales que ya no existen en el servidor");
-                    }
-                    
-                    // Obtener los hábitos actualizados de la base de datos local
-                    List<Habit> updatedHabits = dbHelper.getAllHabits();
-                    Log.d(TAG, "Hábitos en base de datos local después de descarga: " + updatedHabits.size());
-                    
-                    // Notificar que se completó la sincronización
-                    isSyncing = false;
-                    if (currentSyncListener != null) {
-                        // Contar solo los hábitos descargados como elementos sincronizados
-                        currentSyncListener.onSyncCompleted(count);
-                    }
-                    Log.d(TAG, "Sincronización completada: " + count + " hábitos descargados, " + deletedCount + " eliminados");
-                });
+    private int syncHabit(Habit habit) {
+        try {
+            Long serverId = dbHelper.getServerId(habit.getId());
+            Habit saved;
+            if (serverId != null && serverId > 0) {
+                // Actualizar hábito existente
+                saved = apiHelper.updateHabitBlocking(serverId, habit);
+            } else {
+                // Crear nuevo hábito
+                saved = apiHelper.createHabitBlocking(habit);
             }
+            // Marcar como sincronizado y guardar serverId
+            dbHelper.markHabitAsSynced(habit.getId(), saved.getId());
+            return 1;
+        } catch (IOException e) {
+            Log.e(TAG, "Error al sincronizar hábito " + habit.getId() + ": " + e.getMessage());
+            return 0;
+        }
+    }
 
-            @Override
-            public void onError(String error) {
-                Log.e(TAG, "Error al descargar hábitos: " + error);
-                isSyncing = false;
-                if (currentSyncListener != null) {
-                    currentSyncListener.onSyncError(error);
+    /**
+     * Envía los puntos de los completados encolados por completeHabit (operaciones COMPLETE),
+     * un Score por petición a scores, repartidos en el pool de peticiones. El estado completado
+     * ya viajó con el hábito en el paso 1 (completeHabit lo deja como no sincronizado). Los de
+     * hábitos que aún no tienen serverId esperan a que se creen en el servidor; los de hábitos
+     * eliminados localmente se descartan. También envía las CREATE SCORE que encolaban las
+     * versiones anteriores (ver readCompletion).
+     * @return Número de completados confirmados por el servidor
+     */
+    private int syncCompletions() throws InterruptedException {
+        long now = System.currentTimeMillis() / 1000;
+        Map<Long, Long> serverIds = null;
+        List<Future<Integer>> results = new ArrayList<>();
+        for (HabitDatabaseHelperSync.PendingOperation op : dbHelper.getAllPendingOperations()) {
+            if (!isScoreOperation(op) || op.nextAttemptAt > now) {
+                continue;
+            }
+            HabitCompletion completion = readCompletion(op);
+            if (completion == null) {
+                dbHelper.moveToDeadLetter(op.id, "Score sin hábito local");
+                continue;
+            }
+            if (serverIds == null) {
+                serverIds = dbHelper.getServerIdsByLocalId();
+            }
+            Long serverId = serverIds.get(completion.getHabitId());
+            if (serverId == null || serverId <= 0) {
+                if (dbHelper.getHabitById(completion.getHabitId()) == null) {
+                    // El hábito se eliminó antes de que el completado llegara al servidor
+                    dbHelper.deletePendingOperation(op.id);
                 }
+                continue;
             }
-        });
+            String title = completion.getHabitTitle();
+            if (title == null) {
+                title = dbHelper.getHabitById(completion.getHabitId()).getTitle();
+            }
+            // El servidor identifica el hábito por su serverId
+            Score score = new Score(serverId, title, completion.getPoints());
+            score.setDate(new Date(completion.getCompletedAt() * 1000));
+            results.add(requestExecutor.submit(() -> sendCompletionScore(op, score)));
+        }
+        int acked = sum(results);
+        if (!results.isEmpty()) {
+            Log.d(TAG, "Completados: " + acked + " de " + results.size() + " scores confirmados");
+        }
+        return acked;
+    }
+
+    /**
+     * Operaciones que se envían como Score: los completados (COMPLETION) y las CREATE SCORE
+     * que quedaron en la cola de versiones anteriores.
+     */
+    private static boolean isScoreOperation(HabitDatabaseHelperSync.PendingOperation op) {
+        return "COMPLETION".equals(op.entityType)
+                || ("SCORE".equals(op.entityType) && "CREATE".equals(op.operationType));
+    }
+
+    /**
+     * Lee el completado de una operación. Las CREATE SCORE antiguas guardaban un Score cuyo
+     * habitId podía ser local o del servidor, así que el hábito se toma de scores.habit_id
+     * (entity_id es el id local del score).
+     * @return null si el score ya no está enlazado a ningún hábito local
+     */
+    private HabitCompletion readCompletion(HabitDatabaseHelperSync.PendingOperation op) {
+        if ("COMPLETION".equals(op.entityType)) {
+            return gson.fromJson(op.entityData, HabitCompletion.class);
+        }
+        Long habitId = dbHelper.getScoreHabitId(op.entityId);
+        if (habitId == null) {
+            return null;
+        }
+        Score score = gson.fromJson(op.entityData, Score.class);
+        long completedAt = score.getDate() != null ? score.getDate().getTime() / 1000 : op.createdAt;
+        return new HabitCompletion(habitId, score.getHabitTitle(), score.getPoints(),
+                HabitCompletion.SOURCE_MANUAL, completedAt);
+    }
+
+    /**
+     * Envía el score de un completado y, solo si el servidor lo confirma, borra su operación.
+     * Si falla, se reprograma con espera exponencial.
+     * @return 1 si el servidor lo confirmó, 0 si no
+     */
+    private int sendCompletionScore(HabitDatabaseHelperSync.PendingOperation op, Score score) {
+        try {
+            scoreApiHelper.createScoreBlocking(score);
+            dbHelper.deletePendingOperation(op.id);
+            return 1;
+        } catch (IOException e) {
+            Log.e(TAG, "Error al enviar score del completado " + op.entityId + ": " + e.getMessage());
+            recordFailure(op, e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Procesa las operaciones pendientes que no viajan en lote. Las de una misma entidad se
+     * ejecutan en orden en una sola tarea (un UPDATE depende de su CREATE) y las de entidades
+     * distintas en paralelo. Cada operación se borra solo cuando el servidor la confirma; si
+     * falla, suma un reintento y las siguientes de esa entidad esperan a la próxima sincronización.
+     * @return Número de operaciones confirmadas
+     */
+    private int processPendingOperations() throws InterruptedException {
+        long now = System.currentTimeMillis() / 1000;
+        Map<String, List<HabitDatabaseHelperSync.PendingOperation>> opsByEntity = new LinkedHashMap<>();
+        for (HabitDatabaseHelperSync.PendingOperation op : dbHelper.getAllPendingOperations()) {
+            if (batchSyncEnabled && isBatchable(op)) {
+                // Ya se enviaron en el lote de syncHabitsInBatches
+                continue;
+            }
+            if (isScoreOperation(op)) {
+                // Las envía syncCompletions
+                continue;
+            }
+            if (!"HABIT".equals(op.entityType)) {
+                // No hay endpoint para esta operación: se aparta para que no quede en la cola para siempre
+                dbHelper.moveToDeadLetter(op.id, "Operación sin envío: " + op.operationType + " " + op.entityType);
+                continue;
+            }
+            String key = op.entityType + ":" + op.entityId;
+            List<HabitDatabaseHelperSync.PendingOperation> ops = opsByEntity.get(key);
+            if (ops == null) {
+                ops = new ArrayList<>();
+                opsByEntity.put(key, ops);
+            }
+            ops.add(op);
+        }
+
+        // Las entidades se encolan en orden de prioridad (getAllPendingOperations ya viene ordenado)
+        List<Future<Integer>> results = new ArrayList<>();
+        for (List<HabitDatabaseHelperSync.PendingOperation> ops : opsByEntity.values()) {
+            if (ops.get(0).nextAttemptAt > now) {
+                // La primera operación aún está en espera y las demás dependen de ella
+                continue;
+            }
+            results.add(requestExecutor.submit(() -> processEntityOperations(ops)));
+        }
+        return sum(results);
+    }
+
+    private int processEntityOperations(List<HabitDatabaseHelperSync.PendingOperation> ops) {
+        int acked = 0;
+        for (HabitDatabaseHelperSync.PendingOperation op : ops) {
+            try {
+                processOperation(op);
+                dbHelper.deletePendingOperation(op.id);
+                acked++;
+            } catch (Exception e) {
+                Log.e(TAG, "Error al procesar operación pendiente " + op.id + ": " + e.getMessage());
+                recordFailure(op, e.getMessage());
+                break;
+            }
+        }
+        return acked;
+    }
+
+    /**
+     * Reprograma una operación fallida con espera exponencial y jitter, o la mueve a
+     * dead_letter_operations si ya agotó MAX_ATTEMPTS intentos.
+     */
+    private void recordFailure(HabitDatabaseHelperSync.PendingOperation op, String error) {
+        int attempts = op.retryCount + 1;
+        if (attempts >= MAX_ATTEMPTS) {
+            Log.w(TAG, "Operación " + op.operationType + " de " + op.entityType + " " + op.entityId
+                    + " descartada tras " + attempts + " intentos: " + error);
+            dbHelper.moveToDeadLetter(op.id, error);
+            return;
+        }
+        long delay = RetryBackoff.delaySeconds(attempts, random);
+        dbHelper.scheduleRetry(op.id, error, System.currentTimeMillis() / 1000 + delay);
+        Log.d(TAG, "Operación " + op.id + " reintentará en " + delay + " s (intento " + attempts + ")");
+    }
+
+    /**
+     * Ejecuta una operación pendiente de hábito y espera a que el servidor la confirme.
+     * @throws IOException Si el servidor no la confirma (la operación se reintentará)
+     */
+    private void processOperation(HabitDatabaseHelperSync.PendingOperation op) throws IOException {
+        if (op.operationType.equals("DELETE")) {
+            // La fila local ya no existe: el serverId se guardó como entity_data al encolar
+            Long serverId = parseServerId(op.entityData);
+            if (serverId == null) {
+                throw new IOException("DELETE sin serverId");
+            }
+            apiHelper.deleteHabitBlocking(serverId);
+            return;
+        }
+
+        if (dbHelper.getHabitById(op.entityId) == null) {
+            // El hábito se eliminó localmente después de encolar la operación: ya no hay nada que enviar
+            Log.d(TAG, "Operación " + op.operationType + " obsoleta para hábito " + op.entityId);
+            return;
+        }
+        if (dbHelper.isHabitSynced(op.entityId)) {
+            // Su estado actual ya está confirmado en el servidor (p. ej. por syncHabitsIndividually)
+            return;
+        }
+        Habit habit = gson.fromJson(op.entityData, Habit.class);
+        Long serverId = dbHelper.getServerId(op.entityId);
+        if (op.operationType.equals("CREATE") && (serverId == null || serverId <= 0)) {
+            Habit createdHabit = apiHelper.createHabitBlocking(habit);
+            dbHelper.markHabitAsSynced(op.entityId, createdHabit.getId());
+        } else if (op.operationType.equals("CREATE") || op.operationType.equals("UPDATE")) {
+            // Un CREATE fusionado con ediciones posteriores puede encontrar el hábito ya creado
+            if (serverId == null || serverId <= 0) {
+                throw new IOException("El hábito " + op.entityId + " aún no tiene serverId");
+            }
+            Habit updatedHabit = apiHelper.updateHabitBlocking(serverId, habit);
+            dbHelper.markHabitAsSynced(op.entityId, updatedHabit.getId());
+        } else {
+            throw new IOException("Operación desconocida: " + op.operationType);
+        }
+    }
+
+    private static Long parseServerId(String entityData) {
+        try {
+            long serverId = Long.parseLong(entityData);
+            return serverId > 0 ? serverId : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Descarga solo los cambios desde la última marca de agua (GET habits?since=) y los aplica
+     * por bloques según llegan, leyendo la respuesta en streaming; la marca solo avanza cuando
+     * se confirma el último bloque. Si el servidor no devuelve watermark
+     * es que ignoró "since" y mandó la colección completa: en ese caso se aplica el diff completo.
+     * @return Número de hábitos descargados
+     * @throws IOException Si la descarga falla o los cambios no se pudieron guardar
+     */
+    private int downloadFromServer() throws IOException {
+        long since = dbHelper.getHabitsWatermark();
+        // Los hábitos pasan del parser al merge por bloques, sin construir la lista completa
+        return dbHelper.applyHabitsDownload(consumer -> apiHelper.streamHabitsSinceBlocking(since, consumer));
+    }
+
+    /**
+     * Espera a que terminen las tareas y suma sus resultados. Una tarea que lanzó una
+     * excepción no confirmó nada y cuenta como 0.
+     */
+    private int sum(List<Future<Integer>> results) throws InterruptedException {
+        int total = 0;
+        for (Future<Integer> result : results) {
+            try {
+                total += result.get();
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Tarea de sincronización fallida", e.getCause());
+            }
+        }
+        return total;
     }
-    
-    private SyncListener currentSyncListener;
 
     public boolean isSyncing() {
-        return isSyncing;
+        return isSyncing.get();
     }
 }
-
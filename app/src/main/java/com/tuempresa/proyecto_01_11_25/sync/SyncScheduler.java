@@ -0,0 +1,90 @@
+package com.tuempresa.proyecto_01_11_25.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.OutOfQuotaPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Programa SyncWorker con WorkManager: una sincronización periódica única (con red y batería
+ * no baja) y, cuando la cola de operaciones pendientes crece, una sincronización urgente.
+ * Ambas usan nombre único con KEEP, así las peticiones repetidas se colapsan en un solo trabajo.
+ */
+public class SyncScheduler {
+    private static final String TAG = "SyncScheduler";
+    private static final String PERIODIC_WORK_NAME = "habit_sync_periodic";
+    private static final String EXPEDITED_WORK_NAME = "habit_sync_now";
+    private static final long PERIODIC_INTERVAL_HOURS = 1;
+    private static final long PERIODIC_FLEX_MINUTES = 15;
+    private static final long BACKOFF_SECONDS = 30;
+    // Operaciones listas para enviar a partir de las cuales no se espera a la sincronización periódica
+    private static final int EXPEDITE_THRESHOLD = 20;
+
+    private static SyncScheduler instance;
+    private final WorkManager workManager;
+
+    private SyncScheduler(Context context) {
+        this.workManager = WorkManager.getInstance(context.getApplicationContext());
+    }
+
+    public static synchronized SyncScheduler getInstance(Context context) {
+        if (instance == null) {
+            instance = new SyncScheduler(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Registra la sincronización periódica. Si ya estaba registrada se conserva la existente.
+     */
+    public void schedulePeriodicSync() {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .setRequiresBatteryNotLow(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(SyncWorker.class,
+                PERIODIC_INTERVAL_HOURS, TimeUnit.HOURS, PERIODIC_FLEX_MINUTES, TimeUnit.MINUTES)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_SECONDS, TimeUnit.SECONDS)
+                .build();
+        workManager.enqueueUniquePeriodicWork(PERIODIC_WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    /**
+     * Pide una sincronización urgente en cuanto haya red. Si ya hay una pendiente o en curso,
+     * la petición se descarta. Sin cuota de trabajo urgente se ejecuta como trabajo normal.
+     */
+    public void requestSyncNow() {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(SyncWorker.class)
+                .setConstraints(constraints)
+                .setExpedited(OutOfQuotaPolicy.RUN_AS_NON_EXPEDITED_WORK_REQUEST)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_SECONDS, TimeUnit.SECONDS)
+                .build();
+        workManager.enqueueUniqueWork(EXPEDITED_WORK_NAME, ExistingWorkPolicy.KEEP, request);
+    }
+
+    /**
+     * Se llama al encolar una operación pendiente.
+     * @param pendingCount Operaciones que se pueden enviar ya (ver getDuePendingOperationCount);
+     *                     las que esperan reintento no cuentan, porque un trabajo urgente no las vaciaría
+     */
+    public void onPendingOperationsChanged(long pendingCount) {
+        if (pendingCount >= EXPEDITE_THRESHOLD) {
+            Log.d(TAG, pendingCount + " operaciones pendientes, sincronización urgente solicitada");
+            requestSyncNow();
+        }
+    }
+}
@@ -1,17 +1,28 @@
 package com.tuempresa.proyecto_01_11_25.sync;
 
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
 import android.content.Context;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.work.ForegroundInfo;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 
+import com.tuempresa.proyecto_01_11_25.R;
+
 /**
  * Worker de WorkManager para sincronización automática en segundo plano.
+ * Lo programa SyncScheduler; la sincronización se ejecuta en el hilo del worker y este
+ * termina cuando el servidor ha respondido a todo.
  */
 public class SyncWorker extends Worker {
     private static final String TAG = "SyncWorker";
+    private static final String CHANNEL_ID = "habit_sync";
+    private static final int NOTIFICATION_ID = 1001;
+    private static final int MAX_RUN_ATTEMPTS = 5;
 
     public SyncWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
         super(context, workerParams);
@@ -21,36 +32,40 @@ public class SyncWorker extends Worker {
     @Override
     public Result doWork() {
         Log.d(TAG, "Iniciando sincronización automática");
-        
+
         try {
-            SyncManager syncManager = SyncManager.getInstance(getApplicationContext());
-            
-            // Sincronizar de forma síncrona
-            syncManager.syncAll(new SyncManager.SyncListener() {
-                @Override
-                public void onSyncStarted() {
-                    Log.d(TAG, "Sincronización iniciada");
-                }
-
-                @Override
-                public void onSyncCompleted(int syncedCount) {
-                    Log.d(TAG, "Sincronización completada: " + syncedCount + " elementos");
-                }
-
-                @Override
-                public void onSyncError(String error) {
-                    Log.e(TAG, "Error en sincronización: " + error);
-                }
-            });
-            
-            // Esperar un poco para que la sincronización asíncrona termine
-            Thread.sleep(5000);
-            
+            int syncedCount = SyncManager.getInstance(getApplicationContext()).syncBlocking();
+            if (syncedCount < 0) {
+                // Ya había una sincronización en curso que cubre este trabajo
+                Log.d(TAG, "Sincronización ya en curso, se omite");
+            } else {
+                Log.d(TAG, "Sincronización completada: " + syncedCount + " elementos");
+            }
             return Result.success();
         } catch (Exception e) {
             Log.e(TAG, "Error en SyncWorker", e);
-            return Result.retry(); // Reintentar si falla
+            // Las operaciones fallidas quedan reprogramadas en la cola; WorkManager reintenta con backoff
+            return getRunAttemptCount() < MAX_RUN_ATTEMPTS ? Result.retry() : Result.failure();
         }
     }
-}
 
+    /**
+     * Notificación requerida cuando el trabajo urgente se ejecuta como servicio en primer plano
+     * (Android 11 o anterior).
+     */
+    @NonNull
+    @Override
+    public ForegroundInfo getForegroundInfo() {
+        Context context = getApplicationContext();
+        NotificationManager notificationManager = context.getSystemService(NotificationManager.class);
+        notificationManager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                context.getString(R.string.sync_channel_name), NotificationManager.IMPORTANCE_MIN));
+
+        Notification notification = new Notification.Builder(context, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_launcher_foreground)
+                .setContentTitle(context.getString(R.string.sync_notification_title))
+                .setOngoing(true)
+                .build();
+        return new ForegroundInfo(NOTIFICATION_ID, notification);
+    }
+}
@@ -1,9 +1,7 @@
 package com.tuempresa.proyecto_01_11_25.ui;
 
 import android.Manifest;
-import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.media.Image;
 import android.os.Bundle;
@@ -32,10 +30,8 @@ import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
 import com.tuempresa.proyecto_01_11_25.R;
 import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelper;
 import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.repository.HabitRepository;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -59,7 +55,6 @@ public class CameraActivity extends AppCompatActivity {
     private long habitId = -1;
     private String habitType = null;
     private HabitDatabaseHelper dbHelper;
-    private SharedPreferences progressPrefs;
     
     // Control de debounce para evitar duplicación
     private long lastDetectionTime = 0;
@@ -80,8 +75,7 @@ public class CameraActivity extends AppCompatActivity {
         habitType = getIntent().getStringExtra("habit_type");
         
         if (habitId > 0) {
-            dbHelper = new HabitDatabaseHelper(this);
-            progressPrefs = getSharedPreferences("habit_progress", Context.MODE_PRIVATE);
+            dbHelper = HabitDatabaseHelper.getInstance(this);
             
             // Actualizar hint para lectura de páginas
             if ("READ_BOOK".equals(habitType)) {
@@ -234,11 +228,9 @@ public class CameraActivity extends AppCompatActivity {
 
         // Si es para READ_BOOK, agregar página al progreso (SOLO UNA VEZ)
         if (habitId > 0 && "READ_BOOK".equals(habitType) && dbHelper != null) {
-            Habit habit = dbHelper.getHabitById(habitId);
+            Habit habit = HabitRepository.getInstance(this).getCachedHabit(habitId);
             if (habit != null) {
-                String todayKey = "read_" + habitId + "_" + getTodayKey();
-                int currentPages = progressPrefs.getInt(todayKey, 0);
-                progressPrefs.edit().putInt(todayKey, currentPages + 1).apply();
+                dbHelper.incrementProgress(habitId, HabitDatabaseHelper.today(), 1);
                 
                 runOnUiThread(() -> {
                     Toast.makeText(this, "✅ Página detectada! (+1 página)", Toast.LENGTH_SHORT).show();
@@ -259,10 +251,6 @@ public class CameraActivity extends AppCompatActivity {
             finish();
         }, 1000);
     }
-    
-    private String getTodayKey() {
-        return new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
-    }
 
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions,
@@ -43,13 +43,13 @@ public class ConfigureHabitActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_configure_habit);
 
-        dbHelper = new HabitDatabaseHelper(this);
+        dbHelper = HabitDatabaseHelper.getInstance(this);
         habitRepository = HabitRepository.getInstance(this);
         
         // Verificar si es edición
         habitIdToEdit = getIntent().getLongExtra("habit_id", -1);
         if (habitIdToEdit > 0) {
-            habitToEdit = dbHelper.getHabitById(habitIdToEdit);
+            habitToEdit = habitRepository.getCachedHabit(habitIdToEdit);
             if (habitToEdit != null) {
                 habitType = habitToEdit.getType();
             } else {
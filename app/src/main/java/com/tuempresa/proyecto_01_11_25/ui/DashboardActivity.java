@@ -23,22 +23,24 @@ import com.tuempresa.proyecto_01_11_25.R;
 import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelper;
 import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelperSync;
 import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.model.HabitCompletion;
 import com.tuempresa.proyecto_01_11_25.model.HabitEvent;
 import com.tuempresa.proyecto_01_11_25.model.HabitEventStore;
+import com.tuempresa.proyecto_01_11_25.model.HabitPage;
 import com.tuempresa.proyecto_01_11_25.network.ConnectionMonitor;
 import com.tuempresa.proyecto_01_11_25.repository.HabitRepository;
 import com.tuempresa.proyecto_01_11_25.sensors.AccelerometerSensorManager;
 import com.tuempresa.proyecto_01_11_25.sensors.GyroSensorManager;
 import com.tuempresa.proyecto_01_11_25.sensors.LightSensorManager;
 import com.tuempresa.proyecto_01_11_25.sensors.StepSensorManager;
+import com.tuempresa.proyecto_01_11_25.utils.FutureScope;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 public class DashboardActivity extends AppCompatActivity {
 
@@ -52,6 +54,7 @@ public class DashboardActivity extends AppCompatActivity {
     private static final long LIGHT_DEBOUNCE_MS = 5000; // 5 segundos debounce (aumentado para evitar parpadeos)
     private static final long RECREATION_COOLDOWN_MS = 8000; // 8 segundos de cooldown después de recrear
     private static final long SETTINGS_CHANGE_COOLDOWN_MS = 2000; // 2 segundos después de cambiar settings
+    private static final int HABITS_PAGE_SIZE = 20; // Hábitos por página en la lista
 
     private RecyclerView rv;
     private android.widget.ImageButton btnMap;
@@ -62,13 +65,15 @@ public class DashboardActivity extends AppCompatActivity {
     private GyroSensorManager gyroSensor;
     private AccelerometerSensorManager accelerometerSensor;
 
-    private List<Habit> habits;
+    private List<Habit> habits = new ArrayList<>(); // Solo las páginas ya cargadas
+    private HabitPage.Key nextPageKey;
+    private int pageGeneration = 0; // Descarta páginas de una carga anterior
     private FusedLocationProviderClient fused;
     private Handler mainHandler;
     private SharedPreferences prefs;
     private HabitDatabaseHelper dbHelper; // Mantener para compatibilidad
     private HabitRepository habitRepository; // Para consumo de API
-    private ExecutorService executorService;
+    private FutureScope futureScope; // Cancela las lecturas pendientes al destruir la Activity
     private ConnectionMonitor connectionMonitor;
     private android.view.View connectionIndicator;
 
@@ -87,8 +92,8 @@ public class DashboardActivity extends AppCompatActivity {
         // Inicializar handler PRIMERO para poder usarlo en el cooldown
         mainHandler = new Handler(Looper.getMainLooper());
 
-        // Inicializar ExecutorService para operaciones en segundo plano
-        executorService = Executors.newSingleThreadExecutor();
+        // Trabajo en segundo plano ligado a esta Activity (se cancela en onDestroy)
+        futureScope = FutureScope.of(this);
 
         // Cargar estado persistente con valores por defecto: modo claro y foco
         // desactivado
@@ -177,7 +182,7 @@ public class DashboardActivity extends AppCompatActivity {
         }
 
         // 🔥 Inicializar base de datos (mantener para compatibilidad)
-        dbHelper = new HabitDatabaseHelper(this);
+        dbHelper = HabitDatabaseHelper.getInstance(this);
 
         // 🔥 Inicializar HabitEventStore para cargar eventos guardados
         HabitEventStore.init(this);
@@ -196,6 +201,7 @@ public class DashboardActivity extends AppCompatActivity {
                 this::completeDemoHabit,
                 this::editHabit,
                 this::deleteHabit);
+        adapter.setOnLoadMore(this::loadNextHabitsPage);
         rv.setAdapter(adapter);
 
         btnMap = findViewById(R.id.btnMap);
@@ -724,21 +730,11 @@ public class DashboardActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
 
-        // Cerrar ExecutorService
-        if (executorService != null && !executorService.isShutdown()) {
-            executorService.shutdown();
-        }
-
         // Limpiar handlers pendientes
         if (mainHandler != null) {
             mainHandler.removeCallbacksAndMessages(null);
         }
 
-        // Cerrar ExecutorService
-        if (executorService != null && !executorService.isShutdown()) {
-            executorService.shutdown();
-        }
-
         // Detener sensores
         if (walkSensor != null)
             walkSensor.stop();
@@ -844,22 +840,14 @@ public class DashboardActivity extends AppCompatActivity {
                 // Pequeño delay para que se recargue la lista
                 mainHandler.postDelayed(() -> {
                     // Buscar el hábito de leer recién creado (usar habits actuales)
-                    Habit readingHabit = null;
-                    if (habits != null) {
-                        for (Habit habit : habits) {
-                            if (habit.getType() == Habit.HabitType.READ_BOOK) {
-                                readingHabit = habit;
-                                break;
-                            }
+                    findHabitByType(Habit.HabitType.READ_BOOK, false, readingHabit -> {
+                        if (readingHabit != null) {
+                            Intent cameraIntent = new Intent(this, CameraActivity.class);
+                            cameraIntent.putExtra("habit_id", readingHabit.getId());
+                            cameraIntent.putExtra("habit_type", "READ_BOOK");
+                            startActivityForResult(cameraIntent, 200);
                         }
-                    }
-
-                    if (readingHabit != null) {
-                        Intent cameraIntent = new Intent(this, CameraActivity.class);
-                        cameraIntent.putExtra("habit_id", readingHabit.getId());
-                        cameraIntent.putExtra("habit_type", "READ_BOOK");
-                        startActivityForResult(cameraIntent, 200);
-                    }
+                    });
                 }, 500);
             }
         }
@@ -872,61 +860,95 @@ public class DashboardActivity extends AppCompatActivity {
     }
 
     /**
-     * Carga hábitos usando Repository (SQLite + API)
+     * Carga la primera página de hábitos usando Repository (SQLite) y la revalida en modo
+     * stale-while-revalidate: si hay conexión se sincroniza con la API y la página solo se
+     * vuelve a pintar si la sincronización cambió algún hábito.
+     * Las páginas siguientes se piden a medida que el usuario se desplaza.
      */
     private void loadHabitsFromRepository() {
         if (habitRepository == null) {
             habitRepository = HabitRepository.getInstance(this);
         }
 
-        habitRepository.getAllHabits(new HabitRepository.RepositoryCallback<List<Habit>>() {
-            @Override
-            public void onSuccess(List<Habit> habitsList) {
-                runOnUiThread(() -> {
-                    habits = habitsList;
-                    if (adapter != null) {
-                        adapter.updateHabits(habitsList);
-                    }
-                });
+        final int generation = ++pageGeneration;
+        loadProgressSnapshot();
+        futureScope.load(habitRepository.getHabitsPage(null, HABITS_PAGE_SIZE), page -> {
+            if (generation != pageGeneration) {
+                return;
             }
+            showFirstHabitsPage(page);
+            habitRepository.revalidateFirstHabitsPage(page, HABITS_PAGE_SIZE, updated -> runOnUiThread(() -> {
+                if (!futureScope.isActive() || generation != pageGeneration) {
+                    return;
+                }
+                // Descarta las páginas siguientes que aún estén en vuelo
+                ++pageGeneration;
+                loadProgressSnapshot();
+                showFirstHabitsPage(updated);
+            }));
+        }, error -> android.util.Log.e("Dashboard", "Error al cargar hábitos", error));
+    }
 
-            @Override
-            public void onError(String error) {
-                runOnUiThread(() -> {
-                    android.util.Log.e("Dashboard", "Error al cargar hábitos: " + error);
-                    // Fallback a SQLite local si falla la API
-                    if (dbHelper != null) {
-                        try {
-                            habits = dbHelper.getAllHabits();
-                            if (adapter != null) {
-                                adapter.updateHabits(habits);
-                            }
-                        } catch (Exception e) {
-                            android.util.Log.e("Dashboard", "Error al cargar desde SQLite", e);
-                        }
-                    }
-                });
+    private void showFirstHabitsPage(HabitPage page) {
+        habits = new ArrayList<>(page.getItems());
+        nextPageKey = page.getNextKey();
+        if (adapter != null) {
+            adapter.submitFirstPage(page.getItems(), page.hasMore());
+        }
+    }
+
+    /**
+     * Carga en segundo plano el progreso de hoy (páginas, vasos) que muestra la lista.
+     */
+    private void loadProgressSnapshot() {
+        futureScope.load(habitRepository.getProgressSnapshot(), snapshot -> {
+            if (adapter != null) {
+                adapter.setProgressSnapshot(snapshot);
             }
+        }, error -> android.util.Log.e("Dashboard", "Error al cargar progreso del día", error));
+    }
+
+    private void loadNextHabitsPage() {
+        final int generation = pageGeneration;
+        futureScope.load(habitRepository.getHabitsPage(nextPageKey, HABITS_PAGE_SIZE), page -> {
+            if (generation != pageGeneration) {
+                return;
+            }
+            habits.addAll(page.getItems());
+            nextPageKey = page.getNextKey();
+            adapter.appendPage(page.getItems(), page.hasMore());
+        }, error -> {
+            android.util.Log.e("Dashboard", "Error al cargar más hábitos", error);
+            adapter.onLoadMoreFailed();
         });
     }
 
     /**
-     * Refresca la lista de hábitos y actualiza el adapter en tiempo real
-     * Usa Repository para cargar desde SQLite + sincronizar con API
+     * Busca un hábito por tipo entre las páginas cargadas y, si no está, en la caché del
+     * repositorio (la lista paginada puede no contener todos los hábitos del usuario). La
+     * consulta al repositorio va en segundo plano; onResult recibe null si no hay ninguno.
      */
-    private void refreshHabitsList() {
+    private void findHabitByType(Habit.HabitType type, boolean pendingOnly, Consumer<Habit> onResult) {
+        for (Habit habit : habits) {
+            if (habit.getType() == type && (!pendingOnly || !habit.isCompleted())) {
+                onResult.accept(habit);
+                return;
+            }
+        }
         if (habitRepository == null) {
-            habitRepository = HabitRepository.getInstance(this);
+            onResult.accept(null);
+            return;
         }
+        futureScope.load(habitRepository.findHabitByType(type, pendingOnly), onResult,
+                error -> android.util.Log.e("Dashboard", "Error al buscar hábito por tipo", error));
+    }
 
-        // Usar Repository para refrescar (sincroniza con API si hay conexión)
+    /**
+     * Refresca la lista de hábitos y actualiza el adapter en tiempo real
+     * Usa Repository para cargar desde SQLite + sincronizar con API (una sola sincronización)
+     */
+    private void refreshHabitsList() {
         loadHabitsFromRepository();
-
-        // Forzar sincronización inmediata si hay conexión
-        if (connectionMonitor != null && connectionMonitor.isConnected()) {
-            android.util.Log.d("Dashboard", "Forzando sincronización inmediata...");
-            habitRepository.forceSync();
-        }
     }
 
     @Override
@@ -1017,9 +1039,6 @@ public class DashboardActivity extends AppCompatActivity {
             return; // Salir temprano para evitar inicializar sensores antes de recrear
         }
 
-        // Recargar hábitos usando Repository (sincroniza con API si hay conexión)
-        loadHabitsFromRepository();
-
         // Reinicializar sensores solo si están habilitados y no existen
         if (darkModeSensors && lightSensor == null) {
             android.util.Log.d("Dashboard", "onResume - Inicializando sensor de luz (dark_mode_sensors activado)");
@@ -1066,14 +1085,10 @@ public class DashboardActivity extends AppCompatActivity {
      */
     private void openCameraForReading() {
         // Buscar hábito activo de tipo READ_BOOK
-        Habit readingHabit = null;
-        for (Habit habit : habits) {
-            if (habit.getType() == Habit.HabitType.READ_BOOK) {
-                readingHabit = habit;
-                break;
-            }
-        }
+        findHabitByType(Habit.HabitType.READ_BOOK, false, this::openCameraForReading);
+    }
 
+    private void openCameraForReading(Habit readingHabit) {
         if (readingHabit != null) {
             // Existe hábito de leer, abrir cámara directamente
             Intent cameraIntent = new Intent(this, CameraActivity.class);
@@ -1102,65 +1117,50 @@ public class DashboardActivity extends AppCompatActivity {
      * Completa un hábito por su tipo (EXERCISE, WALK, READ, DEMO)
      */
     private void completeHabitByType(Habit.HabitType type) {
-        for (Habit habit : habits) {
-            if (habit.getType() == type && !habit.isCompleted()) {
-                habit.setCompleted(true);
-
-                // Actualizar en base de datos local
-                dbHelper.updateHabitCompleted(habit.getTitle(), true);
-
-                // Actualizar hábito en API (marcar como completado)
-                habitRepository.updateHabit(habit, new HabitRepository.RepositoryCallback<Habit>() {
-                    @Override
-                    public void onSuccess(Habit updatedHabit) {
-                        android.util.Log.d("Dashboard", "Hábito actualizado en API: " + updatedHabit.getTitle());
-                    }
-
-                    @Override
-                    public void onError(String error) {
-                        android.util.Log.e("Dashboard", "Error al actualizar hábito en API: " + error);
-                    }
-                });
-
-                // Agregar puntos (guarda en SQLite + API)
-                int points = habit.getPoints();
-                habitRepository.addScore(habit.getId(), habit.getTitle(), points,
-                        new HabitRepository.RepositoryCallback<Void>() {
-                            @Override
-                            public void onSuccess(Void data) {
-                                android.util.Log.d("Dashboard", "Score guardado: " + points + " puntos");
-                            }
-
-                            @Override
-                            public void onError(String error) {
-                                android.util.Log.e("Dashboard", "Error al guardar score: " + error);
-                            }
-                        });
+        findHabitByType(type, true, habit -> completeFoundHabit(type, habit));
+    }
 
-                // Guardar estado inmediatamente
-                saveHabitsState();
+    private void completeFoundHabit(Habit.HabitType type, Habit habit) {
+        if (habit != null) {
+            habit.setCompleted(true);
+
+            // Completado, puntos y cola de sincronización en una sola transacción. La escritura
+            // no se cancela con la Activity; solo el aviso del resultado depende de que siga viva.
+            // Si el sensor ya lo completó (WALK), no se vuelven a sumar puntos ni se anuncian.
+            int points = habit.getPoints();
+            String source = type == Habit.HabitType.READ ? HabitCompletion.SOURCE_CAMERA
+                    : HabitCompletion.SOURCE_SENSOR;
+            futureScope.onMain(habitRepository.completeHabit(habit.getId(), points, source),
+                    completed -> showCompletionResult(habit, points, completed),
+                    error -> android.util.Log.e("Dashboard", "Error al completar hábito", error));
+
+            // Guardar estado inmediatamente
+            saveHabitsState();
 
-                // Guardar evento en el mapa (excepto WALK que ya lo guarda StepSensorManager,
-                // READ lo guarda CameraActivity)
-                if (type == Habit.HabitType.EXERCISE) {
-                    addLocationEvent("Ejercicio ✅ Completado", HabitEvent.HabitType.EXERCISE);
-                }
-                // Nota: WALK ya guarda su evento en StepSensorManager, READ lo guarda
-                // CameraActivity, DEMO lo guarda en completeDemoHabit
+            // Guardar evento en el mapa (excepto WALK que ya lo guarda StepSensorManager,
+            // READ lo guarda CameraActivity)
+            if (type == Habit.HabitType.EXERCISE) {
+                addLocationEvent("Ejercicio ✅ Completado", HabitEvent.HabitType.EXERCISE);
+            }
+            // Nota: WALK ya guarda su evento en StepSensorManager, READ lo guarda
+            // CameraActivity, DEMO lo guarda en completeDemoHabit
 
-                // Actualizar UI
-                int position = habits.indexOf(habit);
-                if (position >= 0) {
-                    adapter.notifyItemChanged(position);
-                } else {
-                    adapter.notifyDataSetChanged();
-                }
+            // Actualizar UI
+            adapter.notifyHabitChanged(habit);
+        }
+    }
 
-                android.util.Log.d("Dashboard", "Hábito completado: " + habit.getTitle() + " (+" + points + " puntos)");
-                Toast.makeText(this, "✅ " + habit.getTitle() + " completado (+" + points + " pts)", Toast.LENGTH_SHORT)
-                        .show();
-                break;
-            }
+    /**
+     * Avisa del resultado de completeHabit: los puntos solo se muestran si se escribieron.
+     */
+    private void showCompletionResult(Habit habit, int points, boolean completed) {
+        if (completed) {
+            android.util.Log.d("Dashboard", "Hábito completado: " + habit.getTitle() + " (+" + points + " puntos)");
+            Toast.makeText(this, "✅ " + habit.getTitle() + " completado (+" + points + " pts)", Toast.LENGTH_SHORT)
+                    .show();
+        } else {
+            android.util.Log.d("Dashboard", "Hábito ya completado: " + habit.getTitle());
+            Toast.makeText(this, habit.getTitle() + " ya estaba completado", Toast.LENGTH_SHORT).show();
         }
     }
 
@@ -1169,14 +1169,9 @@ public class DashboardActivity extends AppCompatActivity {
         // Si ya está completado, desmarcarlo (toggle) - solo para DEMO
         if (h.isCompleted() && h.getType() == Habit.HabitType.DEMO) {
             h.setCompleted(false);
-            dbHelper.updateHabitCompleted(h.getTitle(), false);
+            dbHelper.updateHabitCompleted(h.getId(), false);
             saveHabitsState();
-            int position = habits.indexOf(h);
-            if (position >= 0) {
-                adapter.notifyItemChanged(position);
-            } else {
-                adapter.notifyDataSetChanged();
-            }
+            adapter.notifyHabitChanged(h);
             Toast.makeText(this, "Hábito desmarcado", Toast.LENGTH_SHORT).show();
             return;
         }
@@ -1200,45 +1195,15 @@ public class DashboardActivity extends AppCompatActivity {
             case DEMO:
                 // Completar DEMO manualmente
                 h.setCompleted(true);
-                dbHelper.updateHabitCompleted(h.getTitle(), true);
-
-                // Actualizar hábito en API
-                habitRepository.updateHabit(h, new HabitRepository.RepositoryCallback<Habit>() {
-                    @Override
-                    public void onSuccess(Habit updatedHabit) {
-                        android.util.Log.d("Dashboard", "Hábito DEMO actualizado en API");
-                    }
-
-                    @Override
-                    public void onError(String error) {
-                        android.util.Log.e("Dashboard", "Error al actualizar hábito DEMO en API: " + error);
-                    }
-                });
 
-                // Agregar puntos (guarda en SQLite + API)
+                // Completado y puntos en una sola transacción
                 int points = h.getPoints();
-                habitRepository.addScore(h.getId(), h.getTitle(), points,
-                        new HabitRepository.RepositoryCallback<Void>() {
-                            @Override
-                            public void onSuccess(Void data) {
-                                android.util.Log.d("Dashboard", "Score DEMO guardado: " + points + " puntos");
-                            }
-
-                            @Override
-                            public void onError(String error) {
-                                android.util.Log.e("Dashboard", "Error al guardar score DEMO: " + error);
-                            }
-                        });
+                futureScope.onMain(habitRepository.completeHabit(h.getId(), points, HabitCompletion.SOURCE_MANUAL),
+                        completed -> showCompletionResult(h, points, completed),
+                        error -> android.util.Log.e("Dashboard", "Error al completar hábito DEMO", error));
                 saveHabitsState();
                 addLocationEvent("Demo ✅ Completado", HabitEvent.HabitType.DEMO);
-                int position = habits.indexOf(h);
-                if (position >= 0) {
-                    adapter.notifyItemChanged(position);
-                } else {
-                    adapter.notifyDataSetChanged();
-                }
-                Toast.makeText(this, "✅ " + h.getTitle() + " completado (+" + points + " pts)", Toast.LENGTH_SHORT)
-                        .show();
+                adapter.notifyHabitChanged(h);
                 break;
             default:
                 Toast.makeText(this,
@@ -1267,34 +1232,19 @@ public class DashboardActivity extends AppCompatActivity {
                 .setPositiveButton("Eliminar", (dialog, which) -> {
                     // Usar habitRepository para eliminar (maneja sincronización automáticamente)
                     long habitId = habit.getId();
-                    if (habitId <= 0) {
-                        // Si no tiene ID, buscar por título
-                        habitId = dbHelper.getHabitIdByTitle(habit.getTitle());
-                    }
-
                     if (habitId > 0) {
-                        habitRepository.deleteHabit(habitId, new HabitRepository.RepositoryCallback<Void>() {
-                            @Override
-                            public void onSuccess(Void data) {
-                                runOnUiThread(() -> {
-                                    // Remover inmediatamente de la lista visual
-                                    if (adapter != null) {
-                                        adapter.removeHabit(habit);
-                                    }
-                                    habits.remove(habit);
-                                    Toast.makeText(DashboardActivity.this, "✅ Hábito eliminado", Toast.LENGTH_SHORT)
-                                            .show();
-                                });
-                            }
-
-                            @Override
-                            public void onError(String error) {
-                                runOnUiThread(() -> {
-                                    android.util.Log.e("Dashboard", "Error al eliminar hábito: " + error);
-                                    Toast.makeText(DashboardActivity.this, "❌ Error al eliminar el hábito",
-                                            Toast.LENGTH_SHORT).show();
-                                });
+                        futureScope.onMain(habitRepository.deleteHabit(habitId), done -> {
+                            // Remover inmediatamente de la lista visual
+                            if (adapter != null) {
+                                adapter.removeHabit(habit);
                             }
+                            habits.remove(habit);
+                            Toast.makeText(DashboardActivity.this, "✅ Hábito eliminado", Toast.LENGTH_SHORT)
+                                    .show();
+                        }, error -> {
+                            android.util.Log.e("Dashboard", "Error al eliminar hábito", error);
+                            Toast.makeText(DashboardActivity.this, "❌ Error al eliminar el hábito",
+                                    Toast.LENGTH_SHORT).show();
                         });
                     } else {
                         Toast.makeText(this, "❌ No se pudo encontrar el hábito", Toast.LENGTH_SHORT).show();
@@ -1,7 +1,8 @@
 package com.tuempresa.proyecto_01_11_25.ui;
 
 import android.content.Context;
-import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,15 +11,18 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.tuempresa.proyecto_01_11_25.R;
 import com.tuempresa.proyecto_01_11_25.model.Habit;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 
 public class HabitAdapter extends RecyclerView.Adapter<HabitAdapter.VH> {
 
@@ -34,31 +38,111 @@ public class HabitAdapter extends RecyclerView.Adapter<HabitAdapter.VH> {
         void onHabitDelete(Habit habit);
     }
 
-    private final List<Habit> data;
+    /**
+     * Se invoca cuando el usuario se acerca al final de las páginas cargadas.
+     */
+    public interface OnLoadMore {
+        void onLoadMore();
+    }
+
+    // Filas antes del final en las que se pide la siguiente página
+    private static final int PREFETCH_DISTANCE = 5;
+
+    /**
+     * Mismo hábito = mismo id; mismo contenido = mismo hash de los campos que muestra la tarjeta.
+     */
+    private static final DiffUtil.ItemCallback<Habit> DIFF_CALLBACK = new DiffUtil.ItemCallback<Habit>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Habit oldItem, @NonNull Habit newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Habit oldItem, @NonNull Habit newItem) {
+            return contentHash(oldItem) == contentHash(newItem);
+        }
+    };
+
+    // El diff entre listas se calcula en segundo plano; solo se re-enlazan las filas que cambian
+    private final AsyncListDiffer<Habit> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    // Última lista enviada al differ (puede no estar aplicada aún); base para los cambios siguientes
+    private List<Habit> latestList = Collections.emptyList();
     private final OnHabitClick listener;
     private final OnHabitEdit editListener;
     private final OnHabitDelete deleteListener;
+    private OnLoadMore loadMoreListener;
+    private boolean hasMore = false;
+    private boolean loadingMore = false;
+
+    // Progreso de hoy por hábito (habitId -> valor), calculado fuera del hilo principal
+    private Map<Long, Integer> progressSnapshot = Collections.emptyMap();
+
+    // Drawables de la barra: se cargan una vez y cada fila recibe una copia desde su ConstantState
+    private static final int BAR_NONE = 0;
+    private static final int BAR_PENDING = 1;
+    private static final int BAR_COMPLETED = 2;
+    private Drawable.ConstantState pendingBarState;
+    private Drawable.ConstantState completedBarState;
 
     public HabitAdapter(List<Habit> data, OnHabitClick listener) {
         this(data, listener, null, null);
     }
     
     public HabitAdapter(List<Habit> data, OnHabitClick listener, OnHabitEdit editListener, OnHabitDelete deleteListener) {
-        this.data = data;
         this.listener = listener;
         this.editListener = editListener;
         this.deleteListener = deleteListener;
+        setHasStableIds(true);
+        // Sin lista previa AsyncListDiffer aplica la primera de forma síncrona: una lista vacía
+        // aquí haría que la primera página real se aplicara tras un diff en segundo plano
+        if (!data.isEmpty()) {
+            submit(new ArrayList<>(data));
+        }
     }
 
     @NonNull @Override
     public VH onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View v = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_habit_card, parent, false);
-        return new VH(v);
+        if (pendingBarState == null) {
+            Context context = parent.getContext();
+            pendingBarState = ContextCompat.getDrawable(context, R.drawable.progress_circle_drawable).getConstantState();
+            completedBarState = ContextCompat.getDrawable(context, R.drawable.progress_circle_drawable_green)
+                    .getConstantState();
+        }
+        VH h = new VH(v);
+
+        // Listeners creados una sola vez por ViewHolder (no en cada bind)
+        h.itemView.setOnClickListener(view -> {
+            Habit item = itemAt(h);
+            if (item != null && listener != null) listener.onHabitClicked(item);
+        });
+        
+        // Botón editar
+        if (h.btnEdit != null) {
+            h.btnEdit.setOnClickListener(view -> {
+                Habit item = itemAt(h);
+                if (item != null && editListener != null) {
+                    editListener.onHabitEdit(item);
+                }
+            });
+        }
+        
+        // Botón eliminar
+        if (h.btnDelete != null) {
+            h.btnDelete.setOnClickListener(view -> {
+                Habit item = itemAt(h);
+                if (item != null && deleteListener != null) {
+                    deleteListener.onHabitDelete(item);
+                }
+            });
+        }
+        return h;
     }
 
     @Override
     public void onBindViewHolder(@NonNull VH h, int pos) {
-        Habit item = data.get(pos);
+        Habit item = differ.getCurrentList().get(pos);
+        maybeLoadMore(pos);
         h.txtName.setText(item.getTitle());
         
         // Mostrar meta con valor objetivo si existe
@@ -70,7 +154,7 @@ public class HabitAdapter extends RecyclerView.Adapter<HabitAdapter.VH> {
         
         if (item.getType() == Habit.HabitType.READ_BOOK && item.getPagesPerDay() != null) {
             int pagesGoal = item.getPagesPerDay();
-            int pagesRead = getTodayProgress(h.itemView.getContext(), "read_" + item.getId(), 0);
+            int pagesRead = getTodayProgress(item.getId());
             progressValue = pagesGoal > 0 ? (pagesRead * 100 / pagesGoal) : 0;
             if (progressValue > 100) progressValue = 100;
             goalText = goalText + " (" + pagesRead + "/" + pagesGoal + " páginas)";
@@ -80,7 +164,7 @@ public class HabitAdapter extends RecyclerView.Adapter<HabitAdapter.VH> {
             }
         } else if (item.getType() == Habit.HabitType.WATER && item.getWaterGoalGlasses() != null) {
             int glassesGoal = item.getWaterGoalGlasses();
-            int glassesDrunk = getTodayProgress(h.itemView.getContext(), "water_" + item.getId(), 0);
+            int glassesDrunk = getTodayProgress(item.getId());
             progressValue = glassesGoal > 0 ? (glassesDrunk * 100 / glassesGoal) : 0;
             if (progressValue > 100) progressValue = 100;
             goalText = goalText + " (" + glassesDrunk + "/" + glassesGoal + " vasos)";
@@ -98,70 +182,77 @@ public class HabitAdapter extends RecyclerView.Adapter<HabitAdapter.VH> {
         h.txtGoal.setText(goalText);
         h.txtType.setText(item.getCategory());
         
-        // Configurar progreso y color según estado
-        h.progress.setProgress(progressValue);
-        
-        // Cambiar color de la barra: verde si está completado, naranja si no
-        if (isCompleted || progressValue >= 100) {
-            // Barra verde para tareas completadas
-            h.progress.setProgressDrawable(
-                ContextCompat.getDrawable(
-                    h.itemView.getContext(), 
-                    R.drawable.progress_circle_drawable_green
-                )
-            );
-        } else {
-            // Barra naranja para tareas pendientes
-            h.progress.setProgressDrawable(
-                ContextCompat.getDrawable(
-                    h.itemView.getContext(), 
-                    R.drawable.progress_circle_drawable
-                )
-            );
-        }
-
-        h.itemView.setOnClickListener(v -> {
-            if (listener != null) listener.onHabitClicked(item);
-        });
-        
-        // Botón editar
-        if (h.btnEdit != null) {
-            h.btnEdit.setOnClickListener(v -> {
-                if (editListener != null) {
-                    editListener.onHabitEdit(item);
-                }
-            });
-        }
-        
-        // Botón eliminar
-        if (h.btnDelete != null) {
-            h.btnDelete.setOnClickListener(v -> {
-                if (deleteListener != null) {
-                    deleteListener.onHabitDelete(item);
-                }
-            });
+        // Cambiar color de la barra: verde si está completado, naranja si no.
+        // Solo se reemplaza el drawable cuando cambia el estado de la fila reciclada.
+        int bar = (isCompleted || progressValue >= 100) ? BAR_COMPLETED : BAR_PENDING;
+        if (h.appliedBar != bar) {
+            Resources res = h.itemView.getResources();
+            Drawable.ConstantState state = bar == BAR_COMPLETED ? completedBarState : pendingBarState;
+            h.progress.setProgressDrawable(state.newDrawable(res).mutate());
+            h.appliedBar = bar;
         }
+        h.progress.setProgress(progressValue);
     }
 
-    @Override public int getItemCount() { return data.size(); }
+    @Override public int getItemCount() { return differ.getCurrentList().size(); }
+
+    @Override public long getItemId(int pos) { return differ.getCurrentList().get(pos).getId(); }
     
     /**
      * Actualiza la lista completa de hábitos
      */
     public void updateHabits(List<Habit> newHabits) {
-        this.data.clear();
-        this.data.addAll(newHabits);
-        notifyDataSetChanged();
+        submit(new ArrayList<>(newHabits));
     }
     
+    /**
+     * Reemplaza el contenido por la primera página de una lista paginada
+     */
+    public void submitFirstPage(List<Habit> page, boolean hasMore) {
+        this.hasMore = hasMore;
+        this.loadingMore = false;
+        updateHabits(page);
+    }
+
+    /**
+     * Agrega la siguiente página al final de la lista
+     */
+    public void appendPage(List<Habit> page, boolean hasMore) {
+        this.hasMore = hasMore;
+        this.loadingMore = false;
+        if (page.isEmpty()) {
+            return;
+        }
+        List<Habit> newList = new ArrayList<>(latestList);
+        newList.addAll(page);
+        submit(newList);
+    }
+
+    /**
+     * Permite reintentar la carga si la página anterior falló
+     */
+    public void onLoadMoreFailed() {
+        this.loadingMore = false;
+    }
+
+    public void setOnLoadMore(OnLoadMore loadMoreListener) {
+        this.loadMoreListener = loadMoreListener;
+    }
+
+    private void maybeLoadMore(int pos) {
+        if (hasMore && !loadingMore && loadMoreListener != null && pos >= getItemCount() - PREFETCH_DISTANCE) {
+            loadingMore = true;
+            loadMoreListener.onLoadMore();
+        }
+    }
+
     /**
      * Elimina un hábito de la lista
      */
     public void removeHabit(Habit habit) {
-        int position = data.indexOf(habit);
-        if (position >= 0) {
-            data.remove(position);
-            notifyItemRemoved(position);
+        List<Habit> newList = new ArrayList<>(latestList);
+        if (newList.remove(habit)) {
+            submit(newList);
         }
     }
     
@@ -169,37 +260,85 @@ public class HabitAdapter extends RecyclerView.Adapter<HabitAdapter.VH> {
      * Agrega un hábito a la lista
      */
     public void addHabit(Habit habit) {
-        data.add(habit);
-        notifyItemInserted(data.size() - 1);
+        List<Habit> newList = new ArrayList<>(latestList);
+        newList.add(habit);
+        submit(newList);
     }
     
     /**
      * Actualiza un hábito existente
      */
     public void updateHabit(Habit habit) {
-        int position = -1;
-        for (int i = 0; i < data.size(); i++) {
-            if (data.get(i).getId() == habit.getId()) {
-                position = i;
-                break;
-            }
+        int position = indexOf(latestList, habit.getId());
+        if (position >= 0) {
+            List<Habit> newList = new ArrayList<>(latestList);
+            newList.set(position, habit);
+            submit(newList);
         }
+    }
+
+    /**
+     * Re-enlaza la fila de un hábito modificado en el mismo objeto (p. ej. setCompleted)
+     */
+    public void notifyHabitChanged(Habit habit) {
+        int position = indexOf(differ.getCurrentList(), habit.getId());
         if (position >= 0) {
-            data.set(position, habit);
             notifyItemChanged(position);
         }
     }
+
+    private void submit(List<Habit> newList) {
+        latestList = newList;
+        differ.submitList(newList);
+    }
+
+    private static int indexOf(List<Habit> list, long habitId) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).getId() == habitId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Hash de los campos que se muestran en la tarjeta (el progreso del día va aparte, en el snapshot)
+     */
+    static int contentHash(Habit habit) {
+        return Objects.hash(habit.getTitle(), habit.getGoal(), habit.getCategory(), habit.getType(),
+                habit.isCompleted(), habit.getTargetValue(), habit.getTargetUnit(), habit.getPagesPerDay(),
+                habit.getWaterGoalGlasses());
+    }
     
-    private int getTodayProgress(Context context, String key, int defaultValue) {
-        SharedPreferences prefs = context.getSharedPreferences("habit_progress", Context.MODE_PRIVATE);
-        String todayKey = key + "_" + new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
-        return prefs.getInt(todayKey, defaultValue);
+    /**
+     * Reemplaza el progreso de hoy y refresca solo las filas que lo muestran
+     */
+    public void setProgressSnapshot(Map<Long, Integer> snapshot) {
+        this.progressSnapshot = snapshot != null ? snapshot : Collections.emptyMap();
+        List<Habit> current = differ.getCurrentList();
+        for (int i = 0; i < current.size(); i++) {
+            Habit.HabitType type = current.get(i).getType();
+            if (type == Habit.HabitType.READ_BOOK || type == Habit.HabitType.WATER) {
+                notifyItemChanged(i);
+            }
+        }
+    }
+
+    private int getTodayProgress(long habitId) {
+        Integer value = progressSnapshot.get(habitId);
+        return value != null ? value : 0;
+    }
+
+    private Habit itemAt(VH h) {
+        int pos = h.getBindingAdapterPosition();
+        return pos != RecyclerView.NO_POSITION ? differ.getCurrentList().get(pos) : null;
     }
 
     static class VH extends RecyclerView.ViewHolder {
         TextView txtName, txtGoal, txtType;
         ProgressBar progress;
         android.widget.ImageButton btnEdit, btnDelete;
+        int appliedBar = BAR_NONE;
         VH(@NonNull View v) {
             super(v);
             txtName  = v.findViewById(R.id.txtHabitName);
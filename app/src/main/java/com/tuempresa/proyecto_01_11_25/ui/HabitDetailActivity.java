@@ -1,8 +1,6 @@
 package com.tuempresa.proyecto_01_11_25.ui;
 
-import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.ProgressBar;
@@ -17,18 +15,15 @@ import com.google.android.material.textfield.TextInputEditText;
 import com.tuempresa.proyecto_01_11_25.R;
 import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelper;
 import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.model.HabitCompletion;
 import com.tuempresa.proyecto_01_11_25.repository.HabitRepository;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
 
 public class HabitDetailActivity extends AppCompatActivity {
 
     private Habit habit;
     private HabitDatabaseHelper dbHelper;
     private HabitRepository habitRepository;
-    private SharedPreferences progressPrefs;
     private TextView txtProgress;
     private ProgressBar progressBar;
     private MaterialButton btnAction;
@@ -43,17 +38,15 @@ public class HabitDetailActivity extends AppCompatActivity {
             return;
         }
 
-        dbHelper = new HabitDatabaseHelper(this);
+        dbHelper = HabitDatabaseHelper.getInstance(this);
         habitRepository = HabitRepository.getInstance(this);
-        habit = dbHelper.getHabitById(habitId);
+        habit = habitRepository.getCachedHabit(habitId);
         
         if (habit == null) {
             finish();
             return;
         }
 
-        progressPrefs = getSharedPreferences("habit_progress", Context.MODE_PRIVATE);
-        
         loadLayoutForType();
     }
 
@@ -126,8 +119,7 @@ public class HabitDetailActivity extends AppCompatActivity {
 
     private void updateReadProgress() {
         int pagesGoal = habit.getPagesPerDay() != null ? habit.getPagesPerDay() : 10;
-        String todayKey = "read_" + habit.getId() + "_" + getTodayKey();
-        int pagesRead = progressPrefs.getInt(todayKey, 0);
+        int pagesRead = dbHelper.getProgress(habit.getId(), HabitDatabaseHelper.today());
         
         int progress = pagesGoal > 0 ? (pagesRead * 100 / pagesGoal) : 0;
         if (progress > 100) progress = 100;
@@ -152,7 +144,7 @@ public class HabitDetailActivity extends AppCompatActivity {
             // Asegurar que no esté marcado como completado si no alcanzó la meta
             if (habit.isCompleted() && pagesRead < pagesGoal) {
                 habit.setCompleted(false);
-                dbHelper.updateHabitCompleted(habit.getTitle(), false);
+                dbHelper.updateHabitCompleted(habit.getId(), false);
             }
         }
     }
@@ -182,9 +174,7 @@ public class HabitDetailActivity extends AppCompatActivity {
     }
 
     private void addPagesRead(int pages) {
-        String todayKey = "read_" + habit.getId() + "_" + getTodayKey();
-        int currentPages = progressPrefs.getInt(todayKey, 0);
-        progressPrefs.edit().putInt(todayKey, currentPages + pages).apply();
+        dbHelper.incrementProgress(habit.getId(), HabitDatabaseHelper.today(), pages);
         
         updateReadProgress();
         
@@ -213,8 +203,7 @@ public class HabitDetailActivity extends AppCompatActivity {
 
     private void updateWaterProgress() {
         int glassesGoal = habit.getWaterGoalGlasses() != null ? habit.getWaterGoalGlasses() : 8;
-        String todayKey = "water_" + habit.getId() + "_" + getTodayKey();
-        int glassesDrunk = progressPrefs.getInt(todayKey, 0);
+        int glassesDrunk = dbHelper.getProgress(habit.getId(), HabitDatabaseHelper.today());
         
         int progress = glassesGoal > 0 ? (glassesDrunk * 100 / glassesGoal) : 0;
         if (progress > 100) progress = 100;
@@ -239,15 +228,13 @@ public class HabitDetailActivity extends AppCompatActivity {
             // Asegurar que no esté marcado como completado si no alcanzó la meta
             if (habit.isCompleted() && glassesDrunk < glassesGoal) {
                 habit.setCompleted(false);
-                dbHelper.updateHabitCompleted(habit.getTitle(), false);
+                dbHelper.updateHabitCompleted(habit.getId(), false);
             }
         }
     }
 
     private void addGlass() {
-        String todayKey = "water_" + habit.getId() + "_" + getTodayKey();
-        int currentGlasses = progressPrefs.getInt(todayKey, 0);
-        progressPrefs.edit().putInt(todayKey, currentGlasses + 1).apply();
+        dbHelper.incrementProgress(habit.getId(), HabitDatabaseHelper.today(), 1);
         
         updateWaterProgress();
         
@@ -267,30 +254,19 @@ public class HabitDetailActivity extends AppCompatActivity {
 
     private void completeHabit() {
         habit.setCompleted(true);
-        dbHelper.updateHabitCompleted(habit.getTitle(), true);
-        
-        // Actualizar hábito en API
-        habitRepository.updateHabit(habit, new HabitRepository.RepositoryCallback<Habit>() {
-            @Override
-            public void onSuccess(Habit updatedHabit) {
-                android.util.Log.d("HabitDetail", "Hábito actualizado en API");
-            }
 
-            @Override
-            public void onError(String error) {
-                android.util.Log.e("HabitDetail", "Error al actualizar hábito en API: " + error);
-            }
-        });
-        
-        // Agregar puntos (guarda en SQLite + API)
+        // Completado, puntos y cola de sincronización en una sola transacción (SQLite; la API en lote)
         int points = habit.getPoints();
-        habitRepository.addScore(habit.getId(), habit.getTitle(), points, new HabitRepository.RepositoryCallback<Void>() {
+        habitRepository.completeHabit(habit.getId(), points, HabitCompletion.SOURCE_MANUAL, new HabitRepository.RepositoryCallback<Boolean>() {
             @Override
-            public void onSuccess(Void data) {
+            public void onSuccess(Boolean completed) {
                 runOnUiThread(() -> {
                     // Notificar al Dashboard para actualizar la UI
                     setResult(RESULT_OK);
-                    Toast.makeText(HabitDetailActivity.this, "✅ " + habit.getTitle() + " completado (+" + points + " pts)", Toast.LENGTH_SHORT).show();
+                    String message = completed
+                            ? "✅ " + habit.getTitle() + " completado (+" + points + " pts)"
+                            : habit.getTitle() + " ya estaba completado";
+                    Toast.makeText(HabitDetailActivity.this, message, Toast.LENGTH_SHORT).show();
                     finish();
                 });
             }
@@ -298,20 +274,13 @@ public class HabitDetailActivity extends AppCompatActivity {
             @Override
             public void onError(String error) {
                 runOnUiThread(() -> {
-                    android.util.Log.e("HabitDetail", "Error al guardar score: " + error);
-                    // Aún así notificar éxito local
-                    setResult(RESULT_OK);
-                    Toast.makeText(HabitDetailActivity.this, "✅ " + habit.getTitle() + " completado (+" + points + " pts)", Toast.LENGTH_SHORT).show();
-                    finish();
+                    android.util.Log.e("HabitDetail", "Error al completar hábito: " + error);
+                    Toast.makeText(HabitDetailActivity.this, "Error al guardar el progreso", Toast.LENGTH_SHORT).show();
                 });
             }
         });
     }
 
-    private String getTodayKey() {
-        return new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
-    }
-    
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
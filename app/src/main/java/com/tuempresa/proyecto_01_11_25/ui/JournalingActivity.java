@@ -11,8 +11,8 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.textfield.TextInputEditText;
 import com.tuempresa.proyecto_01_11_25.R;
-import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelper;
 import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.model.HabitCompletion;
 import com.tuempresa.proyecto_01_11_25.repository.HabitRepository;
 
 import java.text.SimpleDateFormat;
@@ -22,7 +22,6 @@ import java.util.Locale;
 public class JournalingActivity extends AppCompatActivity {
 
     private Habit habit;
-    private HabitDatabaseHelper dbHelper;
     private HabitRepository habitRepository;
     private SharedPreferences journalPrefs;
     private TextInputEditText edtJournal;
@@ -38,9 +37,8 @@ public class JournalingActivity extends AppCompatActivity {
             return;
         }
 
-        dbHelper = new HabitDatabaseHelper(this);
         habitRepository = HabitRepository.getInstance(this);
-        habit = dbHelper.getHabitById(habitId);
+        habit = habitRepository.getCachedHabit(habitId);
         
         if (habit == null) {
             finish();
@@ -77,30 +75,17 @@ public class JournalingActivity extends AppCompatActivity {
         
         // Completar hábito
         habit.setCompleted(true);
-        dbHelper.updateHabitCompleted(habit.getTitle(), true);
-        
-        // Actualizar hábito en API
-        habitRepository.updateHabit(habit, new HabitRepository.RepositoryCallback<Habit>() {
-            @Override
-            public void onSuccess(Habit updatedHabit) {
-                android.util.Log.d("Journaling", "Hábito actualizado en API");
-            }
 
-            @Override
-            public void onError(String error) {
-                android.util.Log.e("Journaling", "Error al actualizar hábito en API: " + error);
-            }
-        });
-        
-        // Agregar puntos (guarda en SQLite + API)
+        // Completado, puntos y cola de sincronización en una sola transacción (SQLite; la API en lote)
         int points = habit.getPoints();
-        habitRepository.addScore(habit.getId(), habit.getTitle(), points, new HabitRepository.RepositoryCallback<Void>() {
+        habitRepository.completeHabit(habit.getId(), points, HabitCompletion.SOURCE_MANUAL, new HabitRepository.RepositoryCallback<Boolean>() {
             @Override
-            public void onSuccess(Void data) {
+            public void onSuccess(Boolean completed) {
                 runOnUiThread(() -> {
                     // Notificar al Dashboard para actualizar la UI
                     setResult(RESULT_OK);
-                    Toast.makeText(JournalingActivity.this, "✅ Entrada guardada (+" + points + " pts)", Toast.LENGTH_SHORT).show();
+                    String message = completed ? "✅ Entrada guardada (+" + points + " pts)" : "Entrada guardada";
+                    Toast.makeText(JournalingActivity.this, message, Toast.LENGTH_SHORT).show();
                     finish();
                 });
             }
@@ -108,11 +93,8 @@ public class JournalingActivity extends AppCompatActivity {
             @Override
             public void onError(String error) {
                 runOnUiThread(() -> {
-                    android.util.Log.e("Journaling", "Error al guardar score: " + error);
-                    // Aún así notificar éxito local
-                    setResult(RESULT_OK);
-                    Toast.makeText(JournalingActivity.this, "✅ Entrada guardada (+" + points + " pts)", Toast.LENGTH_SHORT).show();
-                    finish();
+                    android.util.Log.e("Journaling", "Error al completar hábito: " + error);
+                    Toast.makeText(JournalingActivity.this, "Error al guardar el progreso", Toast.LENGTH_SHORT).show();
                 });
             }
         });
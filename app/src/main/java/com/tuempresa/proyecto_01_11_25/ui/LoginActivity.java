@@ -36,7 +36,7 @@ public class LoginActivity extends AppCompatActivity {
 
         setContentView(R.layout.activity_login);
 
-        dbHelper = new HabitDatabaseHelper(this);
+        dbHelper = HabitDatabaseHelper.getInstance(this);
 
         etEmail = findViewById(R.id.etEmail);
         etPassword = findViewById(R.id.etPassword);
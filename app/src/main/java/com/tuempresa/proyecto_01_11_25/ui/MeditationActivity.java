@@ -14,8 +14,8 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.google.android.material.button.MaterialButton;
 import com.tuempresa.proyecto_01_11_25.R;
-import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelper;
 import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.model.HabitCompletion;
 import com.tuempresa.proyecto_01_11_25.repository.HabitRepository;
 
 import java.text.SimpleDateFormat;
@@ -25,7 +25,6 @@ import java.util.Locale;
 public class MeditationActivity extends AppCompatActivity {
 
     private Habit habit;
-    private HabitDatabaseHelper dbHelper;
     private HabitRepository habitRepository;
     private TextView txtTimer;
     private MaterialButton btnStart, btnPause, btnReset;
@@ -45,9 +44,8 @@ public class MeditationActivity extends AppCompatActivity {
             return;
         }
 
-        dbHelper = new HabitDatabaseHelper(this);
         habitRepository = HabitRepository.getInstance(this);
-        habit = dbHelper.getHabitById(habitId);
+        habit = habitRepository.getCachedHabit(habitId);
         
         if (habit == null) {
             finish();
@@ -130,30 +128,17 @@ public class MeditationActivity extends AppCompatActivity {
 
         // Completar hábito
         habit.setCompleted(true);
-        dbHelper.updateHabitCompleted(habit.getTitle(), true);
-        
-        // Actualizar hábito en API
-        habitRepository.updateHabit(habit, new HabitRepository.RepositoryCallback<Habit>() {
-            @Override
-            public void onSuccess(Habit updatedHabit) {
-                android.util.Log.d("Meditation", "Hábito actualizado en API");
-            }
 
-            @Override
-            public void onError(String error) {
-                android.util.Log.e("Meditation", "Error al actualizar hábito en API: " + error);
-            }
-        });
-        
-        // Agregar puntos (guarda en SQLite + API)
+        // Completado, puntos y cola de sincronización en una sola transacción (SQLite; la API en lote)
         int points = habit.getPoints();
-        habitRepository.addScore(habit.getId(), habit.getTitle(), points, new HabitRepository.RepositoryCallback<Void>() {
+        habitRepository.completeHabit(habit.getId(), points, HabitCompletion.SOURCE_MANUAL, new HabitRepository.RepositoryCallback<Boolean>() {
             @Override
-            public void onSuccess(Void data) {
+            public void onSuccess(Boolean completed) {
                 runOnUiThread(() -> {
                     // Notificar al Dashboard para actualizar la UI
                     setResult(RESULT_OK);
-                    Toast.makeText(MeditationActivity.this, "✅ Meditación completada (+" + points + " pts)", Toast.LENGTH_LONG).show();
+                    String message = completed ? "✅ Meditación completada (+" + points + " pts)" : "Meditación ya estaba completada";
+                    Toast.makeText(MeditationActivity.this, message, Toast.LENGTH_LONG).show();
                     finish();
                 });
             }
@@ -161,11 +146,8 @@ public class MeditationActivity extends AppCompatActivity {
             @Override
             public void onError(String error) {
                 runOnUiThread(() -> {
-                    android.util.Log.e("Meditation", "Error al guardar score: " + error);
-                    // Aún así notificar éxito local
-                    setResult(RESULT_OK);
-                    Toast.makeText(MeditationActivity.this, "✅ Meditación completada (+" + points + " pts)", Toast.LENGTH_LONG).show();
-                    finish();
+                    android.util.Log.e("Meditation", "Error al completar hábito: " + error);
+                    Toast.makeText(MeditationActivity.this, "Error al guardar el progreso", Toast.LENGTH_SHORT).show();
                 });
             }
         });
@@ -25,7 +25,7 @@ public class ProfileActivity extends AppCompatActivity {
         setContentView(R.layout.activity_profile);
 
         session = new SessionManager(getApplicationContext());
-        dbHelper = new HabitDatabaseHelper(this);
+        dbHelper = HabitDatabaseHelper.getInstance(this);
 
         // Referencias UI
         tvUserName = findViewById(R.id.tvUserName);
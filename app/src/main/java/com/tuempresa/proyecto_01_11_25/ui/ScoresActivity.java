@@ -14,6 +14,7 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.tuempresa.proyecto_01_11_25.R;
 import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelper;
+import com.tuempresa.proyecto_01_11_25.repository.HabitRepository;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -26,13 +27,18 @@ public class ScoresActivity extends AppCompatActivity {
     private TextView txtTotalScore;
     private HabitDatabaseHelper dbHelper;
     private RankingAdapter adapter;
+    private HabitRepository habitRepository;
+    // Total del usuario de la sesión; el repositorio lo publica en el hilo principal
+    private final HabitRepository.ScoreListener totalScoreListener =
+            totalScore -> txtTotalScore.setText(String.valueOf(totalScore));
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_scores);
 
-        dbHelper = new HabitDatabaseHelper(this);
+        dbHelper = HabitDatabaseHelper.getInstance(this);
+        habitRepository = HabitRepository.getInstance(this);
         txtTotalScore = findViewById(R.id.txtTotalScore);
         rvScores = findViewById(R.id.rvScores);
 
@@ -63,16 +69,25 @@ public class ScoresActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        habitRepository.addScoreListener(totalScoreListener);
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
         loadScores();
     }
 
-    private void loadScores() {
-        int totalScore = dbHelper.getTotalScore();
-        txtTotalScore.setText(String.valueOf(totalScore));
+    @Override
+    protected void onStop() {
+        habitRepository.removeScoreListener(totalScoreListener);
+        super.onStop();
+    }
 
+    private void loadScores() {
         List<com.tuempresa.proyecto_01_11_25.model.UserRanking> ranking = dbHelper.getUsersRanking();
         adapter = new RankingAdapter(ranking);
         rvScores.setAdapter(adapter);
@@ -449,7 +449,7 @@ public class SettingsActivity extends AppCompatActivity {
         long userId = sessionManager.getUserId();
         
         com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelper dbHelper = 
-                new com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelper(this);
+                com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelper.getInstance(this);
         
         boolean deleted = dbHelper.deleteUser(userId);
         
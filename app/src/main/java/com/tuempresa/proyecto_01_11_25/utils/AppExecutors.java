@@ -0,0 +1,125 @@
+package com.tuempresa.proyecto_01_11_25.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ejecutores compartidos por todo el proceso:
+ * - io(): pool acotado para SQLite y red, con un hilo por núcleo (entre 2 y 4). Los hilos
+ *   se liberan tras 30 s sin trabajo.
+ * - serial(): tareas en orden, una a la vez, sobre el mismo pool (escrituras que no deben
+ *   adelantarse unas a otras).
+ * - mainThread(): hilo principal, para continuar con la UI.
+ */
+public final class AppExecutors {
+    private static final int IO_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final ThreadPoolExecutor IO;
+    static {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "habit-io-" + count.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        };
+        IO = new ThreadPoolExecutor(IO_THREADS, IO_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), factory);
+        IO.allowCoreThreadTimeOut(true);
+    }
+
+    private static final Executor SERIAL = new SerialExecutor(IO);
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    private static final Executor MAIN = MAIN_HANDLER::post;
+
+    private AppExecutors() {
+    }
+
+    public static Executor io() {
+        return IO;
+    }
+
+    public static Executor serial() {
+        return SERIAL;
+    }
+
+    public static Executor mainThread() {
+        return MAIN;
+    }
+
+    /**
+     * Ejecuta work en executor y entrega su resultado en un CompletableFuture.
+     * Si el future se cancela antes de que la tarea empiece, la tarea no se ejecuta.
+     */
+    public static <T> CompletableFuture<T> supply(Executor executor, Callable<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(work.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Error original de un future completado con excepción (sin el CompletionException que
+     * añaden las etapas encadenadas).
+     */
+    public static Throwable causeOf(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     * Ejecuta las tareas de una en una y en el orden recibido, delegando en otro executor.
+     */
+    private static final class SerialExecutor implements Executor {
+        private final Executor delegate;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private Runnable active;
+
+        SerialExecutor(Executor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            tasks.offer(() -> {
+                try {
+                    task.run();
+                } finally {
+                    scheduleNext();
+                }
+            });
+            if (active == null) {
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            active = tasks.poll();
+            if (active != null) {
+                delegate.execute(active);
+            }
+        }
+    }
+}
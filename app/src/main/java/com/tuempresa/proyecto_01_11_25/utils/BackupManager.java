@@ -8,6 +8,7 @@ import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelper;
 import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.repository.HabitRepository;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -16,6 +17,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.util.List;
+import java.util.Map;
 
 public class BackupManager {
 
@@ -26,8 +28,8 @@ public class BackupManager {
 
     public BackupManager(Context context) {
         this.context = context;
-        this.dbHelper = new HabitDatabaseHelper(context);
-        this.gson = new Gson();
+        this.dbHelper = HabitDatabaseHelper.getInstance(context);
+        this.gson = GsonProvider.get();
     }
 
     public static class BackupData {
@@ -43,9 +45,9 @@ public class BackupManager {
     }
 
     public void exportData(Uri uri, OnBackupListener listener) {
-        new Thread(() -> {
+        AppExecutors.io().execute(() -> {
             try {
-                List<Habit> habits = dbHelper.getAllHabits();
+                List<Habit> habits = HabitRepository.getInstance(context).getCachedHabits();
                 List<HabitDatabaseHelper.ScoreEntry> scores = dbHelper.getAllScores();
                 BackupData backupData = new BackupData(habits, scores);
 
@@ -69,11 +71,11 @@ public class BackupManager {
                     listener.onError("Error al exportar: " + e.getMessage());
                 }
             }
-        }).start();
+        });
     }
 
     public void importData(Uri uri, OnBackupListener listener) {
-        new Thread(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 StringBuilder stringBuilder = new StringBuilder();
                 try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
@@ -105,10 +107,13 @@ public class BackupManager {
                 // Vamos a asumir una estrategia de "Merge Inteligente":
                 // Si el hábito existe (por título), actualizamos. Si no, creamos.
                 
+                // Títulos de los hábitos locales en una sola consulta; los insertados se añaden
+                // al mapa para que sus scores se enlacen por id
+                Map<String, Long> habitIdsByTitle = dbHelper.getHabitIdsByTitle();
                 int habitsRestored = 0;
                 for (Habit habit : backupData.habits) {
-                    long existingId = dbHelper.getHabitIdByTitle(habit.getTitle());
-                    if (existingId > 0) {
+                    Long existingId = habitIdsByTitle.get(habit.getTitle());
+                    if (existingId != null) {
                         // Actualizar
                         dbHelper.updateHabitFull(existingId, habit.getTitle(), habit.getGoal(), habit.getCategory(), 
                                 habit.getType().name(), habit.getPoints(), habit.getTargetValue(), habit.getTargetUnit(),
@@ -117,15 +122,18 @@ public class BackupManager {
                                 habit.getGymDays(), habit.getWaterGoalGlasses(), habit.isOneClickComplete(),
                                 habit.isEnglishMode(), habit.isCodingMode(), habit.getHabitIcon());
                         // También actualizar estado completado
-                        dbHelper.updateHabitCompleted(habit.getTitle(), habit.isCompleted());
+                        dbHelper.updateHabitCompleted(existingId, habit.isCompleted());
                     } else {
                         // Insertar
-                        dbHelper.insertHabitFull(habit.getTitle(), habit.getGoal(), habit.getCategory(), 
+                        long insertedId = dbHelper.insertHabitFull(habit.getTitle(), habit.getGoal(), habit.getCategory(), 
                                 habit.getType().name(), habit.getPoints(), habit.getTargetValue(), habit.getTargetUnit(),
                                 habit.getPagesPerDay(), habit.getReminderTimes(), habit.getDurationMinutes(),
                                 habit.isDndMode(), habit.getMusicId(), habit.isJournalEnabled(),
                                 habit.getGymDays(), habit.getWaterGoalGlasses(), habit.isOneClickComplete(),
                                 habit.isEnglishMode(), habit.isCodingMode(), habit.getHabitIcon());
+                        if (insertedId != -1) {
+                            habitIdsByTitle.put(habit.getTitle(), insertedId);
+                        }
                     }
                     habitsRestored++;
                 }
@@ -135,19 +143,11 @@ public class BackupManager {
                 // Una mejora sería verificar si ya existe un score para ese hábito en esa fecha.
                 // Por ahora, insertamos.
                 if (backupData.scores != null) {
-                    for (HabitDatabaseHelper.ScoreEntry score : backupData.scores) {
-                        // Solo insertar si tenemos el título (que es lo que usa addScore, aunque addScore crea uno nuevo con fecha actual)
-                        // Necesitamos un método en dbHelper para insertar score histórico o modificar addScore.
-                        // Como addScore usa "now", vamos a tener que insertar manualmente o agregar método.
-                        // Por simplicidad y dado que HabitDatabaseHelper.ScoreEntry es solo lectura en la clase interna,
-                        // vamos a usar addScore pero perderemos la fecha original si no modificamos el helper.
-                        // IMPORTANTE: RNF-04 Historial. Perder la fecha es malo.
-                        // Deberíamos agregar un método insertScoreWithDate en DbHelper.
-                        // Por ahora, usaremos addScore que pone fecha actual, lo cual es una limitación.
-                        // TODO: Mejorar HabitDatabaseHelper para permitir insertar scores con fecha.
-                        dbHelper.addScore(score.getHabitTitle(), score.getPoints());
-                    }
+                    // Cada score conserva su fecha original
+                    dbHelper.importScores(backupData.scores, habitIdsByTitle);
                 }
+                // El total acumulado se recalcula a partir de los scores restaurados
+                HabitRepository.getInstance(context).rebuildTotalScore(null);
 
                 if (listener != null) {
                     listener.onSuccess("Restauración completada. " + habitsRestored + " hábitos procesados.");
@@ -159,7 +159,7 @@ public class BackupManager {
                     listener.onError("Error al importar: " + e.getMessage());
                 }
             }
-        }).start();
+        });
     }
 
     public interface OnBackupListener {
@@ -0,0 +1,94 @@
+package com.tuempresa.proyecto_01_11_25.utils;
+
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Futures ligados al ciclo de vida de una Activity: en onDestroy se cancelan los que sigan
+ * pendientes (las tareas de AppExecutors que aún no empezaron ya no se ejecutan) y ya no se
+ * llama a ninguna continuación de UI.
+ *
+ * Solo conviene ligar lecturas y continuaciones de pantalla: una escritura que el usuario ya
+ * pidió no debe perderse porque la Activity se cierre.
+ */
+public final class FutureScope implements DefaultLifecycleObserver {
+    private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
+    private volatile boolean destroyed;
+
+    private FutureScope() {
+    }
+
+    /**
+     * Crea un scope para owner. Debe llamarse desde el hilo principal (p. ej. en onCreate).
+     */
+    public static FutureScope of(LifecycleOwner owner) {
+        FutureScope scope = new FutureScope();
+        Lifecycle lifecycle = owner.getLifecycle();
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            scope.destroyed = true;
+        } else {
+            lifecycle.addObserver(scope);
+        }
+        return scope;
+    }
+
+    /**
+     * Cancela future si el ciclo de vida termina antes de que se complete.
+     */
+    public <T> CompletableFuture<T> bind(CompletableFuture<T> future) {
+        if (destroyed) {
+            future.cancel(false);
+            return future;
+        }
+        pending.add(future);
+        future.whenComplete((result, error) -> pending.remove(future));
+        return future;
+    }
+
+    /**
+     * Lectura para la pantalla: se cancela si la Activity se destruye antes de tenerla y,
+     * si llega a tiempo, se entrega en el hilo principal (ver onMain).
+     */
+    public <T> void load(CompletableFuture<T> future, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        onMain(bind(future), onSuccess, onError);
+    }
+
+    /**
+     * Entrega el resultado en el hilo principal solo si la Activity sigue viva, sin cancelar
+     * el trabajo (para escrituras). onError recibe el error original; nada si se canceló.
+     */
+    public <T> void onMain(CompletableFuture<T> future, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        future.whenCompleteAsync((result, error) -> {
+            if (destroyed || future.isCancelled()) {
+                return;
+            }
+            if (error != null) {
+                if (onError != null) {
+                    onError.accept(AppExecutors.causeOf(error));
+                }
+            } else if (onSuccess != null) {
+                onSuccess.accept(result);
+            }
+        }, AppExecutors.mainThread());
+    }
+
+    public boolean isActive() {
+        return !destroyed;
+    }
+
+    @Override
+    public void onDestroy(LifecycleOwner owner) {
+        destroyed = true;
+        owner.getLifecycle().removeObserver(this);
+        for (CompletableFuture<?> future : pending) {
+            future.cancel(false);
+        }
+        pending.clear();
+    }
+}
@@ -0,0 +1,25 @@
+package com.tuempresa.proyecto_01_11_25.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+
+/**
+ * Gson compartido por Retrofit, la cola de operaciones pendientes y las copias de seguridad.
+ * Habit y Score usan adaptadores escritos a mano; Gson es seguro entre hilos.
+ */
+public final class GsonProvider {
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(Habit.HabitType.class, new HabitTypeAdapter())
+            .registerTypeAdapter(Habit.class, new HabitJsonAdapter())
+            .registerTypeAdapterFactory(ScoreJsonAdapter.FACTORY)
+            .setLenient()
+            .create();
+
+    private GsonProvider() {
+    }
+
+    public static Gson get() {
+        return GSON;
+    }
+}
@@ -0,0 +1,239 @@
+package com.tuempresa.proyecto_01_11_25.utils;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+
+import java.io.IOException;
+
+/**
+ * Adaptador de Gson escrito a mano para Habit, sin reflexión.
+ * Produce el mismo JSON que la serialización reflexiva (mismos nombres, mismo orden, nulos
+ * omitidos) y al leer conserva los valores por defecto del constructor para los campos que
+ * faltan o llegan a null. Al añadir un campo a Habit hay que añadirlo aquí también.
+ */
+public class HabitJsonAdapter extends TypeAdapter<Habit> {
+    private final HabitTypeAdapter typeAdapter = new HabitTypeAdapter();
+
+    @Override
+    public void write(JsonWriter out, Habit habit) throws IOException {
+        if (habit == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(habit.getId());
+        writeNullable(out, "title", habit.getTitle());
+        writeNullable(out, "goal", habit.getGoal());
+        writeNullable(out, "category", habit.getCategory());
+        if (habit.getType() != null) {
+            out.name("type");
+            typeAdapter.write(out, habit.getType());
+        }
+        out.name("completed").value(habit.isCompleted());
+        out.name("points").value(habit.getPoints());
+        out.name("targetValue").value(habit.getTargetValue());
+        writeNullable(out, "targetUnit", habit.getTargetUnit());
+        writeNullable(out, "pagesPerDay", habit.getPagesPerDay());
+        writeNullable(out, "reminderTimes", habit.getReminderTimes());
+        writeNullable(out, "durationMinutes", habit.getDurationMinutes());
+        writeNullable(out, "dndMode", habit.getDndMode());
+        writeNullable(out, "musicId", habit.getMusicId());
+        writeNullable(out, "journalEnabled", habit.getJournalEnabled());
+        writeNullable(out, "gymDays", habit.getGymDays());
+        writeNullable(out, "waterGoalGlasses", habit.getWaterGoalGlasses());
+        writeNullable(out, "oneClickComplete", habit.getOneClickComplete());
+        writeNullable(out, "englishMode", habit.getEnglishMode());
+        writeNullable(out, "codingMode", habit.getCodingMode());
+        writeNullable(out, "habitIcon", habit.getHabitIcon());
+        out.name("streakCount").value(habit.getStreakCount());
+        out.name("lastCompletedDate").value(habit.getLastCompletedDate());
+        out.endObject();
+    }
+
+    @Override
+    public Habit read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Habit habit = new Habit();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                // Igual que Gson: un null no pisa el valor por defecto de un primitivo
+                in.nextNull();
+                setNull(habit, name);
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    habit.setId(in.nextLong());
+                    break;
+                case "title":
+                    habit.setTitle(in.nextString());
+                    break;
+                case "goal":
+                    habit.setGoal(in.nextString());
+                    break;
+                case "category":
+                    habit.setCategory(in.nextString());
+                    break;
+                case "type":
+                    habit.setType(typeAdapter.read(in));
+                    break;
+                case "completed":
+                    habit.setCompleted(nextBoolean(in));
+                    break;
+                case "points":
+                    habit.setPoints(in.nextInt());
+                    break;
+                case "targetValue":
+                    habit.setTargetValue(in.nextDouble());
+                    break;
+                case "targetUnit":
+                    habit.setTargetUnit(in.nextString());
+                    break;
+                case "pagesPerDay":
+                    habit.setPagesPerDay(in.nextInt());
+                    break;
+                case "reminderTimes":
+                    habit.setReminderTimes(in.nextString());
+                    break;
+                case "durationMinutes":
+                    habit.setDurationMinutes(in.nextInt());
+                    break;
+                case "dndMode":
+                    habit.setDndMode(nextBoolean(in));
+                    break;
+                case "musicId":
+                    habit.setMusicId(in.nextInt());
+                    break;
+                case "journalEnabled":
+                    habit.setJournalEnabled(nextBoolean(in));
+                    break;
+                case "gymDays":
+                    habit.setGymDays(in.nextString());
+                    break;
+                case "waterGoalGlasses":
+                    habit.setWaterGoalGlasses(in.nextInt());
+                    break;
+                case "oneClickComplete":
+                    habit.setOneClickComplete(nextBoolean(in));
+                    break;
+                case "englishMode":
+                    habit.setEnglishMode(nextBoolean(in));
+                    break;
+                case "codingMode":
+                    habit.setCodingMode(nextBoolean(in));
+                    break;
+                case "habitIcon":
+                    habit.setHabitIcon(in.nextString());
+                    break;
+                case "streakCount":
+                    habit.setStreakCount(in.nextInt());
+                    break;
+                case "lastCompletedDate":
+                    habit.setLastCompletedDate(in.nextLong());
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        return habit;
+    }
+
+    /**
+     * Campos de objeto (String, Integer, Boolean, enum) que llegan a null. Los primitivos no se tocan.
+     */
+    private static void setNull(Habit habit, String name) {
+        switch (name) {
+            case "title":
+                habit.setTitle(null);
+                break;
+            case "goal":
+                habit.setGoal(null);
+                break;
+            case "category":
+                habit.setCategory(null);
+                break;
+            case "type":
+                habit.setType(null);
+                break;
+            case "targetUnit":
+                habit.setTargetUnit(null);
+                break;
+            case "pagesPerDay":
+                habit.setPagesPerDay(null);
+                break;
+            case "reminderTimes":
+                habit.setReminderTimes(null);
+                break;
+            case "durationMinutes":
+                habit.setDurationMinutes(null);
+                break;
+            case "dndMode":
+                habit.setDndMode(null);
+                break;
+            case "musicId":
+                habit.setMusicId(null);
+                break;
+            case "journalEnabled":
+                habit.setJournalEnabled(null);
+                break;
+            case "gymDays":
+                habit.setGymDays(null);
+                break;
+            case "waterGoalGlasses":
+                habit.setWaterGoalGlasses(null);
+                break;
+            case "oneClickComplete":
+                habit.setOneClickComplete(null);
+                break;
+            case "englishMode":
+                habit.setEnglishMode(null);
+                break;
+            case "codingMode":
+                habit.setCodingMode(null);
+                break;
+            case "habitIcon":
+                habit.setHabitIcon(null);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Como el adaptador de Boolean de Gson: acepta también "true"/"false" entre comillas.
+     */
+    static boolean nextBoolean(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.STRING) {
+            return Boolean.parseBoolean(in.nextString());
+        }
+        return in.nextBoolean();
+    }
+
+    private static void writeNullable(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    private static void writeNullable(JsonWriter out, String name, Number value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    private static void writeNullable(JsonWriter out, String name, Boolean value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.tuempresa.proyecto_01_11_25.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.tuempresa.proyecto_01_11_25.model.Score;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Adaptador de Gson escrito a mano para Score, sin reflexión. La fecha se delega en el
+ * adaptador de Date del propio Gson para mantener el formato que ya recibe el servidor.
+ */
+public class ScoreJsonAdapter extends TypeAdapter<Score> {
+
+    /**
+     * Registra el adaptador obteniendo el de Date del Gson que se está construyendo.
+     */
+    public static final TypeAdapterFactory FACTORY = new TypeAdapterFactory() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            if (type.getRawType() != Score.class) {
+                return null;
+            }
+            return (TypeAdapter<T>) new ScoreJsonAdapter(gson.getAdapter(Date.class));
+        }
+    };
+
+    private final TypeAdapter<Date> dateAdapter;
+
+    public ScoreJsonAdapter(TypeAdapter<Date> dateAdapter) {
+        this.dateAdapter = dateAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, Score score) throws IOException {
+        if (score == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(score.getId());
+        out.name("habitId").value(score.getHabitId());
+        if (score.getHabitTitle() != null) {
+            out.name("habitTitle").value(score.getHabitTitle());
+        }
+        out.name("points").value(score.getPoints());
+        if (score.getDate() != null) {
+            out.name("date");
+            dateAdapter.write(out, score.getDate());
+        }
+        out.endObject();
+    }
+
+    @Override
+    public Score read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Score score = new Score();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                if ("habitTitle".equals(name)) {
+                    score.setHabitTitle(null);
+                } else if ("date".equals(name)) {
+                    score.setDate(null);
+                }
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    score.setId(in.nextLong());
+                    break;
+                case "habitId":
+                    score.setHabitId(in.nextLong());
+                    break;
+                case "habitTitle":
+                    score.setHabitTitle(in.nextString());
+                    break;
+                case "points":
+                    score.setPoints(in.nextInt());
+                    break;
+                case "date":
+                    score.setDate(dateAdapter.read(in));
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        return score;
+    }
+}
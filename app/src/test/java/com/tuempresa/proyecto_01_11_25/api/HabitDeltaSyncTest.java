@@ -0,0 +1,99 @@
+package com.tuempresa.proyecto_01_11_25.api;
+
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.model.HabitsResponse;
+import com.tuempresa.proyecto_01_11_25.utils.GsonProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Protocolo de sincronización delta (GET habits?since=) contra un servidor local simulado.
+ */
+public class HabitDeltaSyncTest {
+    private MockWebServer server;
+    private HabitApiService apiService;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        // Mismo Gson que HabitApiClient
+        apiService = new Retrofit.Builder()
+                .baseUrl(server.url("/api/v1/"))
+                .addConverterFactory(GsonConverterFactory.create(GsonProvider.get()))
+                .build()
+                .create(HabitApiService.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void deltaRequestSendsWatermarkAndParsesTombstones() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"success\":true,\"count\":1,"
+                + "\"habits\":[{\"id\":42,\"title\":\"Beber agua\",\"type\":\"WATER\",\"waterGoalGlasses\":8}],"
+                + "\"deletedIds\":[7,9],\"watermark\":1700000500}"));
+
+        Response<HabitsResponse> response = apiService.getHabitsSince(1700000000L).execute();
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("GET", request.getMethod());
+        assertEquals("/api/v1/habits?since=1700000000", request.getPath());
+
+        HabitsResponse delta = response.body();
+        assertNotNull(delta);
+        assertTrue(delta.isSuccess());
+        assertEquals(1, delta.getHabits().size());
+        assertEquals(42, delta.getHabits().get(0).getId());
+        assertEquals(Habit.HabitType.WATER, delta.getHabits().get(0).getType());
+        assertEquals(Arrays.asList(7L, 9L), delta.getDeletedIds());
+        assertEquals(Long.valueOf(1700000500L), delta.getWatermark());
+    }
+
+    @Test
+    public void emptyDeltaOnlyAdvancesWatermark() throws Exception {
+        server.enqueue(new MockResponse().setBody(
+                "{\"success\":true,\"count\":0,\"habits\":[],\"deletedIds\":[],\"watermark\":1700000600}"));
+
+        HabitsResponse delta = apiService.getHabitsSince(1700000500L).execute().body();
+
+        assertNotNull(delta);
+        assertTrue(delta.getHabits().isEmpty());
+        assertTrue(delta.getDeletedIds().isEmpty());
+        assertEquals(Long.valueOf(1700000600L), delta.getWatermark());
+    }
+
+    @Test
+    public void serverWithoutDeltaSupportReturnsNoWatermark() throws Exception {
+        // Un servidor que ignora "since" responde con la colección completa y sin watermark;
+        // SyncManager lo detecta y aplica la sincronización completa
+        server.enqueue(new MockResponse().setBody("{\"success\":true,\"count\":2,\"habits\":["
+                + "{\"id\":1,\"title\":\"Leer\",\"type\":\"READ_BOOK\"},"
+                + "{\"id\":2,\"title\":\"Tipo nuevo\",\"type\":\"NO_EXISTE\"}]}"));
+
+        HabitsResponse full = apiService.getHabitsSince(0L).execute().body();
+
+        assertEquals("/api/v1/habits?since=0", server.takeRequest().getPath());
+        assertNotNull(full);
+        assertNull(full.getWatermark());
+        assertNull(full.getDeletedIds());
+        assertEquals(2, full.getHabits().size());
+        assertEquals(Habit.HabitType.DEMO, full.getHabits().get(1).getType());
+    }
+}
@@ -0,0 +1,114 @@
+package com.tuempresa.proyecto_01_11_25.api;
+
+import com.google.gson.Gson;
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.model.HabitsResponse;
+import com.tuempresa.proyecto_01_11_25.utils.GsonProvider;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Lectura en streaming de HabitsResponse: mismo resultado que Gson sobre el objeto completo,
+ * con los campos en cualquier orden y sin acumular la lista de hábitos.
+ */
+public class HabitsStreamParserTest {
+    private final Gson gson = GsonProvider.get();
+
+    @Test
+    public void matchesFullDeserialization() throws Exception {
+        String body = "{\"success\":true,\"count\":2,\"habits\":["
+                + "{\"id\":42,\"title\":\"Beber agua\",\"type\":\"WATER\",\"waterGoalGlasses\":8},"
+                + "{\"id\":43,\"title\":\"Leer\",\"type\":\"READ_BOOK\",\"pagesPerDay\":null}],"
+                + "\"deletedIds\":[7,9],\"watermark\":1700000500}";
+        HabitsResponse full = gson.fromJson(body, HabitsResponse.class);
+        List<Habit> streamed = new ArrayList<>();
+
+        HabitsResponse summary = HabitsStreamParser.parse(new StringReader(body), gson, streamed::add);
+
+        assertTrue(summary.isSuccess());
+        assertNull(summary.getHabits());
+        assertEquals(2, summary.getCount());
+        assertEquals(full.getDeletedIds(), summary.getDeletedIds());
+        assertEquals(full.getWatermark(), summary.getWatermark());
+        assertEquals(full.getHabits().size(), streamed.size());
+        for (int i = 0; i < streamed.size(); i++) {
+            assertEquals(gson.toJson(full.getHabits().get(i)), gson.toJson(streamed.get(i)));
+        }
+    }
+
+    @Test
+    public void metadataAfterHabitsAndNullsAreHandled() throws Exception {
+        String body = "{\"habits\":[{\"id\":1,\"title\":\"A\",\"type\":\"DEMO\"}],\"extra\":{\"x\":[1,2]},"
+                + "\"deletedIds\":[3,null],\"message\":null,\"watermark\":99,\"success\":true}";
+        List<Habit> streamed = new ArrayList<>();
+
+        HabitsResponse summary = HabitsStreamParser.parse(new StringReader(body), gson, streamed::add);
+
+        assertTrue(summary.isSuccess());
+        assertEquals(Long.valueOf(99), summary.getWatermark());
+        assertEquals(Arrays.asList(3L), summary.getDeletedIds());
+        assertEquals(1, streamed.size());
+        assertEquals("A", streamed.get(0).getTitle());
+    }
+
+    @Test
+    public void fullListWithoutDeltaFieldsHasNoWatermark() throws Exception {
+        HabitsResponse summary = HabitsStreamParser.parse(
+                new StringReader("{\"success\":false,\"message\":\"Sin permiso\",\"habits\":null}"), gson, habit -> fail());
+
+        assertFalse(summary.isSuccess());
+        assertEquals("Sin permiso", summary.getMessage());
+        assertNull(summary.getWatermark());
+        assertNull(summary.getDeletedIds());
+    }
+
+    @Test
+    public void habitsAreDeliveredBeforeTheRestOfTheBodyIsRead() throws Exception {
+        // El primer hábito llega al consumidor cuando el lector aún no ha pasado del segundo
+        String first = "{\"success\":true,\"habits\":[{\"id\":1,\"title\":\"A\",\"type\":\"DEMO\"},";
+        String rest = "{\"id\":2,\"title\":\"B\",\"type\":\"DEMO\"}],\"watermark\":5}";
+        CountingReader reader = new CountingReader(first + rest);
+        List<Integer> consumedAt = new ArrayList<>();
+
+        HabitsStreamParser.parse(reader, gson, habit -> consumedAt.add(reader.read));
+
+        assertEquals(2, consumedAt.size());
+        assertTrue(consumedAt.get(0) < first.length() + rest.length());
+    }
+
+    /**
+     * Entrega el cuerpo en trozos pequeños y cuenta los caracteres leídos.
+     */
+    private static final class CountingReader extends Reader {
+        private final String content;
+        private int read;
+
+        CountingReader(String content) {
+            this.content = content;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (read >= content.length()) {
+                return -1;
+            }
+            int n = Math.min(Math.min(length, 16), content.length() - read);
+            content.getChars(read, read + n, buffer, offset);
+            read += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
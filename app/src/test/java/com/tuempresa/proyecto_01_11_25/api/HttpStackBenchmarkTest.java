@@ -0,0 +1,239 @@
+package com.tuempresa.proyecto_01_11_25.api;
+
+import com.google.gson.Gson;
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.model.HabitsResponse;
+import com.tuempresa.proyecto_01_11_25.utils.GsonProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.logging.HttpLoggingInterceptor;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSource;
+import okio.Okio;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Bytes y latencia por sincronización (POST habits/sync + GET habits?since=) con la pila
+ * HTTP de HabitApiClient frente a un cliente sin caché ni gzip, contra un servidor simulado
+ * que responde con ETag y 304 cuando no hay cambios.
+ * La medición de latencia está en @Ignore para no cronometrar dentro de la tarea de tests;
+ * se ejecuta a mano quitando la anotación.
+ */
+public class HttpStackBenchmarkTest {
+    private static final Logger LOG = Logger.getLogger(HttpStackBenchmarkTest.class.getName());
+    private static final int HABITS_PER_BATCH = 200;
+    private static final int ROUNDS = 20;
+    private static final String ETAG = "\"w-1700000500\"";
+
+    private final Gson gson = GsonProvider.get();
+    private final AtomicLong requestBytes = new AtomicLong();
+    private final AtomicLong responseBytes = new AtomicLong();
+    private final List<Integer> getStatuses = new ArrayList<>();
+    private MockWebServer server;
+    private String deltaBody;
+    private File cacheDir;
+
+    @Before
+    public void setUp() throws Exception {
+        List<Habit> serverHabits = habits(50);
+        HabitsResponse delta = new HabitsResponse();
+        delta.setSuccess(true);
+        delta.setHabits(serverHabits);
+        delta.setDeletedIds(Arrays.asList(7L, 9L));
+        delta.setWatermark(1700000500L);
+        deltaBody = gson.toJson(delta);
+
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                requestBytes.addAndGet(request.getBodySize());
+                if (request.getPath().contains("habits/sync")) {
+                    return respond(new MockResponse().setBody("{\"success\":true,\"habits\":[]}"));
+                }
+                synchronized (getStatuses) {
+                    if (ETAG.equals(request.getHeader("If-None-Match"))) {
+                        getStatuses.add(304);
+                        return new MockResponse().setResponseCode(304).setHeader("ETag", ETAG);
+                    }
+                    getStatuses.add(200);
+                }
+                return respond(new MockResponse()
+                        .setHeader("ETag", ETAG)
+                        .setHeader("Cache-Control", "no-cache")
+                        .setBody(deltaBody));
+            }
+        });
+        server.start();
+        cacheDir = Files.createTempDirectory("http-cache").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+        deleteRecursively(cacheDir);
+    }
+
+    @Test
+    public void tunedStackSendsFewerBytesPerSync() throws Exception {
+        long[] baselineResult = run(service(baselineClient()));
+        getStatuses.clear();
+        long[] tunedResult = run(service(tunedClient()));
+
+        assertTrue("gzip reduce la subida", tunedResult[0] < baselineResult[0] / 2);
+        assertTrue("el 304 evita volver a descargar la lista", tunedResult[1] < baselineResult[1] / 2);
+        // Solo la primera descarga es completa; el resto se revalida con If-None-Match
+        assertEquals(Integer.valueOf(200), getStatuses.get(0));
+        for (int i = 1; i < getStatuses.size(); i++) {
+            assertEquals(Integer.valueOf(304), getStatuses.get(i));
+        }
+    }
+
+    @Test
+    public void gzipBodyDecodesToSameHabits() throws Exception {
+        OkHttpClient tuned = HabitApiClient.newHttpClientBuilder(null, HttpLoggingInterceptor.Level.NONE).build();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody("{\"success\":true,\"habits\":[]}");
+            }
+        });
+
+        service(tuned).syncHabits(habits(HABITS_PER_BATCH)).execute();
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+        String json = Okio.buffer(new GzipSource(request.getBody())).readUtf8();
+        Habit[] sent = gson.fromJson(json, Habit[].class);
+        assertEquals(HABITS_PER_BATCH, sent.length);
+        assertEquals("Hábito 0", sent[0].getTitle());
+    }
+
+    @Test
+    public void notModifiedResponseIsServedFromCache() throws Exception {
+        HabitApiService service = service(
+                HabitApiClient.newHttpClientBuilder(cacheDir, HttpLoggingInterceptor.Level.NONE).build());
+
+        Response<HabitsResponse> first = service.getHabitsSince(1700000000L).execute();
+        Response<HabitsResponse> second = service.getHabitsSince(1700000000L).execute();
+
+        assertEquals(Arrays.asList(200, 304), getStatuses);
+        assertNotNull(second.body());
+        assertEquals(first.body().getHabits().size(), second.body().getHabits().size());
+        assertEquals(Long.valueOf(1700000500L), second.body().getWatermark());
+    }
+
+    @Ignore("Benchmark de latencia: ejecutar a mano")
+    @Test
+    public void latencyPerSync() throws Exception {
+        long baseline = medianSyncMicros(service(baselineClient()));
+        long tuned = medianSyncMicros(service(tunedClient()));
+        LOG.info("Mediana por sincronización: sin caché ni gzip " + baseline + " µs, HabitApiClient "
+                + tuned + " µs (" + ROUNDS + " rondas)");
+    }
+
+    /**
+     * @return {bytes subidos por sincronización, bytes descargados por sincronización}
+     */
+    private long[] run(HabitApiService service) throws IOException {
+        requestBytes.set(0);
+        responseBytes.set(0);
+        List<Habit> batch = habits(HABITS_PER_BATCH);
+        for (int i = 0; i < ROUNDS; i++) {
+            syncOnce(service, batch);
+        }
+        return new long[]{requestBytes.get() / ROUNDS, responseBytes.get() / ROUNDS};
+    }
+
+    private long medianSyncMicros(HabitApiService service) throws IOException {
+        long[] latencies = new long[ROUNDS];
+        List<Habit> batch = habits(HABITS_PER_BATCH);
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            syncOnce(service, batch);
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return TimeUnit.NANOSECONDS.toMicros(latencies[ROUNDS / 2]);
+    }
+
+    private static void syncOnce(HabitApiService service, List<Habit> batch) throws IOException {
+        assertTrue(service.syncHabits(batch).execute().isSuccessful());
+        Response<HabitsResponse> delta = service.getHabitsSince(1700000000L).execute();
+        assertEquals(50, delta.body().getHabits().size());
+    }
+
+    private static OkHttpClient baselineClient() {
+        return new OkHttpClient.Builder()
+                // Sin GzipRequestInterceptor la cabecera declarada en HabitApiService sería falsa
+                .addInterceptor(chain -> chain.proceed(chain.request().newBuilder()
+                        .removeHeader("Content-Encoding").build()))
+                .build();
+    }
+
+    private OkHttpClient tunedClient() {
+        return HabitApiClient.newHttpClientBuilder(cacheDir, HttpLoggingInterceptor.Level.NONE).build();
+    }
+
+    private MockResponse respond(MockResponse response) {
+        Buffer body = response.getBody();
+        if (body != null) {
+            responseBytes.addAndGet(body.size());
+        }
+        return response;
+    }
+
+    private HabitApiService service(OkHttpClient client) {
+        return new Retrofit.Builder()
+                .baseUrl(server.url("/api/v1/"))
+                .client(client)
+                .addConverterFactory(GsonConverterFactory.create(gson))
+                .build()
+                .create(HabitApiService.class);
+    }
+
+    private static List<Habit> habits(int count) {
+        List<Habit> habits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Habit habit = new Habit("Hábito " + i, "Meta diaria " + i, "salud", Habit.HabitType.WATER);
+            habit.setId(i + 1);
+            habit.setWaterGoalGlasses(8);
+            habit.setPoints(10);
+            habits.add(habit);
+        }
+        return habits;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
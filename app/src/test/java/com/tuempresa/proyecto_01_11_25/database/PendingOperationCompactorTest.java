@@ -0,0 +1,220 @@
+package com.tuempresa.proyecto_01_11_25.database;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compactación de operaciones pendientes: casos básicos y secuencias aleatorias válidas
+ * comparando el estado final de un servidor simulado con y sin compactar.
+ */
+public class PendingOperationCompactorTest {
+    private static final long ENTITY_ID = 7;
+    private static final int SEQUENCES = 5_000;
+
+    private long nextId = 1;
+
+    @Test
+    public void updatesCollapseToLastWrite() {
+        List<HabitDatabaseHelperSync.PendingOperation> ops = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ops.add(op("UPDATE", "v" + i));
+        }
+
+        List<HabitDatabaseHelperSync.PendingOperation> compacted = PendingOperationCompactor.compact(ops);
+
+        assertEquals(1, compacted.size());
+        assertEquals("UPDATE", compacted.get(0).operationType);
+        assertEquals("v9", compacted.get(0).entityData);
+    }
+
+    @Test
+    public void createThenUpdatesStaysCreateWithLatestData() {
+        List<HabitDatabaseHelperSync.PendingOperation> compacted = PendingOperationCompactor.compact(
+                list(op("CREATE", "v0"), op("UPDATE", "v1"), op("UPDATE", "v2")));
+
+        assertEquals(1, compacted.size());
+        assertEquals("CREATE", compacted.get(0).operationType);
+        assertEquals("v2", compacted.get(0).entityData);
+        assertEquals(0, compacted.get(0).id);
+    }
+
+    @Test
+    public void createThenDeleteCancelsOut() {
+        // Sin serverId: el hábito nunca llegó al servidor
+        assertTrue(PendingOperationCompactor.compact(
+                list(op("CREATE", "v0"), op("UPDATE", "v1"), op("DELETE", null))).isEmpty());
+    }
+
+    @Test
+    public void createThenDeleteWithServerIdKeepsDelete() {
+        // El CREATE ya se envió (o está en curso) y el servidor devolvió el serverId 42
+        HabitDatabaseHelperSync.PendingOperation delete = op("DELETE", "42");
+        List<HabitDatabaseHelperSync.PendingOperation> compacted = PendingOperationCompactor.compact(
+                list(op("CREATE", "v0"), op("UPDATE", "v1"), delete));
+
+        assertEquals(1, compacted.size());
+        assertSame(delete, compacted.get(0));
+    }
+
+    @Test
+    public void updateThenDeleteKeepsOnlyDelete() {
+        HabitDatabaseHelperSync.PendingOperation delete = op("DELETE", "42");
+        List<HabitDatabaseHelperSync.PendingOperation> compacted = PendingOperationCompactor.compact(
+                list(op("UPDATE", "v1"), delete));
+
+        assertEquals(1, compacted.size());
+        assertSame(delete, compacted.get(0));
+    }
+
+    @Test
+    public void nothingMergesAcrossDelete() {
+        // El id local puede reutilizarse: el CREATE posterior es otra entidad
+        List<HabitDatabaseHelperSync.PendingOperation> compacted = PendingOperationCompactor.compact(
+                list(op("DELETE", "42"), op("CREATE", "v0"), op("UPDATE", "v1")));
+
+        assertEquals(2, compacted.size());
+        assertEquals("DELETE", compacted.get(0).operationType);
+        assertEquals("CREATE", compacted.get(1).operationType);
+        assertEquals("v1", compacted.get(1).entityData);
+    }
+
+    @Test
+    public void untouchedOperationsKeepTheirRow() {
+        HabitDatabaseHelperSync.PendingOperation update = op("UPDATE", "v1");
+        List<HabitDatabaseHelperSync.PendingOperation> compacted = PendingOperationCompactor.compact(list(update));
+
+        assertEquals(1, compacted.size());
+        assertSame(update, compacted.get(0));
+    }
+
+    @Test
+    public void randomSequencesReachSameServerState() {
+        Random random = new Random(20251101L);
+        for (int n = 0; n < SEQUENCES; n++) {
+            boolean existsOnServer = random.nextBoolean();
+            List<HabitDatabaseHelperSync.PendingOperation> ops = randomSequence(random, existsOnServer);
+
+            List<HabitDatabaseHelperSync.PendingOperation> compacted = PendingOperationCompactor.compact(ops);
+
+            String message = "secuencia " + n + ": " + describe(ops) + " -> " + describe(compacted);
+            assertEquals(message, replay(ops, existsOnServer), replay(compacted, existsOnServer));
+            assertTrue(message, compacted.size() <= ops.size());
+            for (int i = 1; i < compacted.size(); i++) {
+                // Solo puede quedar más de una operación si la anterior es un DELETE
+                assertEquals(message, "DELETE", compacted.get(i - 1).operationType);
+            }
+        }
+    }
+
+    @Test
+    public void compactingOnEnqueueMatchesCompactingOnDrain() {
+        Random random = new Random(42L);
+        for (int n = 0; n < SEQUENCES; n++) {
+            List<HabitDatabaseHelperSync.PendingOperation> ops = randomSequence(random, random.nextBoolean());
+
+            // savePendingOperation compacta la cola existente más la nueva operación en cada paso
+            List<HabitDatabaseHelperSync.PendingOperation> queue = new ArrayList<>();
+            for (HabitDatabaseHelperSync.PendingOperation op : ops) {
+                queue.add(op);
+                queue = PendingOperationCompactor.compact(queue);
+            }
+
+            assertEquals("secuencia " + n, describe(PendingOperationCompactor.compact(ops)), describe(queue));
+        }
+    }
+
+    /**
+     * Secuencia válida para una entidad: CREATE solo si no existe localmente, UPDATE/DELETE solo si existe.
+     */
+    private List<HabitDatabaseHelperSync.PendingOperation> randomSequence(Random random, boolean existsOnServer) {
+        List<HabitDatabaseHelperSync.PendingOperation> ops = new ArrayList<>();
+        boolean exists = existsOnServer;
+        int length = 1 + random.nextInt(12);
+        for (int i = 0; i < length; i++) {
+            if (!exists) {
+                ops.add(op("CREATE", "c" + i));
+                exists = true;
+            } else if (random.nextInt(10) < 7) {
+                ops.add(op("UPDATE", "u" + i));
+            } else {
+                ops.add(op("DELETE", "d" + i));
+                exists = false;
+            }
+        }
+        return ops;
+    }
+
+    /**
+     * Aplica las operaciones a un servidor simulado y devuelve los registros vivos. Cada CREATE
+     * crea un registro nuevo; UPDATE y DELETE actúan sobre el registro actual de la entidad.
+     */
+    private static Map<Integer, String> replay(List<HabitDatabaseHelperSync.PendingOperation> ops, boolean existsOnServer) {
+        Map<Integer, String> records = new HashMap<>();
+        int nextRecord = 0;
+        Integer current = null;
+        if (existsOnServer) {
+            current = nextRecord++;
+            records.put(current, "inicial");
+        }
+        for (HabitDatabaseHelperSync.PendingOperation op : ops) {
+            switch (op.operationType) {
+                case "CREATE":
+                    current = nextRecord++;
+                    records.put(current, op.entityData);
+                    break;
+                case "UPDATE":
+                    assertNotNull("UPDATE sin registro en el servidor", current);
+                    records.put(current, op.entityData);
+                    break;
+                default:
+                    assertNotNull("DELETE sin registro en el servidor", current);
+                    records.remove(current);
+                    current = null;
+                    break;
+            }
+        }
+        // Los números de registro dependen de cuántos CREATE se enviaron: se comparan por orden
+        Map<Integer, String> live = new HashMap<>();
+        int index = 0;
+        for (int record = 0; record < nextRecord; record++) {
+            if (records.containsKey(record)) {
+                live.put(index++, records.get(record));
+            }
+        }
+        return live;
+    }
+
+    private HabitDatabaseHelperSync.PendingOperation op(String type, String data) {
+        HabitDatabaseHelperSync.PendingOperation op = new HabitDatabaseHelperSync.PendingOperation();
+        op.id = nextId++;
+        op.operationType = type;
+        op.entityType = "HABIT";
+        op.entityId = ENTITY_ID;
+        op.entityData = data;
+        op.priority = 2;
+        return op;
+    }
+
+    private static List<HabitDatabaseHelperSync.PendingOperation> list(HabitDatabaseHelperSync.PendingOperation... ops) {
+        List<HabitDatabaseHelperSync.PendingOperation> list = new ArrayList<>();
+        for (HabitDatabaseHelperSync.PendingOperation op : ops) {
+            list.add(op);
+        }
+        return list;
+    }
+
+    private static String describe(List<HabitDatabaseHelperSync.PendingOperation> ops) {
+        StringBuilder sb = new StringBuilder();
+        for (HabitDatabaseHelperSync.PendingOperation op : ops) {
+            sb.append(op.operationType).append('(').append(op.entityData).append(") ");
+        }
+        return sb.toString().trim();
+    }
+}
@@ -0,0 +1,203 @@
+package com.tuempresa.proyecto_01_11_25.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.model.Score;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+/**
+ * HabitJsonAdapter y ScoreJsonAdapter frente a la serialización reflexiva anterior:
+ * mismo JSON en ambos sentidos, y rendimiento (hábitos/s y bytes asignados por hábito)
+ * al serializar y deserializar 10.000 hábitos, con calentamiento previo al estilo JMH.
+ * La medición de rendimiento está en @Ignore para no cronometrar dentro de la tarea de tests;
+ * se ejecuta a mano quitando la anotación.
+ */
+public class ModelJsonAdapterBenchmarkTest {
+    private static final Logger LOG = Logger.getLogger(ModelJsonAdapterBenchmarkTest.class.getName());
+    private static final int HABITS = 10_000;
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int MEASURED_ITERATIONS = 10;
+    private static final Type HABIT_LIST = new TypeToken<List<Habit>>() {}.getType();
+
+    // Configuración de Gson previa a los adaptadores escritos a mano
+    private final Gson reflective = new GsonBuilder()
+            .registerTypeAdapter(Habit.HabitType.class, new HabitTypeAdapter())
+            .setLenient()
+            .create();
+    private final Gson shared = GsonProvider.get();
+
+    @Test
+    public void habitsSerializeExactlyLikeReflection() {
+        for (Habit habit : randomHabits(new Random(1), 2_000)) {
+            assertEquals(reflective.toJson(habit), shared.toJson(habit));
+        }
+    }
+
+    @Test
+    public void habitsDeserializeExactlyLikeReflection() {
+        for (Habit habit : randomHabits(new Random(2), 2_000)) {
+            String json = reflective.toJson(habit);
+            assertEquals(json, reflective.toJson(shared.fromJson(json, Habit.class)));
+        }
+    }
+
+    @Test
+    public void missingNullAndUnknownFieldsMatchReflection() {
+        String[] bodies = {
+                "{}",
+                "{\"id\":5,\"points\":null,\"completed\":null,\"title\":null,\"pagesPerDay\":null}",
+                "{\"id\":\"6\",\"points\":\"20\",\"completed\":\"true\",\"dndMode\":\"false\",\"extra\":{\"a\":[1]}}",
+                "{\"type\":\"NO_EXISTE\",\"targetValue\":2,\"waterGoalGlasses\":8.0,\"lastCompletedDate\":1700000000000}"
+        };
+        Gson reflectiveWithDemo = new GsonBuilder()
+                .registerTypeAdapter(Habit.HabitType.class, new HabitTypeAdapter().nullSafe())
+                .create();
+        for (String body : bodies) {
+            assertEquals(body, reflectiveWithDemo.toJson(reflectiveWithDemo.fromJson(body, Habit.class)),
+                    reflectiveWithDemo.toJson(shared.fromJson(body, Habit.class)));
+        }
+    }
+
+    @Test
+    public void scoresMatchReflectionIncludingDateFormat() {
+        Random random = new Random(3);
+        for (int i = 0; i < 500; i++) {
+            Score score = new Score(random.nextInt(1000), random.nextBoolean() ? "Hábito " + i : null, random.nextInt(50));
+            score.setId(random.nextInt(10_000));
+            score.setDate(random.nextInt(10) == 0 ? null : new Date(1_700_000_000_000L + random.nextInt(1_000_000) * 1000L));
+
+            String json = reflective.toJson(score);
+            assertEquals(json, shared.toJson(score));
+            Score read = shared.fromJson(json, Score.class);
+            if (score.getDate() != null) {
+                assertEquals(json, reflective.toJson(read));
+            } else {
+                // Sin fecha en el JSON queda la del constructor, igual que con reflexión
+                assertNotNull(read.getDate());
+            }
+        }
+    }
+
+    @Test
+    public void tenThousandHabitsRoundTrip() {
+        String json = reflective.toJson(randomHabits(new Random(4), HABITS));
+        List<Habit> parsed = shared.fromJson(json, HABIT_LIST);
+        assertEquals(HABITS, parsed.size());
+        assertEquals(json, shared.toJson(parsed));
+    }
+
+    @Ignore("Benchmark de rendimiento: ejecutar a mano")
+    @Test
+    public void throughputAndAllocationFor10kHabits() {
+        List<Habit> habits = randomHabits(new Random(4), HABITS);
+        String json = reflective.toJson(habits);
+
+        Result[] write = compare(() -> reflective.toJson(habits), () -> shared.toJson(habits));
+        Result[] read = compare(() -> reflective.fromJson(json, HABIT_LIST), () -> shared.fromJson(json, HABIT_LIST));
+
+        LOG.info("Serializar reflexión: " + write[0] + " | adaptador: " + write[1]);
+        LOG.info("Deserializar reflexión: " + read[0] + " | adaptador: " + read[1]);
+    }
+
+    /**
+     * Alterna las dos variantes en cada iteración (calentamiento incluido) para que el JIT
+     * y la recolección de basura las afecten por igual.
+     * @return {reflexión, adaptador}
+     */
+    private static Result[] compare(Runnable reflective, Runnable adapter) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            reflective.run();
+            adapter.run();
+        }
+        long[] elapsed = new long[2];
+        long[] allocated = new long[2];
+        Runnable[] operations = {reflective, adapter};
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            for (int j = 0; j < operations.length; j++) {
+                long allocatedBefore = allocatedBytes();
+                long start = System.nanoTime();
+                operations[j].run();
+                elapsed[j] += System.nanoTime() - start;
+                allocated[j] += allocatedBytes() - allocatedBefore;
+            }
+        }
+        long habits = (long) HABITS * MEASURED_ITERATIONS;
+        Result[] results = new Result[2];
+        for (int j = 0; j < results.length; j++) {
+            results[j] = new Result(habits * 1_000_000_000L / Math.max(elapsed[j], 1),
+                    allocatedBytes() < 0 ? -1 : allocated[j] / habits);
+        }
+        return results;
+    }
+
+    /**
+     * Bytes asignados por el hilo actual, o -1 si la JVM no lo expone.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static final class Result {
+        final long habitsPerSecond;
+        final long bytesPerHabit;
+
+        Result(long habitsPerSecond, long bytesPerHabit) {
+            this.habitsPerSecond = habitsPerSecond;
+            this.bytesPerHabit = bytesPerHabit;
+        }
+
+        @Override
+        public String toString() {
+            return habitsPerSecond + " hábitos/s, " + bytesPerHabit + " B/hábito";
+        }
+    }
+
+    private static List<Habit> randomHabits(Random random, int count) {
+        Habit.HabitType[] types = Habit.HabitType.values();
+        List<Habit> habits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Habit habit = new Habit(random.nextBoolean() ? "Hábito \"" + i + "\"" : null,
+                    random.nextBoolean() ? "Meta " + i : null, "salud",
+                    random.nextInt(10) == 0 ? null : types[random.nextInt(types.length)]);
+            habit.setId(random.nextInt(100_000));
+            habit.setCompleted(random.nextBoolean());
+            habit.setPoints(random.nextInt(100));
+            habit.setTargetValue(random.nextBoolean() ? random.nextDouble() * 100 : 0.0);
+            habit.setTargetUnit(random.nextBoolean() ? "km" : null);
+            habit.setPagesPerDay(random.nextBoolean() ? random.nextInt(50) : null);
+            habit.setReminderTimes(random.nextBoolean() ? "[\"08:00\",\"20:00\"]" : null);
+            habit.setDurationMinutes(random.nextBoolean() ? random.nextInt(120) : null);
+            habit.setDndMode(random.nextBoolean() ? random.nextBoolean() : null);
+            habit.setMusicId(random.nextBoolean() ? random.nextInt(10) : null);
+            habit.setJournalEnabled(random.nextBoolean() ? random.nextBoolean() : null);
+            habit.setGymDays(random.nextBoolean() ? "[1,3,5]" : null);
+            habit.setWaterGoalGlasses(random.nextBoolean() ? random.nextInt(12) : null);
+            habit.setOneClickComplete(random.nextBoolean() ? random.nextBoolean() : null);
+            habit.setEnglishMode(random.nextBoolean() ? random.nextBoolean() : null);
+            habit.setCodingMode(random.nextBoolean() ? random.nextBoolean() : null);
+            habit.setHabitIcon(random.nextBoolean() ? "ic_habit_book" : null);
+            habit.setStreakCount(random.nextInt(30));
+            habit.setLastCompletedDate(random.nextBoolean() ? 1_700_000_000_000L + random.nextInt(1_000_000) : 0);
+            habits.add(habit);
+        }
+        return habits;
+    }
+}